@@ -155,6 +155,14 @@ exports.pushToChannels = functions.https.onCall((data, context) => {
 //  exports.pushToChannels = functions.https.onRequest((req, res) => {
 
     let body = data.body;
+    let type = data.type;
+
+    // Messages sent close together arrive as one push with every message in order
+    let bodies = data.bodies;
+    if (Array.isArray(bodies) && bodies.length > 1) {
+        body = bodies.length + " new messages\n" + bodies.join("\n");
+        type = 0;
+    }
 
     let action = data.action;
     if(!action) {
@@ -166,7 +174,6 @@ exports.pushToChannels = functions.https.onCall((data, context) => {
         sound = Sound;
     }
 
-    let type = data.type;
     let senderId = String(data.senderId);
     let threadId = String(data.threadId);
 
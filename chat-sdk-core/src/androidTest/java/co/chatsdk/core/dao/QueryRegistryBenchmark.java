@@ -0,0 +1,178 @@
+package co.chatsdk.core.dao;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.greenrobot.greendao.query.Query;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import co.chatsdk.core.session.ChatSDK;
+import co.chatsdk.core.session.Configuration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the compiled queries in {@link QueryRegistry} with building the same query
+ * on every call. The timings are written to the log with the tag QueryRegistryBenchmark and the
+ * ratio of compiled to built time is reported in the instrumentation results.
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class QueryRegistryBenchmark {
+
+    private static final String TAG = "QueryRegistryBenchmark";
+
+    private static final int MESSAGE_COUNT = 500;
+    private static final int PAGE_SIZE = 20;
+    private static final int WARM_UP = 200;
+    private static final int ITERATIONS = 2000;
+
+    private Thread thread;
+    private List<Message> messages = new ArrayList<>();
+
+    @Before
+    public void setUp () {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+
+        // Only the database is needed, DaoCore reads the configuration when it opens it
+        if (ChatSDK.config() == null) {
+            ChatSDK.shared().config = new Configuration.Builder(context).build();
+        }
+        DaoCore.init(context);
+
+        thread = new Thread();
+        thread.setEntityID(DaoCore.generateRandomName());
+        DaoCore.daoSession.insert(thread);
+
+        long now = DateTime.now().getMillis();
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            Message message = new Message();
+            message.setEntityID(DaoCore.generateRandomName());
+            message.setThreadId(thread.getId());
+            message.setSenderId(1L);
+            message.setDate(new DateTime(now - i * 1000L));
+            messages.add(message);
+        }
+        DaoCore.daoSession.getMessageDao().insertInTx(messages);
+    }
+
+    @After
+    public void tearDown () {
+        DaoCore.daoSession.getMessageDao().deleteInTx(messages);
+        DaoCore.daoSession.delete(thread);
+    }
+
+    @Test
+    public void messagesForThread () {
+        assertEquals(builtMessages().size(), compiledMessages().size());
+
+        long built = time(new Runnable() {
+            @Override
+            public void run() {
+                builtMessages();
+            }
+        });
+        long compiled = time(new Runnable() {
+            @Override
+            public void run() {
+                compiledMessages();
+            }
+        });
+
+        report("messagesForThread", built, compiled);
+    }
+
+    @Test
+    public void entityWithEntityID () {
+        final String entityID = messages.get(MESSAGE_COUNT / 2).getEntityID();
+        assertEquals(builtEntity(entityID).getId(), compiledEntity(entityID).getId());
+
+        long built = time(new Runnable() {
+            @Override
+            public void run() {
+                builtEntity(entityID);
+            }
+        });
+        long compiled = time(new Runnable() {
+            @Override
+            public void run() {
+                compiledEntity(entityID);
+            }
+        });
+
+        report("entityWithEntityID", built, compiled);
+    }
+
+    private List<Message> builtMessages () {
+        return DaoCore.daoSession.queryBuilder(Message.class)
+                .where(MessageDao.Properties.ThreadId.eq(thread.getId()))
+                .orderAsc(MessageDao.Properties.Date)
+                .where(MessageDao.Properties.Date.isNotNull())
+                .limit(PAGE_SIZE)
+                .build()
+                .list();
+    }
+
+    private List<Message> compiledMessages () {
+        Query<Message> query = QueryRegistry.messagesForThread(DaoCore.ORDER_ASC, true);
+        query.setParameter(0, thread.getId());
+        query.setLimit(PAGE_SIZE);
+        return query.list();
+    }
+
+    private Message builtEntity (String entityID) {
+        return DaoCore.daoSession.queryBuilder(Message.class)
+                .where(MessageDao.Properties.EntityID.eq(entityID))
+                .limit(1)
+                .build()
+                .unique();
+    }
+
+    private Message compiledEntity (String entityID) {
+        Query<Message> query = QueryRegistry.entityWithEntityID(Message.class);
+        query.setParameter(0, entityID);
+        return query.unique();
+    }
+
+    private static long time (Runnable runnable) {
+        for (int i = 0; i < WARM_UP; i++) {
+            runnable.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            runnable.run();
+        }
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+
+    /**
+     * Log the timings and report the ratio in the instrumentation results. The compiled query
+     * should never be slower than building it again
+     */
+    private static void report (String name, long built, long compiled) {
+        double ratio = (double) compiled / built;
+        String summary = String.format(Locale.US, "%s: built each time %dns, QueryRegistry %dns per query, ratio %.2f", name, built, compiled, ratio);
+        Log.i(TAG, summary);
+
+        Bundle results = new Bundle();
+        results.putString(TAG, summary);
+        results.putDouble(name, ratio);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+
+        assertTrue(summary, ratio <= 1.0);
+    }
+
+}
@@ -4,10 +4,10 @@ import android.media.MediaPlayer;
 
 import java.util.concurrent.TimeUnit;
 
+import co.chatsdk.core.rx.RXSchedulers;
 import io.reactivex.Observable;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
-import io.reactivex.schedulers.Schedulers;
 import timber.log.Timber;
 
 /**
@@ -28,7 +28,7 @@ public class AudioPlayer {
             player.start();
 
             playingDisposable = Observable.interval(0, 200, TimeUnit.MILLISECONDS)
-                    .subscribeOn(Schedulers.single())
+                    .subscribeOn(RXSchedulers.computation())
                     .subscribe(aLong -> {
                         if(progressListener != null && player != null) {
                             final int pos = player.getCurrentPosition();
@@ -110,7 +110,7 @@ public class AudioPlayer {
 
     public void setPosition (final int position) {
         if(player != null) {
-            Schedulers.single().scheduleDirect(() -> player.seekTo(position));
+            RXSchedulers.computation().scheduleDirect(() -> player.seekTo(position));
         }
     }
 
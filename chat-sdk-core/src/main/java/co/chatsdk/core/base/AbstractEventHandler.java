@@ -1,25 +1,43 @@
 package co.chatsdk.core.base;
 
+import co.chatsdk.core.dao.Thread;
+import co.chatsdk.core.events.EventRouter;
 import co.chatsdk.core.events.NetworkEvent;
 import co.chatsdk.core.handlers.EventHandler;
+import co.chatsdk.core.rx.RXSchedulers;
 import co.chatsdk.core.utils.DisposableList;
 import io.reactivex.Observable;
 import io.reactivex.Scheduler;
 import io.reactivex.android.schedulers.AndroidSchedulers;
-import io.reactivex.schedulers.Schedulers;
 import io.reactivex.subjects.PublishSubject;
 
 public abstract class AbstractEventHandler implements EventHandler {
 
     final protected PublishSubject<NetworkEvent> eventSource = PublishSubject.create();
     protected DisposableList disposableList = new DisposableList();
+    protected EventRouter router;
 
     public PublishSubject<NetworkEvent> source () {
         return eventSource;
     }
 
     public Observable<NetworkEvent> sourceOnMain () {
-        return source().subscribeOn(Schedulers.single()).observeOn(AndroidSchedulers.mainThread());
+        return source().subscribeOn(RXSchedulers.computation()).observeOn(AndroidSchedulers.mainThread());
+    }
+
+    public synchronized EventRouter router () {
+        if (router == null) {
+            router = new EventRouter(source());
+        }
+        return router;
+    }
+
+    public void threadOpened (Thread thread) {
+
+    }
+
+    public void threadClosed (Thread thread) {
+
     }
 
 }
@@ -1,11 +1,18 @@
 package co.chatsdk.core.base;
 
 import java.util.ArrayList;
+import java.util.List;
 
+import co.chatsdk.core.dao.DaoCore;
+import co.chatsdk.core.dao.Message;
+import co.chatsdk.core.dao.SearchIndex;
+import co.chatsdk.core.dao.Thread;
 import co.chatsdk.core.dao.User;
 import co.chatsdk.core.handlers.SearchHandler;
+import co.chatsdk.core.rx.RXSchedulers;
 import co.chatsdk.core.session.ChatSDK;
 import io.reactivex.Observable;
+import io.reactivex.Single;
 
 public abstract class AbstractSearchHandler implements SearchHandler {
 
@@ -29,5 +36,52 @@ public abstract class AbstractSearchHandler implements SearchHandler {
         return Observable.merge(observables);
     }
 
+    public Single<List<Message>> searchMessages(final String text, final Thread thread, final int offset, final int limit) {
+        return Single.fromCallable(() -> {
+            List<Message> messages = new ArrayList<>();
+            for (Long id : SearchIndex.messageIds(text, thread != null ? thread.getId() : null, offset, limit)) {
+                Message message = DaoCore.daoSession.getMessageDao().load(id);
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+            return messages;
+        }).subscribeOn(RXSchedulers.db());
+    }
+
+    public Single<List<Thread>> searchThreads(final String text, final int offset, final int limit) {
+        return Single.fromCallable(() -> {
+            List<Thread> threads = new ArrayList<>();
+            for (Long id : SearchIndex.threadIds(text, offset, limit)) {
+                Thread thread = DaoCore.daoSession.getThreadDao().load(id);
+                if (thread != null) {
+                    threads.add(thread);
+                }
+            }
+            return threads;
+        }).subscribeOn(RXSchedulers.db());
+    }
+
+    public Single<List<User>> searchUsers(final String text, final int offset, final int limit) {
+        return Single.fromCallable(() -> {
+            List<User> users = new ArrayList<>();
+            for (Long id : SearchIndex.userIds(text, offset, limit)) {
+                User user = DaoCore.daoSession.getUserDao().load(id);
+                if (user != null) {
+                    users.add(user);
+                }
+            }
+            return users;
+        }).subscribeOn(RXSchedulers.db());
+    }
+
+    public Observable<User> usersForText(final String text, final int limit) {
+        // The server is still asked so users we haven't seen yet can be found, if it fails the
+        // local results are enough
+        Observable<User> local = searchUsers(text, 0, limit).flattenAsObservable(users -> users);
+        Observable<User> remote = usersForIndex(text, limit).onErrorResumeNext(Observable.empty());
+        return Observable.concat(local, remote).distinct(User::getEntityID);
+    }
+
 
 }
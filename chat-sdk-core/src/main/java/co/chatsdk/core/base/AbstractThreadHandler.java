@@ -5,7 +5,6 @@ import org.joda.time.DateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
@@ -17,17 +16,20 @@ import co.chatsdk.core.handlers.CoreHandler;
 import co.chatsdk.core.handlers.ThreadHandler;
 import co.chatsdk.core.interfaces.ThreadType;
 import co.chatsdk.core.rx.ObservableConnector;
+import co.chatsdk.core.rx.RXSchedulers;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.session.StorageManager;
+import co.chatsdk.core.session.UnreadCountService;
 import co.chatsdk.core.types.MessageSendProgress;
 import co.chatsdk.core.types.MessageSendStatus;
 import co.chatsdk.core.types.MessageType;
+import co.chatsdk.core.types.UploadSession;
+import co.chatsdk.core.utils.UploadSessionStore;
 import io.reactivex.Completable;
 import io.reactivex.Observable;
 import io.reactivex.ObservableOnSubscribe;
 import io.reactivex.Single;
 import io.reactivex.SingleOnSubscribe;
-import io.reactivex.schedulers.Schedulers;
 
 
 /**
@@ -39,13 +41,10 @@ public abstract class AbstractThreadHandler implements ThreadHandler {
     public Single<List<Message>> loadMoreMessagesForThread(final Message fromMessage, final Thread thread) {
         return Single.create((SingleOnSubscribe<List<Message>>) e -> {
 
-            //
-            Date messageDate = fromMessage != null ? fromMessage.getDate().toDate() : null;
-
-            // First try to load the messages from the database
-            List<Message> list = ChatSDK.db().fetchMessagesForThreadWithID(thread.getId(), ChatSDK.config().messagesToLoadPerBatch + 1, messageDate);
+            // Page backwards from the message on (date, id) so messages sharing a timestamp aren't skipped
+            List<Message> list = ChatSDK.db().fetchMessagesBefore(thread.getId(), fromMessage, ChatSDK.config().messagesToLoadPerBatch + 1);
             e.onSuccess(list);
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.db());
     }
 
     /**
@@ -68,7 +67,7 @@ public abstract class AbstractThreadHandler implements ThreadHandler {
             ObservableConnector<MessageSendProgress> connector = new ObservableConnector<>();
             connector.connect(implSendMessage(message), e);
 
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.db());
 
     }
 
@@ -103,7 +102,7 @@ public abstract class AbstractThreadHandler implements ThreadHandler {
             e.onNext(new MessageSendProgress(message));
             e.onComplete();
         }).concatWith(sendMessage(message))
-                .subscribeOn(Schedulers.single()).doOnComplete(() -> {
+                .subscribeOn(RXSchedulers.db()).doOnComplete(() -> {
                     message.setMessageStatus(MessageSendStatus.Sent);
                     message.update();
                 }).doOnError(throwable -> {
@@ -112,21 +111,38 @@ public abstract class AbstractThreadHandler implements ThreadHandler {
                 });
     }
 
-    public int getUnreadMessagesAmount(boolean onePerThread){
-        List<Thread> threads = getThreads(ThreadType.Private, false);
+    /**
+     * The upload sessions are keyed by message entity ID. Sessions whose message is gone
+     * or already sent are dropped. A failed upload keeps its session so it's tried again
+     */
+    public Completable resumePendingUploads() {
+        return Completable.defer(() -> {
+            if (ChatSDK.upload() == null || ChatSDK.imageMessage() == null) {
+                return Completable.complete();
+            }
 
-        int count = 0;
-        for (Thread t : threads) {
-            if (onePerThread) {
-                if(!t.isLastMessageWasRead()) {
-                    count++;
+            List<Completable> completables = new ArrayList<>();
+            for (UploadSession session : ChatSDK.upload().pendingUploads()) {
+                final Message message = ChatSDK.db().fetchEntityWithEntityID(session.key, Message.class);
+                if (message == null || !message.getMessageType().is(MessageType.Image) || (message.getMessageStatus() != MessageSendStatus.Uploading && message.getMessageStatus() != MessageSendStatus.Failed)) {
+                    UploadSessionStore.remove(session.key);
+                    continue;
                 }
+                completables.add(ChatSDK.imageMessage().resumeMessageWithImage(message)
+                        .ignoreElements()
+                        .doOnError(throwable -> {
+                            message.setMessageStatus(MessageSendStatus.Failed);
+                            message.update();
+                            ChatSDK.logError(throwable);
+                        })
+                        .onErrorComplete());
             }
-            else {
-                count += t.getUnreadMessagesCount();
-            }
-        }
-        return count;
+            return Completable.merge(completables);
+        }).subscribeOn(RXSchedulers.db());
+    }
+
+    public int getUnreadMessagesAmount(boolean onePerThread){
+        return UnreadCountService.shared().loadCount(onePerThread);
     }
 
     public Single<Thread> createThread(String name, User... users) {
@@ -169,7 +185,7 @@ public abstract class AbstractThreadHandler implements ThreadHandler {
         List<Thread> filteredThreads = new ArrayList<>();
         for(Thread thread : threads) {
             if(thread.typeIs(type) && (!thread.getDeleted() || allowDeleted)) {
-                if (showEmpty || thread.getMessages().size() > 0) {
+                if (showEmpty || thread.hasMessages()) {
                     filteredThreads.add(thread);
                 }
             }
@@ -1,12 +1,21 @@
 package co.chatsdk.core.base;
 
 import android.graphics.Bitmap;
+import android.net.Uri;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.List;
 
 import co.chatsdk.core.dao.DaoCore;
 import co.chatsdk.core.handlers.UploadHandler;
+import co.chatsdk.core.rx.RXSchedulers;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.types.FileUploadResult;
+import co.chatsdk.core.types.UploadSession;
 import co.chatsdk.core.utils.ImageUtils;
+import co.chatsdk.core.utils.UploadSessionStore;
 import io.reactivex.Observable;
 
 /**
@@ -19,6 +28,39 @@ public abstract class AbstractUploadHandler implements UploadHandler {
         return ChatSDK.upload().uploadFile(ImageUtils.getImageByteArray(image), "image.jpg", "image/jpeg");
     }
 
+    public Observable<FileUploadResult> uploadFile(final File file, final String name, final String mimeType) {
+        return uploadFile(Uri.fromFile(file), name, mimeType, null);
+    }
+
+    /**
+     * Handlers that can resume an upload should override this. By default the uri is
+     * opened as a stream and passed to {@link #uploadFile(InputStream, String, String)}
+     * and the session key is ignored
+     */
+    public Observable<FileUploadResult> uploadFile(final Uri uri, final String name, final String mimeType, final String sessionKey) {
+        return Observable.using(() -> {
+            InputStream stream = ChatSDK.shared().context().getContentResolver().openInputStream(uri);
+            if (stream == null) {
+                throw new FileNotFoundException("Unable to read file: " + uri);
+            }
+            return stream;
+        }, stream -> uploadFile(stream, name, mimeType), InputStream::close).subscribeOn(RXSchedulers.network());
+    }
+
+    public Observable<FileUploadResult> resumeUpload(final String sessionKey) {
+        return Observable.defer(() -> {
+            UploadSession session = UploadSessionStore.get(sessionKey);
+            if (session == null) {
+                return Observable.<FileUploadResult>error(new Throwable("No upload session for key: " + sessionKey));
+            }
+            return uploadFile(Uri.parse(session.fileUri), session.name, session.mimeType, sessionKey);
+        });
+    }
+
+    public List<UploadSession> pendingUploads() {
+        return UploadSessionStore.all();
+    }
+
     public String getUUID() {
         return DaoCore.generateRandomName();
     }
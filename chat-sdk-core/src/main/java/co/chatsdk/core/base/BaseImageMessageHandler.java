@@ -2,6 +2,7 @@ package co.chatsdk.core.base;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.net.Uri;
 
 import java.io.File;
 
@@ -11,18 +12,25 @@ import co.chatsdk.core.dao.Message;
 import co.chatsdk.core.dao.Thread;
 import co.chatsdk.core.handlers.ImageMessageHandler;
 import co.chatsdk.core.rx.ObservableConnector;
+import co.chatsdk.core.rx.RXSchedulers;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.types.FileUploadResult;
 import co.chatsdk.core.types.MessageSendProgress;
 import co.chatsdk.core.types.MessageSendStatus;
 import co.chatsdk.core.types.MessageType;
+import co.chatsdk.core.types.UploadSession;
+import co.chatsdk.core.utils.ImageUtils;
 import co.chatsdk.core.utils.StringChecker;
+import co.chatsdk.core.utils.UploadSessionStore;
 import id.zelory.compressor.Compressor;
+import io.reactivex.Completable;
+import io.reactivex.Maybe;
 import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
 import io.reactivex.ObservableOnSubscribe;
 import io.reactivex.Observer;
+import io.reactivex.Single;
 import io.reactivex.disposables.Disposable;
-import io.reactivex.schedulers.Schedulers;
 import timber.log.Timber;
 
 /**
@@ -30,6 +38,17 @@ import timber.log.Timber;
  */
 
 public class BaseImageMessageHandler implements ImageMessageHandler {
+
+        protected static class Thumbnail {
+            protected String preview;
+            protected File file;
+        }
+
+        /**
+         * The message is created and written on the database scheduler. Decoding and compressing
+         * the image runs on the computation scheduler and each write comes back to the database
+         * scheduler
+         */
         @Override
         public Observable<MessageSendProgress> sendMessageWithImage(final String filePath, final Thread thread) {
             return Observable.create((ObservableOnSubscribe<MessageSendProgress>) e -> {
@@ -41,62 +60,165 @@ public class BaseImageMessageHandler implements ImageMessageHandler {
                 message.update();
                 e.onNext(new MessageSendProgress(message));
 
-                File compress = new Compressor(ChatSDK.shared().context())
+                Single.fromCallable(() -> new Compressor(ChatSDK.shared().context())
                         .setMaxHeight(ChatSDK.config().imageMaxHeight)
                         .setMaxWidth(ChatSDK.config().imageMaxWidth)
-                        .compressToFile(new File(filePath));
+                        .compressToFile(new File(filePath)))
+                        .subscribeOn(RXSchedulers.computation())
+                        .subscribe(compressed -> uploadImageAndSend(message, compressed, e), e::onError);
 
-                BitmapFactory.Options options = new BitmapFactory.Options();
-                options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-                final Bitmap image = BitmapFactory.decodeFile(compress.getPath(), options);
+            }).subscribeOn(RXSchedulers.db());
 
-                if(image == null) {
-                    e.onError(new Throwable(ChatSDK.shared().context().getString(R.string.unable_to_save_image_to_disk)));
+        }
+
+        /**
+         * Continue an image upload that was interrupted, for example because the app was killed.
+         * The upload picks up from the last byte the server confirmed
+         */
+        @Override
+        public Observable<MessageSendProgress> resumeMessageWithImage(final Message message) {
+            return Observable.create((ObservableOnSubscribe<MessageSendProgress>) e -> {
+                UploadSession session = UploadSessionStore.get(message.getEntityID());
+                if (session == null) {
+                    e.onError(new Throwable("No upload to resume for message: " + message.getEntityID()));
                     return;
                 }
+                e.onNext(new MessageSendProgress(message, session.progress));
+                uploadImageAndSend(message, new File(Uri.parse(session.fileUri).getPath()), e);
+            }).subscribeOn(RXSchedulers.db());
+        }
 
-                ChatSDK.upload().uploadImage(image).subscribe(new Observer<FileUploadResult>() {
-                    @Override
-                    public void onSubscribe(Disposable d) {}
+        protected void uploadImageAndSend (final Message message, final File file, final ObservableEmitter<MessageSendProgress> e) {
 
-                    @Override
-                    public void onNext(FileUploadResult result) {
-                        if(!StringChecker.isNullOrEmpty(result.url))  {
+            // Only read the dimensions, the image is streamed from the file so we never decode the full bitmap
+            Single.fromCallable(() -> {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inJustDecodeBounds = true;
+                BitmapFactory.decodeFile(file.getPath(), options);
+                return options;
+            }).subscribeOn(RXSchedulers.computation()).subscribe(options -> {
+                if(options.outWidth <= 0 || options.outHeight <= 0) {
+                    e.onError(new Throwable(ChatSDK.shared().context().getString(R.string.unable_to_save_image_to_disk)));
+                }
+                else {
+                    uploadImageAndSend(message, file, options.outWidth, options.outHeight, e);
+                }
+            }, e::onError);
+        }
 
-                            message.setValueForKey(image.getWidth(), Keys.MessageImageWidth);
-                            message.setValueForKey(image.getHeight(), Keys.MessageImageHeight);
-                            message.setValueForKey(result.url, Keys.MessageImageURL);
-                            message.setValueForKey(result.url, Keys.MessageThumbnailURL);
+        protected void uploadImageAndSend (final Message message, final File file, final int width, final int height, final ObservableEmitter<MessageSendProgress> e) {
+            ChatSDK.upload().uploadFile(Uri.fromFile(file), "image.jpg", "image/jpeg", message.getEntityID())
+                    .startWith(uploadThumbnail(message, file).<FileUploadResult>toObservable())
+                    .observeOn(RXSchedulers.db())
+                    .subscribe(new Observer<FileUploadResult>() {
+                @Override
+                public void onSubscribe(Disposable d) {}
 
-                            message.update();
+                @Override
+                public void onNext(FileUploadResult result) {
+                    if(!StringChecker.isNullOrEmpty(result.url))  {
 
-                            Timber.v("ProgressListener: " + result.progress.asFraction());
+                        message.setValueForKey(width, Keys.MessageImageWidth);
+                        message.setValueForKey(height, Keys.MessageImageHeight);
+                        message.setValueForKey(result.url, Keys.MessageImageURL);
 
+                        // Fall back to the full image if the thumbnail couldn't be uploaded
+                        if (StringChecker.isNullOrEmpty(message.stringForKey(Keys.MessageThumbnailURL))) {
+                            message.setValueForKey(result.url, Keys.MessageThumbnailURL);
                         }
 
-                        e.onNext(new MessageSendProgress(message, result.progress));
+                        message.update();
+
+                        Timber.v("ProgressListener: " + result.progress.asFraction());
 
                     }
 
-                    @Override
-                    public void onError(Throwable ex) {
-                        e.onError(ex);
+                    e.onNext(new MessageSendProgress(message, result.progress));
+
+                }
+
+                @Override
+                public void onError(Throwable ex) {
+                    // Without a session the upload can't be resumed so the compressed copy isn't needed
+                    if (UploadSessionStore.get(message.getEntityID()) == null) {
+                        file.delete();
                     }
+                    e.onError(ex);
+                }
 
-                    @Override
-                    public void onComplete() {
+                @Override
+                public void onComplete() {
 
-                        message.setMessageStatus(MessageSendStatus.Sending);
-                        message.update();
+                    // The file is the compressed copy, it's only kept after a failure so the upload can be resumed
+                    file.delete();
 
-                        e.onNext(new MessageSendProgress(message));
+                    message.setMessageStatus(MessageSendStatus.Sending);
+                    message.update();
 
-                        ObservableConnector<MessageSendProgress> connector = new ObservableConnector<>();
-                        connector.connect(ChatSDK.thread().sendMessage(message), e);
+                    e.onNext(new MessageSendProgress(message));
 
-                    }
-                });
-            }).subscribeOn(Schedulers.single());
+                    ObservableConnector<MessageSendProgress> connector = new ObservableConnector<>();
+                    connector.connect(ChatSDK.thread().sendMessage(message), e);
+
+                }
+            });
+        }
+
+        /**
+         * Make a small thumbnail and an inline preview on the device so other clients don't
+         * have to download the full image to show the message. The preview is stored in the
+         * message meta and the thumbnail is uploaded before the full image
+         */
+        protected Completable uploadThumbnail (final Message message, final File file) {
+            return Completable.defer(() -> {
+                if (!StringChecker.isNullOrEmpty(message.stringForKey(Keys.MessageThumbnailURL))) {
+                    return Completable.complete();
+                }
+
+                return Maybe.fromCallable(() -> makeThumbnail(file))
+                        .subscribeOn(RXSchedulers.computation())
+                        .observeOn(RXSchedulers.db())
+                        .flatMapCompletable(thumbnail -> {
+                            if (thumbnail.preview != null) {
+                                message.setValueForKey(thumbnail.preview, Keys.MessageImagePreview);
+                                message.update();
+                            }
+                            if (thumbnail.file == null) {
+                                return Completable.complete();
+                            }
+
+                            final File uploadFile = thumbnail.file;
+                            return ChatSDK.upload().uploadFile(uploadFile, "thumbnail.jpg", "image/jpeg")
+                                    .filter(FileUploadResult::urlValid)
+                                    .observeOn(RXSchedulers.db())
+                                    .doOnNext(result -> {
+                                        message.setValueForKey(result.url, Keys.MessageThumbnailURL);
+                                        message.update();
+                                    })
+                                    .ignoreElements()
+                                    .doFinally(uploadFile::delete);
+                        })
+                        .onErrorComplete();
+            });
+        }
+
+        /**
+         * Called on the computation scheduler
+         * @return null if the image can't be decoded
+         */
+        protected Thumbnail makeThumbnail (File file) {
+            Bitmap bitmap = ImageUtils.decodeScaledBitmap(file.getPath(), ChatSDK.config().imageMaxThumbnailDimension);
+            if (bitmap == null) {
+                return null;
+            }
+
+            Thumbnail thumbnail = new Thumbnail();
+            thumbnail.preview = ImageUtils.getPreviewString(bitmap, ChatSDK.config().imagePreviewDimension);
+
+            File thumbnailFile = ImageUtils.createEmptyFileInCacheDirectory(ChatSDK.shared().context(), "thumbnail", ".jpg");
+            thumbnail.file = ImageUtils.compressImageToFile(bitmap, thumbnailFile, Bitmap.CompressFormat.JPEG, 70);
+            bitmap.recycle();
 
+            return thumbnail;
         }
 }
@@ -7,6 +7,7 @@ import co.chatsdk.core.dao.Message;
 import co.chatsdk.core.dao.Thread;
 import co.chatsdk.core.handlers.LocationMessageHandler;
 import co.chatsdk.core.rx.ObservableConnector;
+import co.chatsdk.core.rx.RXSchedulers;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.session.NM;
 import co.chatsdk.core.types.MessageSendProgress;
@@ -14,7 +15,6 @@ import co.chatsdk.core.types.MessageType;
 import co.chatsdk.core.utils.GoogleUtils;
 import io.reactivex.Observable;
 import io.reactivex.ObservableOnSubscribe;
-import io.reactivex.schedulers.Schedulers;
 
 /**
  * Created by ben on 10/24/17.
@@ -50,7 +50,7 @@ public class BaseLocationMessageHandler implements LocationMessageHandler {
             ObservableConnector<MessageSendProgress> connector = new ObservableConnector<>();
             connector.connect(ChatSDK.thread().sendMessage(message), e);
 
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.db());
     }
 
 }
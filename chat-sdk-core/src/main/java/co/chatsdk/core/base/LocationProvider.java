@@ -23,6 +23,7 @@ import com.google.android.gms.location.SettingsClient;
 import java.util.List;
 
 import co.chatsdk.core.R;
+import co.chatsdk.core.rx.RXSchedulers;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.utils.ActivityResultPushSubjectHolder;
 import co.chatsdk.core.utils.DisposableList;
@@ -33,7 +34,6 @@ import io.reactivex.ObservableOnSubscribe;
 import io.reactivex.Single;
 import io.reactivex.SingleOnSubscribe;
 import io.reactivex.android.schedulers.AndroidSchedulers;
-import io.reactivex.schedulers.Schedulers;
 
 /**
  * Created by Pepe on 01/25/19.
@@ -137,7 +137,7 @@ public class LocationProvider {
                     activity.runOnUiThread(() -> {
                         locationClient.requestLocationUpdates(locationUpdatesRequest, locationCallback, Looper.myLooper());
                     });
-                }).subscribeOn(Schedulers.single()).observeOn(AndroidSchedulers.mainThread()));
+                }).subscribeOn(RXSchedulers.computation()).observeOn(AndroidSchedulers.mainThread()));
     }
 
     @SuppressLint("MissingPermission")
@@ -151,7 +151,7 @@ public class LocationProvider {
                             single.onError(new Error(context().getResources().getString(R.string.location_is_null)));
                         }
                     }).addOnFailureListener(single::onError);
-                })).subscribeOn(Schedulers.single()));
+                })).subscribeOn(RXSchedulers.computation()));
     }
 
     public Location getMostAccurateLocation(List<Location> locations) {
@@ -8,21 +8,32 @@
 package co.chatsdk.core.dao;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.util.LruCache;
 
+import org.greenrobot.greendao.AbstractDao;
 import org.greenrobot.greendao.Property;
 import org.greenrobot.greendao.annotation.Keep;
 import org.greenrobot.greendao.async.AsyncSession;
+import org.greenrobot.greendao.database.Database;
+import org.greenrobot.greendao.database.StandardDatabase;
+import org.greenrobot.greendao.identityscope.IdentityScope;
+import org.greenrobot.greendao.query.Query;
 import org.greenrobot.greendao.query.QueryBuilder;
 
 import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.math.BigInteger;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import co.chatsdk.core.interfaces.CoreEntity;
 import co.chatsdk.core.session.ChatSDK;
+import co.chatsdk.core.types.ReadStatus;
 import timber.log.Timber;
 
 /**
@@ -43,6 +54,7 @@ public class DaoCore {
     private static Context context;
 
     private static DaoMaster.OpenHelper helper;
+    private static Field identityScopeField;
 
     @SuppressWarnings("all")
     private static SQLiteDatabase db;
@@ -57,6 +69,13 @@ public class DaoCore {
      * A workaround this is available by Checking for certain classes and use a different property for this class.*/
     public final static Property EntityID = new Property(1, String.class, "entityID", false, "ENTITY_ID");
 
+    private static final int ENTITY_ID_CACHE_SIZE = 2000;
+
+    /** Maps class name and entity ID to the row id so repeated lookups become a primary key load
+     * which greenDAO can usually answer from its identity scope without touching the database */
+    private static final LruCache<String, Long> entityIDCache = new LruCache<>(ENTITY_ID_CACHE_SIZE);
+
+
     public static void init(Context ctx) {
         dbName = DB_NAME;
         context = ctx;
@@ -85,9 +104,18 @@ public class DaoCore {
         }
 
         db = helper.getWritableDatabase();
-        daoMaster = new DaoMaster(db);
+
+        Database database = new StandardDatabase(db);
+        if (ChatSDK.config().detectMainThreadDatabaseAccess) {
+            database = new MainThreadAccessDetector(database, ChatSDK.config().mainThreadDatabaseAccessFatal);
+        }
+        daoMaster = new DaoMaster(database);
         daoSession = daoMaster.newSession();
         asyncSession = daoSession.startAsyncSession();
+
+        entityIDCache.evictAll();
+        QueryRegistry.clear();
+        SearchIndex.open(database);
     }
 
     public static String generateRandomName() {
@@ -98,12 +126,46 @@ public class DaoCore {
     /**
      * Fetch entity for given entity ID, If more then one found the first will be returned.
      */
+    @SuppressWarnings("unchecked")
     public static <T extends CoreEntity> T fetchEntityWithEntityID(Class<T> c, Object entityID){
-        Property[] properties = daoSession.getDao(c).getProperties();
+        if (entityID == null)
+            return null;
+
+        AbstractDao<T, Long> dao = (AbstractDao<T, Long>) daoSession.getDao(c);
+        String cacheKey = entityIDCacheKey(c, entityID);
+
+        Long id = entityIDCache.get(cacheKey);
+        if (id != null) {
+            T entity = dao.load(id);
+            // The row could have been deleted or given a new entity ID since it was cached
+            if (entity != null && entityID.toString().equals(entity.getEntityID())) {
+                return entity;
+            }
+            entityIDCache.remove(cacheKey);
+        }
+
+        Query<T> query = QueryRegistry.entityWithEntityID(c);
+        if (query == null) return null; // EntityId is missing from dao table, must always be first property after id
+
+        query.setParameter(0, entityID);
+
+        List<T> list = query.list();
+        if (list == null || list.size() == 0)
+            return null;
 
-        if(!properties[1].columnName.equals(EntityID.columnName)) return null; // EntityId is missing from dao table, must always be first property after id
+        T entity = list.get(0);
+        cacheEntityID(entity);
+        return entity;
+    }
+
+    private static String entityIDCacheKey(Class<?> c, Object entityID){
+        return c.getName() + ":" + entityID;
+    }
 
-        return fetchEntityWithProperty(c, properties[1], entityID);
+    private static void cacheEntityID(CoreEntity entity){
+        if (entity != null && entity.getId() != null && entity.getEntityID() != null) {
+            entityIDCache.put(entityIDCacheKey(entity.getClass(), entity.getEntityID()), entity.getId());
+        }
     }
 
     /** Fetch an entity for given property and value. If more then one found the first will be returned.*/
@@ -158,7 +220,6 @@ public class DaoCore {
             throw new IllegalArgumentException("Values size should match properties size");
 
         QueryBuilder<T> qb = daoSession.queryBuilder(c);
-        qb.where(properties[0].eq(values[0]));
 
         for (int i = 0 ; i < values.length ; i++)
             qb.where(properties[i].eq(values[i]));
@@ -187,11 +248,9 @@ public class DaoCore {
             throw new IllegalArgumentException("Values size should match properties size");
 
         QueryBuilder<T> qb = daoSession.queryBuilder(c);
-        qb.where(properties[0].eq(values[0]));
 
-        if (values.length > 1)
-            for (int i = 0 ; i < values.length ; i++)
-                qb.where(properties[i].eq(values[i]));
+        for (int i = 0 ; i < values.length ; i++)
+            qb.where(properties[i].eq(values[i]));
 
         if (whereOrder != null && order != -1)
             switch (order)
@@ -211,6 +270,169 @@ public class DaoCore {
         return qb.listLazy();
     }
 
+    /* Aggregates - these run directly against the database without loading any entities */
+
+    /** A message is unread when its read flag isn't set, it wasn't sent by the user and
+     * it's newer than the user's read watermark for the thread. {@link Message#isRead()} uses the same rule */
+    private static final String UNREAD_MESSAGES_WHERE =
+            " WHERE (M." + MessageDao.Properties.Read.columnName + " IS NULL OR M." + MessageDao.Properties.Read.columnName + " = 0)" +
+            " AND (M." + MessageDao.Properties.SenderId.columnName + " IS NULL OR M." + MessageDao.Properties.SenderId.columnName + " <> ?)" +
+            " AND NOT EXISTS (SELECT 1 FROM " + UserThreadLinkDao.TABLENAME + " L" +
+            " WHERE L." + UserThreadLinkDao.Properties.ThreadId.columnName + " = M." + MessageDao.Properties.ThreadId.columnName +
+            " AND L." + UserThreadLinkDao.Properties.UserId.columnName + " = ?" +
+            " AND L." + UserThreadLinkDao.Properties.ReadUpTo.columnName + " >= M." + MessageDao.Properties.Date.columnName + ")";
+
+    public static int countUnreadMessagesForThread(Long threadId, Long userId){
+        if (threadId == null)
+            return 0;
+
+        UnitOfWork.flushCurrent();
+
+        String sql = "SELECT COUNT(*) FROM " + MessageDao.TABLENAME + " M" + UNREAD_MESSAGES_WHERE +
+                " AND M." + MessageDao.Properties.ThreadId.columnName + " = ?";
+
+        Cursor cursor = daoSession.getDatabase().rawQuery(sql, new String[] {idArg(userId), idArg(userId), threadId.toString()});
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /** Unread message counts for every thread that has at least one unread message, keyed by thread id */
+    public static Map<Long, Integer> countUnreadMessagesByThread(Long userId){
+        UnitOfWork.flushCurrent();
+
+        String sql = "SELECT M." + MessageDao.Properties.ThreadId.columnName + ", COUNT(*) FROM " + MessageDao.TABLENAME + " M" + UNREAD_MESSAGES_WHERE +
+                " AND M." + MessageDao.Properties.ThreadId.columnName + " IS NOT NULL" +
+                " GROUP BY M." + MessageDao.Properties.ThreadId.columnName;
+
+        Map<Long, Integer> counts = new HashMap<>();
+        Cursor cursor = daoSession.getDatabase().rawQuery(sql, new String[] {idArg(userId), idArg(userId)});
+        try {
+            while (cursor.moveToNext()) {
+                counts.put(cursor.getLong(0), cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return counts;
+    }
+
+    /** Sets the read flag on every message in the thread with a single update statement */
+    public static void markMessagesReadForThread(Long threadId){
+        if (threadId == null)
+            return;
+
+        UnitOfWork.flushCurrent();
+
+        daoSession.getDatabase().execSQL("UPDATE " + MessageDao.TABLENAME +
+                " SET " + MessageDao.Properties.Read.columnName + " = 1" +
+                " WHERE " + MessageDao.Properties.ThreadId.columnName + " = ?" +
+                " AND (" + MessageDao.Properties.Read.columnName + " IS NULL OR " + MessageDao.Properties.Read.columnName + " = 0)",
+                new Object[] {threadId});
+    }
+
+    /** Recalculates the read status summary of the thread's messages sent after from, or all of them if
+     * it's null, up to and including upTo with a single update statement. This mirrors
+     * {@link Message#updateReadStatusSummary(List)} */
+    public static void updateReadStatusSummaries(Long threadId, Long from, Long upTo){
+        if (threadId == null || upTo == null)
+            return;
+
+        UnitOfWork.flushCurrent();
+
+        String message = MessageDao.TABLENAME;
+        String date = message + "." + MessageDao.Properties.Date.columnName;
+        String status = "CASE WHEN L." + UserThreadLinkDao.Properties.ReadUpTo.columnName + " >= " + date + " THEN " + ReadStatus.Read +
+                " WHEN L." + UserThreadLinkDao.Properties.DeliveredUpTo.columnName + " >= " + date + " THEN " + ReadStatus.Delivered +
+                " ELSE " + ReadStatus.None + " END";
+        String links = " FROM " + UserThreadLinkDao.TABLENAME + " L" +
+                " WHERE L." + UserThreadLinkDao.Properties.ThreadId.columnName + " = " + message + "." + MessageDao.Properties.ThreadId.columnName +
+                " AND L." + UserThreadLinkDao.Properties.UserId.columnName + " IS NOT NULL" +
+                " AND L." + UserThreadLinkDao.Properties.UserId.columnName + " IS NOT " + message + "." + MessageDao.Properties.SenderId.columnName + ")";
+
+        String where = " WHERE " + MessageDao.Properties.ThreadId.columnName + " = ?" +
+                " AND " + MessageDao.Properties.Date.columnName + " <= ?" +
+                (from != null ? " AND " + MessageDao.Properties.Date.columnName + " > ?" : "");
+        Object[] args = from != null ? new Object[] {threadId, upTo, from} : new Object[] {threadId, upTo};
+
+        daoSession.getDatabase().execSQL("UPDATE " + message + " SET " +
+                MessageDao.Properties.ReadStatusMin.columnName + " = (SELECT MIN(" + status + ")" + links + ", " +
+                MessageDao.Properties.ReadStatusMax.columnName + " = (SELECT MAX(" + status + ")" + links + where, args);
+
+        // Messages that are already loaded still have the old summary. Only the ids are read
+        // so messages that aren't in memory are never loaded
+        IdentityScope<Long, Message> scope = identityScope(daoSession.getMessageDao());
+        if (scope == null)
+            return;
+
+        String[] stringArgs = new String[args.length];
+        for (int i = 0; i < args.length; i++) {
+            stringArgs[i] = args[i].toString();
+        }
+
+        Cursor cursor = daoSession.getDatabase().rawQuery("SELECT " + MessageDao.Properties.Id.columnName + " FROM " + message + where, stringArgs);
+        try {
+            while (cursor.moveToNext()) {
+                Message m = scope.get(cursor.getLong(0));
+                if (m != null) {
+                    daoSession.getMessageDao().refresh(m);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /** greenDAO doesn't expose the identity scope so it's read from the dao's field
+     * @return null if the scope can't be read or the session has no identity scope */
+    @SuppressWarnings("unchecked")
+    private static <T> IdentityScope<Long, T> identityScope(AbstractDao<T, Long> dao){
+        try {
+            if (identityScopeField == null) {
+                Field field = AbstractDao.class.getDeclaredField("identityScope");
+                field.setAccessible(true);
+                identityScopeField = field;
+            }
+            return (IdentityScope<Long, T>) identityScopeField.get(dao);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            Timber.w(e);
+            return null;
+        }
+    }
+
+    /** Deletes every message in the thread along with its meta values and read receipts without loading them */
+    public static void deleteMessagesForThread(final Long threadId){
+        if (threadId == null)
+            return;
+
+        UnitOfWork.flushCurrent();
+
+        final String threadMessages = "SELECT " + MessageDao.Properties.Id.columnName + " FROM " + MessageDao.TABLENAME +
+                " WHERE " + MessageDao.Properties.ThreadId.columnName + " = ?";
+        final Object[] args = new Object[] {threadId};
+
+        daoSession.runInTx(() -> {
+            daoSession.getDatabase().execSQL("DELETE FROM " + MessageMetaValueDao.TABLENAME +
+                    " WHERE " + MessageMetaValueDao.Properties.MessageId.columnName + " IN (" + threadMessages + ")", args);
+            daoSession.getDatabase().execSQL("DELETE FROM " + ReadReceiptUserLinkDao.TABLENAME +
+                    " WHERE " + ReadReceiptUserLinkDao.Properties.MessageId.columnName + " IN (" + threadMessages + ")", args);
+            daoSession.getDatabase().execSQL("DELETE FROM " + MessageDao.TABLENAME +
+                    " WHERE " + MessageDao.Properties.ThreadId.columnName + " = ?", args);
+        });
+
+        // The deleted rows may still be in the identity scopes
+        daoSession.getMessageDao().detachAll();
+        daoSession.getMessageMetaValueDao().detachAll();
+        daoSession.getReadReceiptUserLinkDao().detachAll();
+    }
+
+    private static String idArg(Long id){
+        // -1 never matches a row id so a missing user just doesn't filter anything out
+        return id != null ? id.toString() : "-1";
+    }
+
     /* Update, Create and Delete*/
     public static  <T extends CoreEntity> T createEntity(T entity){
         if (DEBUG) Timber.v("createEntity");
@@ -222,6 +444,8 @@ public class DaoCore {
 
         daoSession.insertOrReplace(entity);
 
+        cacheEntityID(entity);
+
         return entity;
     }
 
@@ -234,10 +458,15 @@ public class DaoCore {
             return null;
         }
 
+        UnitOfWork.forget(entity);
         daoSession.delete(entity);
 
         daoSession.clear();
 
+        if (entity.getEntityID() != null) {
+            entityIDCache.remove(entityIDCacheKey(entity.getClass(), entity.getEntityID()));
+        }
+
         return entity;
     }
 
@@ -247,7 +476,9 @@ public class DaoCore {
         if (entity==null)
             return null;
 
-        daoSession.update(entity);
+        if (!UnitOfWork.deferUpdate(entity, daoSession.getDao(entity.getClass()))) {
+            daoSession.update(entity);
+        }
 
         return entity;
     }
@@ -2,6 +2,8 @@ package co.chatsdk.core.dao;
 
 import android.content.Context;
 
+import android.database.Cursor;
+
 import org.greenrobot.greendao.database.Database;
 
 import java.util.ArrayList;
@@ -9,6 +11,10 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
+import co.chatsdk.core.session.ChatSDK;
+import co.chatsdk.core.types.AuthKeys;
+import co.chatsdk.core.types.ReadStatus;
+
 /**
  * Created by ben on 4/13/18.
  */
@@ -40,6 +46,10 @@ public class DatabaseUpgradeHelper extends DaoMaster.OpenHelper {
         migrations.add(new MigrationV6());
         migrations.add(new MigrationV7());
         migrations.add(new MigrationV8());
+        migrations.add(new MigrationV9());
+        migrations.add(new MigrationV10());
+        migrations.add(new MigrationV11());
+        migrations.add(new MigrationV12());
 
         // Sorting just to be safe, in case other people add migrations in the wrong order.
         Comparator<Migration> migrationComparator = (m1, m2) -> m1.getVersion().compareTo(m2.getVersion());
@@ -145,6 +155,117 @@ public class DatabaseUpgradeHelper extends DaoMaster.OpenHelper {
         }
     }
 
+    private static class MigrationV9 implements Migration {
+        @Override
+        public Integer getVersion() {
+            return 9;
+        }
+
+        @Override
+        public void runMigration(Database db) {
+            // Thread summary columns. The table may already have them if it was recreated by V8
+            addColumnIfMissing(db, ThreadDao.TABLENAME, ThreadDao.Properties.LastMessageDate.columnName, "INTEGER");
+            addColumnIfMissing(db, ThreadDao.TABLENAME, ThreadDao.Properties.UnreadMessageCount.columnName, "INTEGER");
+            addColumnIfMissing(db, ThreadDao.TABLENAME, ThreadDao.Properties.MemberCount.columnName, "INTEGER");
+
+            // Backfill from the existing rows. The unread count depends on the current user so
+            // it's left null and calculated the first time it's requested
+            db.execSQL("UPDATE " + ThreadDao.TABLENAME + " SET " +
+                    ThreadDao.Properties.LastMessageDate.columnName + " = (SELECT MAX(M." + MessageDao.Properties.Date.columnName + ") FROM " + MessageDao.TABLENAME + " M WHERE M." + MessageDao.Properties.ThreadId.columnName + " = " + ThreadDao.TABLENAME + "._id), " +
+                    ThreadDao.Properties.LastMessageId.columnName + " = (SELECT M._id FROM " + MessageDao.TABLENAME + " M WHERE M." + MessageDao.Properties.ThreadId.columnName + " = " + ThreadDao.TABLENAME + "._id ORDER BY M." + MessageDao.Properties.Date.columnName + " DESC LIMIT 1), " +
+                    ThreadDao.Properties.MemberCount.columnName + " = (SELECT COUNT(*) FROM " + UserThreadLinkDao.TABLENAME + " L WHERE L." + UserThreadLinkDao.Properties.ThreadId.columnName + " = " + ThreadDao.TABLENAME + "._id)");
+        }
+    }
+
+    private static class MigrationV10 implements Migration {
+        @Override
+        public Integer getVersion() {
+            return 10;
+        }
+
+        @Override
+        public void runMigration(Database db) {
+            // Message and thread entity IDs are unique so SQLite already indexes them
+            db.execSQL("CREATE INDEX IF NOT EXISTS IDX_USER_ENTITY_ID ON \"" + UserDao.TABLENAME + "\" (\"" + UserDao.Properties.EntityID.columnName + "\" ASC)");
+        }
+    }
+
+    private static class MigrationV11 implements Migration {
+        @Override
+        public Integer getVersion() {
+            return 11;
+        }
+
+        @Override
+        public void runMigration(Database db) {
+            // Existing values are left untagged and their type is guessed when read
+            addColumnIfMissing(db, MessageMetaValueDao.TABLENAME, MessageMetaValueDao.Properties.Type.columnName, "INTEGER");
+        }
+    }
+
+    private static class MigrationV12 implements Migration {
+        @Override
+        public Integer getVersion() {
+            return 12;
+        }
+
+        @Override
+        public void runMigration(Database db) {
+            addColumnIfMissing(db, MessageDao.TABLENAME, MessageDao.Properties.ReadStatusMin.columnName, "INTEGER");
+            addColumnIfMissing(db, MessageDao.TABLENAME, MessageDao.Properties.ReadStatusMax.columnName, "INTEGER");
+            addColumnIfMissing(db, UserThreadLinkDao.TABLENAME, UserThreadLinkDao.Properties.DeliveredUpTo.columnName, "INTEGER");
+            addColumnIfMissing(db, UserThreadLinkDao.TABLENAME, UserThreadLinkDao.Properties.ReadUpTo.columnName, "INTEGER");
+
+            String message = MessageDao.TABLENAME;
+            String link = UserThreadLinkDao.TABLENAME;
+            String receipt = ReadReceiptUserLinkDao.TABLENAME;
+
+            // Summarise the per message receipts, leaving out the sender's own receipt
+            String receipts = " FROM " + receipt + " R WHERE R." + ReadReceiptUserLinkDao.Properties.MessageId.columnName + " = " + message + "._id" +
+                    " AND R." + ReadReceiptUserLinkDao.Properties.UserId.columnName + " IS NOT " + message + "." + MessageDao.Properties.SenderId.columnName + ")";
+            db.execSQL("UPDATE " + message + " SET " +
+                    MessageDao.Properties.ReadStatusMin.columnName + " = (SELECT MIN(R." + ReadReceiptUserLinkDao.Properties.Status.columnName + ")" + receipts + ", " +
+                    MessageDao.Properties.ReadStatusMax.columnName + " = (SELECT MAX(R." + ReadReceiptUserLinkDao.Properties.Status.columnName + ")" + receipts);
+
+            // Each member's watermark is the newest message they have a receipt for
+            String watermark = "(SELECT MAX(M." + MessageDao.Properties.Date.columnName + ") FROM " + message + " M, " + receipt + " R" +
+                    " WHERE R." + ReadReceiptUserLinkDao.Properties.MessageId.columnName + " = M._id" +
+                    " AND M." + MessageDao.Properties.ThreadId.columnName + " = " + link + "." + UserThreadLinkDao.Properties.ThreadId.columnName +
+                    " AND R." + ReadReceiptUserLinkDao.Properties.UserId.columnName + " = " + link + "." + UserThreadLinkDao.Properties.UserId.columnName +
+                    " AND R." + ReadReceiptUserLinkDao.Properties.Status.columnName + " >= ";
+            db.execSQL("UPDATE " + link + " SET " +
+                    UserThreadLinkDao.Properties.DeliveredUpTo.columnName + " = " + watermark + ReadStatus.Delivered + "), " +
+                    UserThreadLinkDao.Properties.ReadUpTo.columnName + " = " + watermark + ReadStatus.Read + ")");
+
+            // The current user's own receipts become the read flag, otherwise messages they had
+            // read would count as unread once the rows are gone
+            String currentUserEntityID = ChatSDK.shared().getPreferences().getString(AuthKeys.CurrentUserID, null);
+            if (currentUserEntityID != null) {
+                db.execSQL("UPDATE " + message + " SET " + MessageDao.Properties.Read.columnName + " = 1" +
+                        " WHERE _id IN (SELECT R." + ReadReceiptUserLinkDao.Properties.MessageId.columnName + " FROM " + receipt + " R" +
+                        " WHERE R." + ReadReceiptUserLinkDao.Properties.Status.columnName + " >= " + ReadStatus.Read +
+                        " AND R." + ReadReceiptUserLinkDao.Properties.UserId.columnName + " = (SELECT _id FROM \"" + UserDao.TABLENAME + "\"" +
+                        " WHERE " + UserDao.Properties.EntityID.columnName + " = ?))", new Object[] {currentUserEntityID});
+            }
+
+            // The per message rows aren't used any more
+            db.execSQL("DELETE FROM " + receipt);
+        }
+    }
+
+    private static void addColumnIfMissing (Database db, String table, String column, String type) {
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        try {
+            while (cursor.moveToNext()) {
+                if (column.equals(cursor.getString(cursor.getColumnIndex("name")))) {
+                    return;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type);
+    }
 
     private interface Migration {
         Integer getVersion();
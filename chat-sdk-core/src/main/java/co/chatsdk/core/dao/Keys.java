@@ -53,6 +53,7 @@ public class Keys {
     public static final String MessageLatitude = "latitude";
     public static final String MessageImageURL = "image-url";
     public static final String MessageThumbnailURL = "thumbnail-url";
+    public static final String MessageImagePreview = "image-preview";
     public static final String MessageImageWidth = "image-width";
     public static final String MessageImageHeight = "image-height";
     public static final String MessageVideoURL = "video-url";
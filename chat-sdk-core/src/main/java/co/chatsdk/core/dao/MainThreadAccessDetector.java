@@ -0,0 +1,222 @@
+package co.chatsdk.core.dao;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.os.Looper;
+
+import org.greenrobot.greendao.database.Database;
+import org.greenrobot.greendao.database.DatabaseStatement;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import timber.log.Timber;
+
+/**
+ * Works like StrictMode for the database. It wraps the database the DAO session uses and reports
+ * any query, write or transaction that runs on the main looper. Each call site is only reported
+ * once, the first frame outside the database code is used to tell call sites apart.
+ *
+ * It's enabled with {@link co.chatsdk.core.session.Configuration#detectMainThreadDatabaseAccess}
+ * and is meant for debug builds, every call checks the current looper.
+ */
+
+public class MainThreadAccessDetector implements Database {
+
+    public static class Violation extends RuntimeException {
+        public Violation (String message) {
+            super(message);
+        }
+    }
+
+    // Frames in these packages are part of the database access rather than its caller
+    protected static final String[] IgnoredPackages = {
+            "co.chatsdk.core.dao.",
+            "org.greenrobot.greendao.",
+            "android.database.",
+            "java.",
+            "dalvik.",
+    };
+
+    protected static final AtomicLong violationCount = new AtomicLong();
+    protected static final Set<String> reportedCallSites = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    protected final Database database;
+    protected final boolean fatal;
+
+    public MainThreadAccessDetector (Database database, boolean fatal) {
+        this.database = database;
+        this.fatal = fatal;
+    }
+
+    /**
+     * The number of times the database has been accessed on the main thread
+     */
+    public static long violationCount () {
+        return violationCount.get();
+    }
+
+    protected void check (String operation) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            return;
+        }
+        violationCount.incrementAndGet();
+
+        Violation violation = new Violation("Database " + operation + " on the main thread");
+        String callSite = callSite(violation.getStackTrace());
+        if (fatal) {
+            throw violation;
+        }
+        if (reportedCallSites.add(callSite)) {
+            Timber.w(violation, "Database %s on the main thread from %s", operation, callSite);
+        }
+    }
+
+    protected static String callSite (StackTraceElement[] stack) {
+        for (StackTraceElement element : stack) {
+            if (!isIgnored(element.getClassName())) {
+                return element.toString();
+            }
+        }
+        return "unknown";
+    }
+
+    protected static boolean isIgnored (String className) {
+        for (String prefix : IgnoredPackages) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        check("query");
+        return database.rawQuery(sql, selectionArgs);
+    }
+
+    @Override
+    public void execSQL(String sql) throws SQLException {
+        check("write");
+        database.execSQL(sql);
+    }
+
+    @Override
+    public void execSQL(String sql, Object[] bindArgs) throws SQLException {
+        check("write");
+        database.execSQL(sql, bindArgs);
+    }
+
+    @Override
+    public void beginTransaction() {
+        check("transaction");
+        database.beginTransaction();
+    }
+
+    @Override
+    public void endTransaction() {
+        database.endTransaction();
+    }
+
+    @Override
+    public boolean inTransaction() {
+        return database.inTransaction();
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+        database.setTransactionSuccessful();
+    }
+
+    @Override
+    public DatabaseStatement compileStatement(String sql) {
+        // greenDAO caches statements so the check has to happen when they run
+        return new Statement(database.compileStatement(sql));
+    }
+
+    @Override
+    public boolean isDbLockedByCurrentThread() {
+        return database.isDbLockedByCurrentThread();
+    }
+
+    @Override
+    public void close() {
+        database.close();
+    }
+
+    @Override
+    public Object getRawDatabase() {
+        return database.getRawDatabase();
+    }
+
+    protected class Statement implements DatabaseStatement {
+
+        protected final DatabaseStatement statement;
+
+        protected Statement (DatabaseStatement statement) {
+            this.statement = statement;
+        }
+
+        @Override
+        public void execute() {
+            check("write");
+            statement.execute();
+        }
+
+        @Override
+        public long simpleQueryForLong() {
+            check("query");
+            return statement.simpleQueryForLong();
+        }
+
+        @Override
+        public long executeInsert() {
+            check("write");
+            return statement.executeInsert();
+        }
+
+        @Override
+        public void bindNull(int index) {
+            statement.bindNull(index);
+        }
+
+        @Override
+        public void bindString(int index, String value) {
+            statement.bindString(index, value);
+        }
+
+        @Override
+        public void bindBlob(int index, byte[] value) {
+            statement.bindBlob(index, value);
+        }
+
+        @Override
+        public void bindLong(int index, long value) {
+            statement.bindLong(index, value);
+        }
+
+        @Override
+        public void bindDouble(int index, double value) {
+            statement.bindDouble(index, value);
+        }
+
+        @Override
+        public void clearBindings() {
+            statement.clearBindings();
+        }
+
+        @Override
+        public void close() {
+            statement.close();
+        }
+
+        @Override
+        public Object getRawStatement() {
+            return statement.getRawStatement();
+        }
+    }
+
+}
@@ -12,12 +12,14 @@ import org.greenrobot.greendao.annotation.Convert;
 import org.greenrobot.greendao.annotation.Entity;
 import org.greenrobot.greendao.annotation.Generated;
 import org.greenrobot.greendao.annotation.Id;
+import org.greenrobot.greendao.annotation.Keep;
 import org.greenrobot.greendao.annotation.ToMany;
 import org.greenrobot.greendao.annotation.ToOne;
+import org.greenrobot.greendao.annotation.Transient;
 import org.greenrobot.greendao.annotation.Unique;
+import org.greenrobot.greendao.query.Query;
 import org.joda.time.DateTime;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
@@ -48,8 +50,10 @@ public class Message implements CoreEntity {
     private Long nextMessageId;
     private Long lastMessageId;
 
-    @ToMany(referencedJoinProperty = "messageId")
-    private List<ReadReceiptUserLink> readReceiptLinks;
+    // The lowest and highest read status of the thread's other members, kept up to date as
+    // read receipts arrive so the status can be shown without looking at each member
+    private Integer readStatusMin;
+    private Integer readStatusMax;
 
     @ToOne(joinProperty = "senderId")
     private User sender;
@@ -66,6 +70,9 @@ public class Message implements CoreEntity {
     @ToMany(referencedJoinProperty = "messageId")
     private List<MessageMetaValue> metaValues;
 
+    @Transient
+    private MetaValueIndex<MessageMetaValue> metaValueIndex = new MetaValueIndex<>();
+
     /** Used to resolve relations */
     @Generated(hash = 2040040024)
     private transient DaoSession daoSession;
@@ -74,10 +81,10 @@ public class Message implements CoreEntity {
     @Generated(hash = 859287859)
     private transient MessageDao myDao;
 
-    @Generated(hash = 842349170)
-    public Message(Long id, String entityID, DateTime date, Boolean read, Integer type,
-            Integer status, Long senderId, Long threadId, Long nextMessageId,
-            Long lastMessageId) {
+    @Generated(hash = 564910306)
+    public Message(Long id, String entityID, DateTime date, Boolean read, Integer type, Integer status,
+            Long senderId, Long threadId, Long nextMessageId, Long lastMessageId, Integer readStatusMin,
+            Integer readStatusMax) {
         this.id = id;
         this.entityID = entityID;
         this.date = date;
@@ -88,6 +95,8 @@ public class Message implements CoreEntity {
         this.threadId = threadId;
         this.nextMessageId = nextMessageId;
         this.lastMessageId = lastMessageId;
+        this.readStatusMin = readStatusMin;
+        this.readStatusMax = readStatusMax;
     }
 
     @Generated(hash = 637306882)
@@ -106,20 +115,23 @@ public class Message implements CoreEntity {
     @Generated(hash = 88977546)
     private transient Long lastMessage__resolvedKey;
 
+    /**
+     * The same rule as the unread count query in {@link DaoCore}: the read flag is set, the
+     * current user sent the message or it's covered by the current user's read watermark
+     */
     public boolean isRead() {
-        ReadStatus status = readStatusForUser(ChatSDK.currentUser());
-        if (status != null && status.is(ReadStatus.read())) {
+        if (read != null && read) {
             return true;
         }
-        else if (sender != null && sender.isMe()) {
-            return true;
-        }
-        else if (read == null) {
+        User currentUser = ChatSDK.currentUser();
+        if (currentUser == null) {
             return false;
         }
-        else {
-            return read;
+        if (senderId != null && senderId.equals(currentUser.getId())) {
+            return true;
         }
+        UserThreadLink link = threadLinkForUser(currentUser);
+        return link != null && link.readStatusForDate(date).getValue() >= ReadStatus.Read;
     }
 
     @Override
@@ -166,28 +178,28 @@ public class Message implements CoreEntity {
     }
 
     protected void setMetaValue(String key, Object value) {
-        MessageMetaValue metaValue = (MessageMetaValue) metaValue(key);
+        MessageMetaValue metaValue = metaValue(key);
         if (metaValue == null) {
             metaValue = ChatSDK.db().createEntity(MessageMetaValue.class);
             metaValue.setMessageId(this.getId());
             getMetaValues().add(metaValue);
+            metaValueIndex.invalidate();
         }
         metaValue.setValue(MetaValueHelper.toString(value));
+        metaValue.setType(MetaValueHelper.typeOf(value));
         metaValue.setKey(key);
         metaValue.update();
         update();
     }
 
-    protected MetaValue metaValue (String key) {
-        ArrayList<MetaValue> values = new ArrayList<>();
-        values.addAll(getMetaValues());
-        return MetaValueHelper.metaValueForKey(key, values);
+    protected MessageMetaValue metaValue (String key) {
+        return metaValueIndex.get(key, getMetaValues());
     }
 
     public Object valueForKey (String key) {
-        MetaValue value = metaValue(key);
+        MessageMetaValue value = metaValue(key);
         if (value != null && value.getValue() != null) {
-            return MetaValueHelper.toObject(value.getValue());
+            return MetaValueHelper.toObject(value.getValue(), value.getType());
         } else {
             return null;
         }
@@ -204,41 +216,70 @@ public class Message implements CoreEntity {
 
     public Double doubleForKey (String key) {
         Object value = valueForKey(key);
-        if (value instanceof Double) {
-            return (Double) value;
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
         }
         else {
             return (double) 0;
         }
     }
 
-    public ReadReceiptUserLink linkForUser (User user) {
-        for(ReadReceiptUserLink link : getReadReceiptLinks()) {
-            User linkUser = link.getUser();
-            if (linkUser != null && user != null) {
-                if(linkUser.equals(user)) {
-                    return link;
-                }
-            }
+    /**
+     * The user's membership of this message's thread, which holds their read receipt watermarks
+     */
+    public UserThreadLink threadLinkForUser (User user) {
+        if (user == null || user.getId() == null || threadId == null) {
+            return null;
         }
-        return null;
+        Query<UserThreadLink> query = QueryRegistry.userThreadLink();
+        query.setParameter(0, threadId);
+        query.setParameter(1, user.getId());
+        return query.unique();
     }
 
+    /**
+     * Receipts are stored as a per thread watermark so a receipt for this message also covers
+     * every earlier message in the thread
+     */
     public void setUserReadStatus (User user, ReadStatus status, DateTime date) {
-        ReadReceiptUserLink link = linkForUser(user);
-        if(link == null) {
-            link = ChatSDK.db().createEntity(ReadReceiptUserLink.class);
-            link.setMessageId(this.getId());
-            getReadReceiptLinks().add(link);
+        UserThreadLink link = threadLinkForUser(user);
+        Long previousWatermark = link != null ? link.lowestWatermark() : null;
+        if (link != null && link.advanceReadStatus(status, this.date)) {
+            link.update();
+            // The receipt also covers the earlier messages
+            DaoCore.updateReadStatusSummaries(threadId, previousWatermark, link.highestWatermark());
+            // The links are in the identity scope so the thread's list already has the new watermark
+            Thread thread = getThread();
+            if (thread != null) {
+                updateReadStatusSummary(thread.getUserThreadLinks());
+            }
+        }
+        if (user.isMe() && status.getValue() >= ReadStatus.Read) {
+            setRead(true);
         }
-        link.setUser(user);
-        link.setStatus(status.getValue());
-        link.setDate(date);
-
-        link.update();
         update();
     }
 
+    /**
+     * Recalculate the summary columns from the watermarks of the thread's members. This doesn't
+     * write the message, the caller should call update()
+     */
+    public void updateReadStatusSummary (List<UserThreadLink> links) {
+        Integer min = null;
+        Integer max = null;
+        for (UserThreadLink link : links) {
+            // The sender's own status isn't part of the message's status
+            if (link.getUserId() == null || link.getUserId().equals(senderId)) {
+                continue;
+            }
+            int value = link.readStatusForDate(date).getValue();
+            min = min == null ? value : Math.min(min, value);
+            max = max == null ? value : Math.max(max, value);
+        }
+        readStatusMin = min;
+        readStatusMax = max;
+    }
+
     public LatLng getLocation () {
         Double latitude = doubleForKey(Keys.MessageLatitude);
         Double longitude = doubleForKey(Keys.MessageLongitude);
@@ -306,33 +347,32 @@ public class Message implements CoreEntity {
     }
 
     public ReadStatus readStatusForUser (String userEntityID) {
-        for(ReadReceiptUserLink link : getReadReceiptLinks()) {
-            if(link.getUser() != null && link.getUser().getEntityID().equals(userEntityID)) {
-                return new ReadStatus(link.getStatus());
-            }
+        User user = ChatSDK.db().fetchEntityWithEntityID(userEntityID, User.class);
+        UserThreadLink link = threadLinkForUser(user);
+        if (link != null) {
+            return link.readStatusForDate(date);
         }
         return ReadStatus.notSet();
     }
 
+    /**
+     * The status reached by every other member of the thread
+     */
     public ReadStatus getReadStatus () {
-        int total = 0;
-        int userCount = getReadReceiptLinks().size();
-        for(ReadReceiptUserLink link : getReadReceiptLinks()) {
-            total += link.getStatus();
+        if (readStatusMin == null) {
+            return ReadStatus.none();
         }
-        int status = ReadStatus.None;
+        return new ReadStatus(readStatusMin);
+    }
 
-        if(total >= ReadStatus.Delivered * userCount) {
-            status = ReadStatus.Delivered;
-        }
-        if(total >= ReadStatus.Read * userCount) {
-            status = ReadStatus.Read;
-        }
-        if (total == 0) {
-            status = ReadStatus.None;
+    /**
+     * The status reached by at least one other member of the thread
+     */
+    public ReadStatus getHighestReadStatus () {
+        if (readStatusMax == null) {
+            return ReadStatus.none();
         }
-        return new ReadStatus(status);
-
+        return new ReadStatus(readStatusMax);
     }
 
     public Long getSenderId() {
@@ -355,9 +395,6 @@ public class Message implements CoreEntity {
         for (MessageMetaValue value : getMetaValues()) {
             value.delete();
         }
-        for (ReadReceiptUserLink link : getReadReceiptLinks()) {
-            link.delete();
-        }
         delete();
     }
 
@@ -493,35 +530,6 @@ public class Message implements CoreEntity {
         }
     }
 
-    /**
-     * To-many relationship, resolved on first access (and after reset).
-     * Changes to to-many relations are not persisted, make changes to the target entity.
-     */
-    @Generated(hash = 2025183823)
-    public List<ReadReceiptUserLink> getReadReceiptLinks() {
-        if (readReceiptLinks == null) {
-            final DaoSession daoSession = this.daoSession;
-            if (daoSession == null) {
-                throw new DaoException("Entity is detached from DAO context");
-            }
-            ReadReceiptUserLinkDao targetDao = daoSession.getReadReceiptUserLinkDao();
-            List<ReadReceiptUserLink> readReceiptLinksNew = targetDao
-                    ._queryMessage_ReadReceiptLinks(id);
-            synchronized (this) {
-                if (readReceiptLinks == null) {
-                    readReceiptLinks = readReceiptLinksNew;
-                }
-            }
-        }
-        return readReceiptLinks;
-    }
-
-    /** Resets a to-many relationship, making the next get call to query for a fresh result. */
-    @Generated(hash = 273652628)
-    public synchronized void resetReadReceiptLinks() {
-        readReceiptLinks = null;
-    }
-
     /**
      * To-many relationship, resolved on first access (and after reset).
      * Changes to to-many relations are not persisted, make changes to the target entity.
@@ -554,11 +562,12 @@ public class Message implements CoreEntity {
      * Convenient call for {@link org.greenrobot.greendao.AbstractDao#delete(Object)}.
      * Entity must attached to an entity context.
      */
-    @Generated(hash = 128553479)
+    @Keep
     public void delete() {
         if (myDao == null) {
             throw new DaoException("Entity is detached from DAO context");
         }
+        UnitOfWork.forget(this);
         myDao.delete(this);
     }
 
@@ -576,14 +585,16 @@ public class Message implements CoreEntity {
 
     /**
      * Convenient call for {@link org.greenrobot.greendao.AbstractDao#update(Object)}.
-     * Entity must attached to an entity context.
+     * Entity must attached to an entity context. Inside a {@link UnitOfWork} the write is deferred.
      */
-    @Generated(hash = 713229351)
+    @Keep
     public void update() {
         if (myDao == null) {
             throw new DaoException("Entity is detached from DAO context");
         }
-        myDao.update(this);
+        if (!UnitOfWork.deferUpdate(this, myDao)) {
+            myDao.update(this);
+        }
     }
 
     /** called by internal mechanisms, do not call yourself. */
@@ -593,4 +604,20 @@ public class Message implements CoreEntity {
         myDao = daoSession != null ? daoSession.getMessageDao() : null;
     }
 
+    public Integer getReadStatusMin() {
+        return this.readStatusMin;
+    }
+
+    public void setReadStatusMin(Integer readStatusMin) {
+        this.readStatusMin = readStatusMin;
+    }
+
+    public Integer getReadStatusMax() {
+        return this.readStatusMax;
+    }
+
+    public void setReadStatusMax(Integer readStatusMax) {
+        this.readStatusMax = readStatusMax;
+    }
+
 }
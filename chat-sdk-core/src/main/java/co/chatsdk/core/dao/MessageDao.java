@@ -40,6 +40,8 @@ public class MessageDao extends AbstractDao<Message, Long> {
         public final static Property ThreadId = new Property(7, Long.class, "threadId", false, "THREAD_ID");
         public final static Property NextMessageId = new Property(8, Long.class, "nextMessageId", false, "NEXT_MESSAGE_ID");
         public final static Property LastMessageId = new Property(9, Long.class, "lastMessageId", false, "LAST_MESSAGE_ID");
+        public final static Property ReadStatusMin = new Property(10, Integer.class, "readStatusMin", false, "READ_STATUS_MIN");
+        public final static Property ReadStatusMax = new Property(11, Integer.class, "readStatusMax", false, "READ_STATUS_MAX");
     }
 
     private DaoSession daoSession;
@@ -69,7 +71,9 @@ public class MessageDao extends AbstractDao<Message, Long> {
                 "\"SENDER_ID\" INTEGER," + // 6: senderId
                 "\"THREAD_ID\" INTEGER," + // 7: threadId
                 "\"NEXT_MESSAGE_ID\" INTEGER," + // 8: nextMessageId
-                "\"LAST_MESSAGE_ID\" INTEGER);"); // 9: lastMessageId
+                "\"LAST_MESSAGE_ID\" INTEGER," + // 9: lastMessageId
+                "\"READ_STATUS_MIN\" INTEGER," + // 10: readStatusMin
+                "\"READ_STATUS_MAX\" INTEGER);"); // 11: readStatusMax
     }
 
     /** Drops the underlying database table. */
@@ -131,6 +135,16 @@ public class MessageDao extends AbstractDao<Message, Long> {
         if (lastMessageId != null) {
             stmt.bindLong(10, lastMessageId);
         }
+ 
+        Integer readStatusMin = entity.getReadStatusMin();
+        if (readStatusMin != null) {
+            stmt.bindLong(11, readStatusMin);
+        }
+ 
+        Integer readStatusMax = entity.getReadStatusMax();
+        if (readStatusMax != null) {
+            stmt.bindLong(12, readStatusMax);
+        }
     }
 
     @Override
@@ -186,6 +200,16 @@ public class MessageDao extends AbstractDao<Message, Long> {
         if (lastMessageId != null) {
             stmt.bindLong(10, lastMessageId);
         }
+ 
+        Integer readStatusMin = entity.getReadStatusMin();
+        if (readStatusMin != null) {
+            stmt.bindLong(11, readStatusMin);
+        }
+ 
+        Integer readStatusMax = entity.getReadStatusMax();
+        if (readStatusMax != null) {
+            stmt.bindLong(12, readStatusMax);
+        }
     }
 
     @Override
@@ -211,7 +235,9 @@ public class MessageDao extends AbstractDao<Message, Long> {
             cursor.isNull(offset + 6) ? null : cursor.getLong(offset + 6), // senderId
             cursor.isNull(offset + 7) ? null : cursor.getLong(offset + 7), // threadId
             cursor.isNull(offset + 8) ? null : cursor.getLong(offset + 8), // nextMessageId
-            cursor.isNull(offset + 9) ? null : cursor.getLong(offset + 9) // lastMessageId
+            cursor.isNull(offset + 9) ? null : cursor.getLong(offset + 9), // lastMessageId
+            cursor.isNull(offset + 10) ? null : cursor.getInt(offset + 10), // readStatusMin
+            cursor.isNull(offset + 11) ? null : cursor.getInt(offset + 11) // readStatusMax
         );
         return entity;
     }
@@ -228,6 +254,8 @@ public class MessageDao extends AbstractDao<Message, Long> {
         entity.setThreadId(cursor.isNull(offset + 7) ? null : cursor.getLong(offset + 7));
         entity.setNextMessageId(cursor.isNull(offset + 8) ? null : cursor.getLong(offset + 8));
         entity.setLastMessageId(cursor.isNull(offset + 9) ? null : cursor.getLong(offset + 9));
+        entity.setReadStatusMin(cursor.isNull(offset + 10) ? null : cursor.getInt(offset + 10));
+        entity.setReadStatusMax(cursor.isNull(offset + 11) ? null : cursor.getInt(offset + 11));
      }
     
     @Override
@@ -3,6 +3,7 @@ package co.chatsdk.core.dao;
 import org.greenrobot.greendao.DaoException;
 import org.greenrobot.greendao.annotation.Entity;
 import org.greenrobot.greendao.annotation.Generated;
+import org.greenrobot.greendao.annotation.Keep;
 import org.greenrobot.greendao.annotation.Id;
 import org.greenrobot.greendao.annotation.ToOne;
 
@@ -17,6 +18,9 @@ public class MessageMetaValue implements CoreEntity, MetaValue {
     private String key;
     private String value;
 
+    // One of the MetaValueHelper type constants, null for values stored before it was added
+    private Integer type;
+
     private Long messageId;
 
     @ToOne(joinProperty = "messageId")
@@ -30,11 +34,12 @@ public class MessageMetaValue implements CoreEntity, MetaValue {
     @Generated(hash = 1491679537)
     private transient MessageMetaValueDao myDao;
 
-    @Generated(hash = 304350448)
-    public MessageMetaValue(Long id, String key, String value, Long messageId) {
+    @Generated(hash = 1433366128)
+    public MessageMetaValue(Long id, String key, String value, Integer type, Long messageId) {
         this.id = id;
         this.key = key;
         this.value = value;
+        this.type = type;
         this.messageId = messageId;
     }
 
@@ -124,11 +129,12 @@ public class MessageMetaValue implements CoreEntity, MetaValue {
      * Convenient call for {@link org.greenrobot.greendao.AbstractDao#delete(Object)}.
      * Entity must attached to an entity context.
      */
-    @Generated(hash = 128553479)
+    @Keep
     public void delete() {
         if (myDao == null) {
             throw new DaoException("Entity is detached from DAO context");
         }
+        UnitOfWork.forget(this);
         myDao.delete(this);
     }
 
@@ -146,14 +152,16 @@ public class MessageMetaValue implements CoreEntity, MetaValue {
 
     /**
      * Convenient call for {@link org.greenrobot.greendao.AbstractDao#update(Object)}.
-     * Entity must attached to an entity context.
+     * Entity must attached to an entity context. Inside a {@link UnitOfWork} the write is deferred.
      */
-    @Generated(hash = 713229351)
+    @Keep
     public void update() {
         if (myDao == null) {
             throw new DaoException("Entity is detached from DAO context");
         }
-        myDao.update(this);
+        if (!UnitOfWork.deferUpdate(this, myDao)) {
+            myDao.update(this);
+        }
     }
 
     /** called by internal mechanisms, do not call yourself. */
@@ -162,4 +170,12 @@ public class MessageMetaValue implements CoreEntity, MetaValue {
         this.daoSession = daoSession;
         myDao = daoSession != null ? daoSession.getMessageMetaValueDao() : null;
     }
+
+    public Integer getType() {
+        return this.type;
+    }
+
+    public void setType(Integer type) {
+        this.type = type;
+    }
 }
@@ -30,7 +30,8 @@ public class MessageMetaValueDao extends AbstractDao<MessageMetaValue, Long> {
         public final static Property Id = new Property(0, Long.class, "id", true, "_id");
         public final static Property Key = new Property(1, String.class, "key", false, "KEY");
         public final static Property Value = new Property(2, String.class, "value", false, "VALUE");
-        public final static Property MessageId = new Property(3, Long.class, "messageId", false, "MESSAGE_ID");
+        public final static Property Type = new Property(3, Integer.class, "type", false, "TYPE");
+        public final static Property MessageId = new Property(4, Long.class, "messageId", false, "MESSAGE_ID");
     }
 
     private DaoSession daoSession;
@@ -53,7 +54,8 @@ public class MessageMetaValueDao extends AbstractDao<MessageMetaValue, Long> {
                 "\"_id\" INTEGER PRIMARY KEY ," + // 0: id
                 "\"KEY\" TEXT," + // 1: key
                 "\"VALUE\" TEXT," + // 2: value
-                "\"MESSAGE_ID\" INTEGER);"); // 3: messageId
+                "\"TYPE\" INTEGER," + // 3: type
+                "\"MESSAGE_ID\" INTEGER);"); // 4: messageId
     }
 
     /** Drops the underlying database table. */
@@ -81,9 +83,14 @@ public class MessageMetaValueDao extends AbstractDao<MessageMetaValue, Long> {
             stmt.bindString(3, value);
         }
  
+        Integer type = entity.getType();
+        if (type != null) {
+            stmt.bindLong(4, type);
+        }
+ 
         Long messageId = entity.getMessageId();
         if (messageId != null) {
-            stmt.bindLong(4, messageId);
+            stmt.bindLong(5, messageId);
         }
     }
 
@@ -106,9 +113,14 @@ public class MessageMetaValueDao extends AbstractDao<MessageMetaValue, Long> {
             stmt.bindString(3, value);
         }
  
+        Integer type = entity.getType();
+        if (type != null) {
+            stmt.bindLong(4, type);
+        }
+ 
         Long messageId = entity.getMessageId();
         if (messageId != null) {
-            stmt.bindLong(4, messageId);
+            stmt.bindLong(5, messageId);
         }
     }
 
@@ -129,7 +141,8 @@ public class MessageMetaValueDao extends AbstractDao<MessageMetaValue, Long> {
             cursor.isNull(offset + 0) ? null : cursor.getLong(offset + 0), // id
             cursor.isNull(offset + 1) ? null : cursor.getString(offset + 1), // key
             cursor.isNull(offset + 2) ? null : cursor.getString(offset + 2), // value
-            cursor.isNull(offset + 3) ? null : cursor.getLong(offset + 3) // messageId
+            cursor.isNull(offset + 3) ? null : cursor.getInt(offset + 3), // type
+            cursor.isNull(offset + 4) ? null : cursor.getLong(offset + 4) // messageId
         );
         return entity;
     }
@@ -139,7 +152,8 @@ public class MessageMetaValueDao extends AbstractDao<MessageMetaValue, Long> {
         entity.setId(cursor.isNull(offset + 0) ? null : cursor.getLong(offset + 0));
         entity.setKey(cursor.isNull(offset + 1) ? null : cursor.getString(offset + 1));
         entity.setValue(cursor.isNull(offset + 2) ? null : cursor.getString(offset + 2));
-        entity.setMessageId(cursor.isNull(offset + 3) ? null : cursor.getLong(offset + 3));
+        entity.setType(cursor.isNull(offset + 3) ? null : cursor.getInt(offset + 3));
+        entity.setMessageId(cursor.isNull(offset + 4) ? null : cursor.getLong(offset + 4));
      }
     
     @Override
@@ -8,6 +8,12 @@ import java.util.ArrayList;
 
 public class MetaValueHelper {
 
+    public static final int TypeString = 0;
+    public static final int TypeInteger = 1;
+    public static final int TypeLong = 2;
+    public static final int TypeDouble = 3;
+    public static final int TypeFloat = 4;
+
     public static MetaValue metaValueForKey (String key, ArrayList<MetaValue> values) {
         if (values != null) {
             for (MetaValue value : values) {
@@ -42,7 +48,54 @@ public class MetaValueHelper {
         }
     }
 
+    public static Integer typeOf (Object value) {
+        if (value instanceof Integer) {
+            return TypeInteger;
+        }
+        else if (value instanceof Long) {
+            return TypeLong;
+        }
+        else if (value instanceof Double) {
+            return TypeDouble;
+        }
+        else if (value instanceof Float) {
+            return TypeFloat;
+        }
+        return TypeString;
+    }
+
+    /**
+     * Convert a stored value back to an object using its type tag. Values without
+     * a tag fall back to guessing the type from the string
+     */
+    public static Object toObject (String value, Integer type) {
+        if (type == null) {
+            return toObject(value);
+        }
+        try {
+            switch (type) {
+                case TypeInteger:
+                    return Integer.parseInt(value);
+                case TypeLong:
+                    return Long.parseLong(value);
+                case TypeDouble:
+                    return Double.parseDouble(value);
+                case TypeFloat:
+                    return Float.parseFloat(value);
+                default:
+                    return value;
+            }
+        }
+        catch (NumberFormatException e) {
+            return toObject(value);
+        }
+    }
+
     public static Object toObject (String value) {
+        // Most values are text so don't go through the number parsers unless it could be a number
+        if (!couldBeNumber(value)) {
+            return value;
+        }
         try {
             return Integer.parseInt(value);
         }
@@ -66,4 +119,17 @@ public class MetaValueHelper {
         }
     }
 
+    private static boolean couldBeNumber (String value) {
+        if (value == null || value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!Character.isDigit(c) && c != '-' && c != '+' && c != '.' && c != 'e' && c != 'E') {
+                return false;
+            }
+        }
+        return true;
+    }
+
 }
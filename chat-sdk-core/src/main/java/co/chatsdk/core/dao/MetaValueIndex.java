@@ -0,0 +1,45 @@
+package co.chatsdk.core.dao;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Hashes an entity's meta values by key. The index is built lazily the first
+ * time a key is requested and is rebuilt if the underlying list is reloaded
+ * or changes size.
+ */
+
+public class MetaValueIndex<T extends MetaValue> {
+
+    private HashMap<String, T> index;
+    private List<T> source;
+    private int sourceSize;
+
+    public synchronized T get (String key, List<T> values) {
+        if (key == null || values == null) {
+            return null;
+        }
+        if (index == null || values != source || values.size() != sourceSize) {
+            rebuild(values);
+        }
+        return index.get(key);
+    }
+
+    public synchronized void invalidate () {
+        index = null;
+        source = null;
+    }
+
+    private void rebuild (List<T> values) {
+        index = new HashMap<>(values.size() * 2);
+        for (T value : values) {
+            // Keep the first value for a key to match the old linear search
+            if (value.getKey() != null && !index.containsKey(value.getKey())) {
+                index.put(value.getKey(), value);
+            }
+        }
+        source = values;
+        sourceSize = values.size();
+    }
+
+}
@@ -0,0 +1,159 @@
+package co.chatsdk.core.dao;
+
+import org.greenrobot.greendao.Property;
+import org.greenrobot.greendao.query.Query;
+import org.greenrobot.greendao.query.QueryBuilder;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import co.chatsdk.core.interfaces.CoreEntity;
+
+/**
+ * Compiled queries for the lookups that run most often. Each query's SQL is built once and
+ * the query is then reused by rebinding its parameters, which saves building the SQL string
+ * and the query builder on every call.
+ *
+ * The queries returned are already bound to the current thread so their parameters can be
+ * set straight away. Queries with a limit are compiled with a placeholder that should be
+ * replaced with {@link Query#setLimit(int)}.
+ */
+
+public class QueryRegistry {
+
+    private static final Map<String, Query<?>> queries = new ConcurrentHashMap<>();
+
+    public interface QueryFactory<T> {
+        Query<T> build (DaoSession session);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> Query<T> get (String key, QueryFactory<T> factory) {
+        // Make sure the query sees any updates that are waiting to be written
+        UnitOfWork.flushCurrent();
+
+        Query<T> query = (Query<T>) queries.get(key);
+        if (query == null) {
+            query = factory.build(DaoCore.daoSession);
+            queries.put(key, query);
+        }
+        return query.forCurrentThread();
+    }
+
+    /**
+     * Called when the database is opened, queries are bound to a session
+     */
+    public static void clear () {
+        queries.clear();
+    }
+
+    /**
+     * Entity by entity ID. Parameters: entityID
+     * @return null if the entity ID isn't the first column after the ID
+     */
+    public static <T extends CoreEntity> Query<T> entityWithEntityID (final Class<T> c) {
+        final Property[] properties = DaoCore.daoSession.getDao(c).getProperties();
+        if(properties.length < 2 || !properties[1].columnName.equals(DaoCore.EntityID.columnName)) {
+            return null;
+        }
+        return get("entityID:" + c.getName(), session -> session.queryBuilder(c).where(properties[1].eq(null)).limit(1).build());
+    }
+
+    /**
+     * Messages in a thread. Parameters: threadID
+     * @param order one of DaoCore.ORDER_ASC, DaoCore.ORDER_DESC or -1 for no order
+     */
+    public static Query<Message> messagesForThread (final int order, final boolean limited) {
+        return get("messagesForThread:" + order + ":" + limited, session -> {
+            QueryBuilder<Message> qb = session.queryBuilder(Message.class);
+            qb.where(MessageDao.Properties.ThreadId.eq(0L));
+
+            if(order == DaoCore.ORDER_ASC) {
+                qb.orderAsc(MessageDao.Properties.Date);
+            }
+            else if(order == DaoCore.ORDER_DESC) {
+                qb.orderDesc(MessageDao.Properties.Date);
+            }
+
+            // Making sure no null messages infected the sort.
+            qb.where(MessageDao.Properties.Date.isNotNull());
+
+            return limited(qb, limited).build();
+        });
+    }
+
+    /**
+     * Newest messages first. Parameters: threadID and, if olderThan is set, the date in millis
+     */
+    public static Query<Message> messagesOlderThan (final boolean hasDate, final boolean limited) {
+        return get("messagesOlderThan:" + hasDate + ":" + limited, session -> {
+            QueryBuilder<Message> qb = messagesForThreadQueryBuilder(session);
+            if (hasDate) {
+                qb.where(MessageDao.Properties.Date.lt(0L));
+            }
+            qb.orderDesc(MessageDao.Properties.Date);
+            return limited(qb, limited).build();
+        });
+    }
+
+    /**
+     * Keyset page on (date, id), newest first. Parameters: threadID and, if there's a cursor,
+     * the cursor's date in millis twice followed by its ID
+     */
+    public static Query<Message> messagesBefore (final boolean hasCursor, final boolean limited) {
+        return get("messagesBefore:" + hasCursor + ":" + limited, session -> {
+            QueryBuilder<Message> qb = messagesForThreadQueryBuilder(session);
+            if (hasCursor) {
+                qb.whereOr(MessageDao.Properties.Date.lt(0L),
+                        qb.and(MessageDao.Properties.Date.eq(0L), MessageDao.Properties.Id.lt(0L)));
+            }
+            qb.orderDesc(MessageDao.Properties.Date, MessageDao.Properties.Id);
+            return limited(qb, limited).build();
+        });
+    }
+
+    /**
+     * Keyset page on (date, id), oldest first. Parameters as for {@link #messagesBefore(boolean, boolean)}
+     */
+    public static Query<Message> messagesAfter (final boolean hasCursor, final boolean limited) {
+        return get("messagesAfter:" + hasCursor + ":" + limited, session -> {
+            QueryBuilder<Message> qb = messagesForThreadQueryBuilder(session);
+            if (hasCursor) {
+                qb.whereOr(MessageDao.Properties.Date.gt(0L),
+                        qb.and(MessageDao.Properties.Date.eq(0L), MessageDao.Properties.Id.gt(0L)));
+            }
+            qb.orderAsc(MessageDao.Properties.Date, MessageDao.Properties.Id);
+            return limited(qb, limited).build();
+        });
+    }
+
+    /**
+     * Parameters: threadID, userID
+     */
+    public static Query<UserThreadLink> userThreadLink () {
+        return get("userThreadLink", session -> session.queryBuilder(UserThreadLink.class)
+                .where(UserThreadLinkDao.Properties.ThreadId.eq(0L), UserThreadLinkDao.Properties.UserId.eq(0L))
+                .limit(1)
+                .build());
+    }
+
+    private static QueryBuilder<Message> messagesForThreadQueryBuilder (DaoSession session) {
+        QueryBuilder<Message> qb = session.queryBuilder(Message.class);
+        qb.where(MessageDao.Properties.ThreadId.eq(0L));
+
+        // Making sure no null messages infected the sort.
+        qb.where(MessageDao.Properties.Date.isNotNull());
+        qb.where(MessageDao.Properties.SenderId.isNotNull());
+
+        return qb;
+    }
+
+    private static <T> QueryBuilder<T> limited (QueryBuilder<T> qb, boolean limited) {
+        // The real limit is set on the query with setLimit
+        if (limited) {
+            qb.limit(1);
+        }
+        return qb;
+    }
+
+}
@@ -4,6 +4,7 @@ import org.greenrobot.greendao.DaoException;
 import org.greenrobot.greendao.annotation.Convert;
 import org.greenrobot.greendao.annotation.Entity;
 import org.greenrobot.greendao.annotation.Generated;
+import org.greenrobot.greendao.annotation.Keep;
 import org.greenrobot.greendao.annotation.Id;
 import org.greenrobot.greendao.annotation.ToOne;
 import org.joda.time.DateTime;
@@ -13,6 +14,9 @@ import co.chatsdk.core.utils.DaoDateTimeConverter;
 
 /**
  * Created by ben on 10/5/17.
+ *
+ * No longer written, read receipts are stored as watermarks on {@link UserThreadLink} and
+ * summarised on {@link Message}. The table is kept so old rows can be migrated.
  */
 
 @Entity
@@ -111,11 +115,12 @@ public class ReadReceiptUserLink implements CoreEntity {
      * Convenient call for {@link org.greenrobot.greendao.AbstractDao#delete(Object)}.
      * Entity must attached to an entity context.
      */
-    @Generated(hash = 128553479)
+    @Keep
     public void delete() {
         if (myDao == null) {
             throw new DaoException("Entity is detached from DAO context");
         }
+        UnitOfWork.forget(this);
         myDao.delete(this);
     }
 
@@ -133,14 +138,16 @@ public class ReadReceiptUserLink implements CoreEntity {
 
     /**
      * Convenient call for {@link org.greenrobot.greendao.AbstractDao#update(Object)}.
-     * Entity must attached to an entity context.
+     * Entity must attached to an entity context. Inside a {@link UnitOfWork} the write is deferred.
      */
-    @Generated(hash = 713229351)
+    @Keep
     public void update() {
         if (myDao == null) {
             throw new DaoException("Entity is detached from DAO context");
         }
-        myDao.update(this);
+        if (!UnitOfWork.deferUpdate(this, myDao)) {
+            myDao.update(this);
+        }
     }
 
     /** called by internal mechanisms, do not call yourself. */
@@ -11,8 +11,6 @@ import org.greenrobot.greendao.internal.SqlUtils;
 import org.greenrobot.greendao.internal.DaoConfig;
 import org.greenrobot.greendao.database.Database;
 import org.greenrobot.greendao.database.DatabaseStatement;
-import org.greenrobot.greendao.query.Query;
-import org.greenrobot.greendao.query.QueryBuilder;
 
 import co.chatsdk.core.utils.DaoDateTimeConverter;
 import org.joda.time.DateTime;
@@ -40,7 +38,6 @@ public class ReadReceiptUserLinkDao extends AbstractDao<ReadReceiptUserLink, Lon
     private DaoSession daoSession;
 
     private final DaoDateTimeConverter dateConverter = new DaoDateTimeConverter();
-    private Query<ReadReceiptUserLink> message_ReadReceiptLinksQuery;
 
     public ReadReceiptUserLinkDao(DaoConfig config) {
         super(config);
@@ -185,20 +182,6 @@ public class ReadReceiptUserLinkDao extends AbstractDao<ReadReceiptUserLink, Lon
         return true;
     }
     
-    /** Internal query to resolve the "readReceiptLinks" to-many relationship of Message. */
-    public List<ReadReceiptUserLink> _queryMessage_ReadReceiptLinks(Long messageId) {
-        synchronized (this) {
-            if (message_ReadReceiptLinksQuery == null) {
-                QueryBuilder<ReadReceiptUserLink> queryBuilder = queryBuilder();
-                queryBuilder.where(Properties.MessageId.eq(null));
-                message_ReadReceiptLinksQuery = queryBuilder.build();
-            }
-        }
-        Query<ReadReceiptUserLink> query = message_ReadReceiptLinksQuery.forCurrentThread();
-        query.setParameter(0, messageId);
-        return query.list();
-    }
-
     private String selectDeep;
 
     protected String getSelectDeep() {
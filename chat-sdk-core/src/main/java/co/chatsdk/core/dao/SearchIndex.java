@@ -0,0 +1,334 @@
+package co.chatsdk.core.dao;
+
+import android.database.Cursor;
+import android.database.SQLException;
+
+import org.greenrobot.greendao.database.Database;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import co.chatsdk.core.rx.RXSchedulers;
+import co.chatsdk.core.session.ChatSDK;
+
+/**
+ * A full text index over message text, thread names and user names and emails, kept in an
+ * FTS4 table next to the greenDAO tables.
+ *
+ * The index is kept up to date by triggers on the tables it covers, so every write path updates
+ * it without the entities knowing about it. The table and triggers are created when the database
+ * is opened, if they're missing the index is rebuilt from the existing rows in the background.
+ *
+ * Rows of every kind share the table, the kind is kept in the low bits of the docid and the
+ * entity's row id in the rest. Searches match whole words by prefix.
+ */
+
+public class SearchIndex {
+
+    public static final String TABLENAME = "SEARCH_INDEX";
+    public static final String Content = "CONTENT";
+
+    public static final int KindMessage = 0;
+    public static final int KindThread = 1;
+    public static final int KindUser = 2;
+
+    protected static final int KindBits = 2;
+    protected static final int KindMask = 3;
+
+    // Created last, so if it exists the index is complete
+    protected static final String LastTrigger = "SEARCH_INDEX_USER_DELETE";
+
+    private static volatile boolean ready = false;
+
+    /**
+     * Called when the database is opened
+     */
+    static void open (final Database db) {
+        ready = false;
+        RXSchedulers.db().scheduleDirect(() -> {
+            try {
+                create(db);
+                ready = true;
+            }
+            catch (Exception e) {
+                ChatSDK.logError(e);
+            }
+        });
+    }
+
+    /**
+     * @return false until the index has been created
+     */
+    public static boolean isReady () {
+        return ready;
+    }
+
+    protected static void create (Database db) {
+        if (triggerExists(db, LastTrigger)) {
+            return;
+        }
+
+        // Writes from other threads wait for the transaction so nothing is missed between the
+        // rebuild and the triggers
+        db.beginTransaction();
+        try {
+            db.execSQL("DROP TABLE IF EXISTS " + TABLENAME);
+            try {
+                db.execSQL("CREATE VIRTUAL TABLE " + TABLENAME + " USING fts4(" + Content + ", tokenize=unicode61)");
+            }
+            catch (SQLException e) {
+                // Older versions of SQLite only have the simple tokenizer
+                db.execSQL("CREATE VIRTUAL TABLE " + TABLENAME + " USING fts4(" + Content + ")");
+            }
+            createTriggers(db);
+            rebuild(db);
+            db.setTransactionSuccessful();
+        }
+        finally {
+            db.endTransaction();
+        }
+    }
+
+    protected static void createTriggers (Database db) {
+        String messageMeta = quote(MessageMetaValueDao.TABLENAME);
+        String messageId = MessageMetaValueDao.Properties.MessageId.columnName;
+        String messageKey = MessageMetaValueDao.Properties.Key.columnName;
+        String messageValue = MessageMetaValueDao.Properties.Value.columnName;
+        String isText = messageKey + " = '" + Keys.MessageText + "'";
+
+        String newMessage = "NEW." + messageId + docid(KindMessage);
+        String setMessage = "BEGIN " + delete(newMessage) +
+                "INSERT INTO " + TABLENAME + " (docid, " + Content + ") VALUES (" + newMessage + ", NEW." + messageValue + "); END";
+
+        String messageWhen = " WHEN NEW." + isText + " AND NEW." + messageId + " IS NOT NULL AND NEW." + messageValue + " IS NOT NULL ";
+        createTrigger(db, "SEARCH_INDEX_MESSAGE_TEXT_INSERT", "AFTER INSERT ON " + messageMeta + messageWhen + setMessage);
+        createTrigger(db, "SEARCH_INDEX_MESSAGE_TEXT_UPDATE", "AFTER UPDATE ON " + messageMeta + messageWhen + setMessage);
+        createTrigger(db, "SEARCH_INDEX_MESSAGE_TEXT_DELETE", "AFTER DELETE ON " + messageMeta + " WHEN OLD." + isText +
+                " BEGIN " + delete("OLD." + messageId + docid(KindMessage)) + "END");
+        createTrigger(db, "SEARCH_INDEX_MESSAGE_DELETE", "AFTER DELETE ON " + quote(MessageDao.TABLENAME) +
+                " BEGIN " + delete("OLD._id" + docid(KindMessage)) + "END");
+
+        String name = ThreadDao.Properties.Name.columnName;
+        String newThread = "NEW._id" + docid(KindThread);
+        String setThread = " BEGIN " + delete(newThread) +
+                "INSERT INTO " + TABLENAME + " (docid, " + Content + ") SELECT " + newThread + ", NEW." + name + " WHERE NEW." + name + " IS NOT NULL; END";
+
+        createTrigger(db, "SEARCH_INDEX_THREAD_INSERT", "AFTER INSERT ON " + quote(ThreadDao.TABLENAME) + setThread);
+        createTrigger(db, "SEARCH_INDEX_THREAD_UPDATE", "AFTER UPDATE OF " + name + " ON " + quote(ThreadDao.TABLENAME) + setThread);
+        createTrigger(db, "SEARCH_INDEX_THREAD_DELETE", "AFTER DELETE ON " + quote(ThreadDao.TABLENAME) +
+                " BEGIN " + delete("OLD._id" + docid(KindThread)) + "END");
+
+        // A user's row is their name and email, it's rebuilt whenever either changes
+        String userId = UserMetaValueDao.Properties.UserId.columnName;
+        String isUserKey = UserMetaValueDao.Properties.Key.columnName + " IN ('" + Keys.Name + "', '" + Keys.Email + "')";
+
+        createTrigger(db, "SEARCH_INDEX_USER_META_INSERT", "AFTER INSERT ON " + quote(UserMetaValueDao.TABLENAME) +
+                " WHEN NEW." + isUserKey + " AND NEW." + userId + " IS NOT NULL BEGIN " + setUser("NEW." + userId) + "END");
+        createTrigger(db, "SEARCH_INDEX_USER_META_UPDATE", "AFTER UPDATE ON " + quote(UserMetaValueDao.TABLENAME) +
+                " WHEN NEW." + isUserKey + " AND NEW." + userId + " IS NOT NULL BEGIN " + setUser("NEW." + userId) + "END");
+        createTrigger(db, "SEARCH_INDEX_USER_META_DELETE", "AFTER DELETE ON " + quote(UserMetaValueDao.TABLENAME) +
+                " WHEN OLD." + isUserKey + " AND OLD." + userId + " IS NOT NULL BEGIN " + setUser("OLD." + userId) + "END");
+        createTrigger(db, LastTrigger, "AFTER DELETE ON " + quote(UserDao.TABLENAME) +
+                " BEGIN " + delete("OLD._id" + docid(KindUser)) + "END");
+    }
+
+    protected static String setUser (String userId) {
+        return delete(userId + docid(KindUser)) +
+                "INSERT INTO " + TABLENAME + " (docid, " + Content + ") " + userRows(userId) + "; ";
+    }
+
+    protected static String userRows (String userId) {
+        String userIdColumn = UserMetaValueDao.Properties.UserId.columnName;
+        String value = UserMetaValueDao.Properties.Value.columnName;
+        return "SELECT " + userIdColumn + docid(KindUser) + ", group_concat(" + value + ", ' ') FROM " + quote(UserMetaValueDao.TABLENAME) +
+                " WHERE " + UserMetaValueDao.Properties.Key.columnName + " IN ('" + Keys.Name + "', '" + Keys.Email + "')" +
+                " AND " + value + " IS NOT NULL" +
+                (userId != null ? " AND " + userIdColumn + " = " + userId : " AND " + userIdColumn + " IS NOT NULL") +
+                " GROUP BY " + userIdColumn;
+    }
+
+    protected static void rebuild (Database db) {
+        String messageId = MessageMetaValueDao.Properties.MessageId.columnName;
+        String messageValue = MessageMetaValueDao.Properties.Value.columnName;
+        db.execSQL("INSERT INTO " + TABLENAME + " (docid, " + Content + ") SELECT " + messageId + docid(KindMessage) + ", " + messageValue +
+                " FROM " + quote(MessageMetaValueDao.TABLENAME) +
+                " WHERE " + MessageMetaValueDao.Properties.Key.columnName + " = '" + Keys.MessageText + "'" +
+                " AND " + messageId + " IS NOT NULL AND " + messageValue + " IS NOT NULL GROUP BY " + messageId);
+
+        String name = ThreadDao.Properties.Name.columnName;
+        db.execSQL("INSERT INTO " + TABLENAME + " (docid, " + Content + ") SELECT _id" + docid(KindThread) + ", " + name +
+                " FROM " + quote(ThreadDao.TABLENAME) + " WHERE " + name + " IS NOT NULL");
+
+        db.execSQL("INSERT INTO " + TABLENAME + " (docid, " + Content + ") " + userRows(null));
+    }
+
+    /**
+     * Message ids, newest first
+     * @param threadId only search this thread, or null to search every thread
+     */
+    public static List<Long> messageIds (String text, Long threadId, int offset, int limit) {
+        String match = matchQuery(text);
+        if (match == null || !ready) {
+            return new ArrayList<>();
+        }
+
+        String sql = "SELECT M._id FROM " + TABLENAME + " S JOIN " + quote(MessageDao.TABLENAME) + " M ON M._id = " + rowId("S.docid") +
+                " WHERE S." + Content + " MATCH ? AND " + kind("S.docid") + " = " + KindMessage +
+                (threadId != null ? " AND M." + MessageDao.Properties.ThreadId.columnName + " = " + threadId : "") +
+                " ORDER BY M." + MessageDao.Properties.Date.columnName + " DESC LIMIT " + limit + " OFFSET " + offset;
+
+        return ids(sql, match);
+    }
+
+    /**
+     * Threads whose name matches or that have a member, other than the current user, who matches.
+     * Threads whose name starts with the text come first, then the most recently active
+     */
+    public static List<Long> threadIds (String text, int offset, int limit) {
+        String match = matchQuery(text);
+        if (match == null || !ready) {
+            return new ArrayList<>();
+        }
+
+        String sql = "SELECT T._id FROM " + quote(ThreadDao.TABLENAME) + " T WHERE " + threadsWhere() +
+                " ORDER BY T." + ThreadDao.Properties.Name.columnName + " LIKE ? DESC, T." + ThreadDao.Properties.LastMessageDate.columnName + " DESC" +
+                " LIMIT " + limit + " OFFSET " + offset;
+
+        return ids(sql, match, match, prefixPattern(text));
+    }
+
+    /**
+     * Every thread that matches, as {@link #threadIds(String, int, int)}
+     * @return null if the index isn't ready or the text has no words to match
+     */
+    public static Set<Long> allThreadIds (String text) {
+        String match = matchQuery(text);
+        if (match == null || !ready) {
+            return null;
+        }
+        return new HashSet<>(ids("SELECT T._id FROM " + quote(ThreadDao.TABLENAME) + " T WHERE " + threadsWhere(), match, match));
+    }
+
+    protected static String threadsWhere () {
+        User currentUser = ChatSDK.currentUser();
+        Long currentUserId = currentUser != null ? currentUser.getId() : null;
+
+        return "(T." + ThreadDao.Properties.Deleted.columnName + " IS NULL OR T." + ThreadDao.Properties.Deleted.columnName + " = 0) AND (" +
+                "T._id IN (SELECT " + rowId("docid") + " FROM " + TABLENAME + " WHERE " + Content + " MATCH ? AND " + kind("docid") + " = " + KindThread + ")" +
+                " OR T._id IN (SELECT L." + UserThreadLinkDao.Properties.ThreadId.columnName + " FROM " + quote(UserThreadLinkDao.TABLENAME) + " L" +
+                " WHERE L." + UserThreadLinkDao.Properties.UserId.columnName + " IN (SELECT " + rowId("docid") + " FROM " + TABLENAME +
+                " WHERE " + Content + " MATCH ? AND " + kind("docid") + " = " + KindUser + ")" +
+                (currentUserId != null ? " AND L." + UserThreadLinkDao.Properties.UserId.columnName + " != " + currentUserId : "") + "))";
+    }
+
+    /**
+     * Users whose name or email matches, the ones that start with the text come first
+     */
+    public static List<Long> userIds (String text, int offset, int limit) {
+        String match = matchQuery(text);
+        if (match == null || !ready) {
+            return new ArrayList<>();
+        }
+
+        String sql = "SELECT U._id FROM " + TABLENAME + " S JOIN " + quote(UserDao.TABLENAME) + " U ON U._id = " + rowId("S.docid") +
+                " WHERE S." + Content + " MATCH ? AND " + kind("S.docid") + " = " + KindUser +
+                " ORDER BY S." + Content + " LIKE ? DESC, S." + Content + " LIMIT " + limit + " OFFSET " + offset;
+
+        return ids(sql, match, prefixPattern(text));
+    }
+
+    protected static List<Long> ids (String sql, String... args) {
+        UnitOfWork.flushCurrent();
+
+        List<Long> ids = new ArrayList<>();
+        Cursor cursor = DaoCore.daoSession.getDatabase().rawQuery(sql, args);
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    /**
+     * Turn what the user typed into an FTS query, every word has to match the start of a word
+     * @return null if there's nothing to search for
+     */
+    public static String matchQuery (String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder query = new StringBuilder();
+        for (String token : tokens(text)) {
+            if (query.length() > 0) {
+                query.append(' ');
+            }
+            query.append(token).append('*');
+        }
+        return query.length() > 0 ? query.toString() : null;
+    }
+
+    protected static List<String> tokens (String text) {
+        // Anything that isn't a letter or digit splits words, this also drops the FTS operators
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                token.append(c);
+            }
+            else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    protected static String prefixPattern (String text) {
+        List<String> tokens = tokens(text);
+        return (tokens.isEmpty() ? "" : tokens.get(0)) + "%";
+    }
+
+    protected static boolean triggerExists (Database db, String name) {
+        Cursor cursor = db.rawQuery("SELECT 1 FROM sqlite_master WHERE type = 'trigger' AND name = ?", new String[] {name});
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    protected static void createTrigger (Database db, String name, String body) {
+        db.execSQL("DROP TRIGGER IF EXISTS " + name);
+        db.execSQL("CREATE TRIGGER " + name + " " + body);
+    }
+
+    protected static String delete (String docid) {
+        return "DELETE FROM " + TABLENAME + " WHERE docid = " + docid + "; ";
+    }
+
+    protected static String docid (int kind) {
+        return " * " + (KindMask + 1) + " + " + kind;
+    }
+
+    protected static String rowId (String docid) {
+        return "(" + docid + " >> " + KindBits + ")";
+    }
+
+    protected static String kind (String docid) {
+        return "(" + docid + " & " + KindMask + ")";
+    }
+
+    protected static String quote (String table) {
+        return "\"" + table + "\"";
+    }
+
+}
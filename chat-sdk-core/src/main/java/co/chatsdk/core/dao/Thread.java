@@ -2,16 +2,16 @@ package co.chatsdk.core.dao;
 
 import org.apache.commons.lang3.StringUtils;
 import org.greenrobot.greendao.DaoException;
-import org.greenrobot.greendao.Property;
 import org.greenrobot.greendao.annotation.Generated;
 import org.greenrobot.greendao.annotation.JoinEntity;
 import org.greenrobot.greendao.annotation.Keep;
 import org.greenrobot.greendao.annotation.OrderBy;
 import org.greenrobot.greendao.annotation.ToMany;
 import org.greenrobot.greendao.annotation.ToOne;
+import org.greenrobot.greendao.annotation.Transient;
 import org.greenrobot.greendao.annotation.Unique;
 import org.greenrobot.greendao.query.Query;
-import org.greenrobot.greendao.query.QueryBuilder;
+import org.joda.time.DateTime;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -19,9 +19,11 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 
+import co.chatsdk.core.events.NetworkEvent;
 import co.chatsdk.core.interfaces.CoreEntity;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.session.StorageManager;
+import co.chatsdk.core.types.ReadStatus;
 import co.chatsdk.core.utils.StringChecker;
 
 // THIS CODE IS GENERATED BY greenDAO, EDIT ONLY INSIDE THE "KEEP"-SECTIONS
@@ -46,6 +48,14 @@ public class Thread implements CoreEntity {
     private Long creatorId;
     private Long lastMessageId;
 
+    @Transient
+    private MetaValueIndex<ThreadMetaValue> metaValueIndex = new MetaValueIndex<>();
+
+    // Denormalized summary so the thread list can sort and bind without loading messages
+    private Date lastMessageDate;
+    private Integer unreadMessageCount;
+    private Integer memberCount;
+
     @ToOne(joinProperty = "lastMessageId")
     private Message lastMessage;
 
@@ -84,9 +94,10 @@ public class Thread implements CoreEntity {
         this.id = id;
     }
 
-    @Generated(hash = 859547806)
+    @Generated(hash = 738288920)
     public Thread(Long id, String entityID, Date creationDate, Boolean hasUnreadMessages, Boolean deleted, String name, Integer type,
-            String creatorEntityId, String imageUrl, String rootKey, String apiKey, Long creatorId, Long lastMessageId) {
+            String creatorEntityId, String imageUrl, String rootKey, String apiKey, Long creatorId, Long lastMessageId, Date lastMessageDate,
+            Integer unreadMessageCount, Integer memberCount) {
         this.id = id;
         this.entityID = entityID;
         this.creationDate = creationDate;
@@ -100,6 +111,9 @@ public class Thread implements CoreEntity {
         this.apiKey = apiKey;
         this.creatorId = creatorId;
         this.lastMessageId = lastMessageId;
+        this.lastMessageDate = lastMessageDate;
+        this.unreadMessageCount = unreadMessageCount;
+        this.memberCount = memberCount;
     }
 
     public void setMessages(List<Message> messages) {
@@ -136,12 +150,10 @@ public class Thread implements CoreEntity {
     }
 
     public Date lastMessageAddedDate (){
-        Date date = creationDate;
-
-        List<Message> list = getMessagesWithOrder(DaoCore.ORDER_DESC);
+        Date date = getLastMessageDate();
 
-        if (list.size() > 0) {
-            date = list.get(0).getDate().toDate();
+        if (date == null) {
+            date = creationDate;
         }
 
         if (date == null) {
@@ -153,18 +165,36 @@ public class Thread implements CoreEntity {
 
     public void addUser (User user) {
         DaoCore.connectUserAndThread(user, this);
+        resetUserThreadLinks();
+        updateMemberCount();
         this.update();
         user.update();
     }
 
     public void removeUser (User user) {
         DaoCore.breakUserAndThread(user, this);
+        resetUserThreadLinks();
+        updateMemberCount();
         this.update();
         user.update();
     }
 
+    public int getUserCount () {
+        if (memberCount == null) {
+            updateMemberCount();
+            update();
+        }
+        return memberCount;
+    }
+
+    protected void updateMemberCount () {
+        memberCount = (int) daoSession.getUserThreadLinkDao().queryBuilder()
+                .where(UserThreadLinkDao.Properties.ThreadId.eq(getId()))
+                .count();
+    }
+
     public User otherUser () {
-        if (getUsers().size() == 2) {
+        if (getUserCount() == 2) {
             for (User u : getUsers()) {
                 if (!u.isMe()) {
                     return u;
@@ -193,12 +223,12 @@ public class Thread implements CoreEntity {
 
 
     public boolean containsMessageWithID (String messageEntityID) {
-        for(Message m : getMessages()) {
-            if(m.getEntityID() != null && messageEntityID != null && m.getEntityID().equals(messageEntityID)) {
-                return true;
-            }
+        if (messageEntityID == null) {
+            return false;
         }
-        return false;
+        return daoSession.getMessageDao().queryBuilder()
+                .where(MessageDao.Properties.ThreadId.eq(getId()), MessageDao.Properties.EntityID.eq(messageEntityID))
+                .count() > 0;
     }
 
     public void removeUsers (User... users) {
@@ -213,34 +243,70 @@ public class Thread implements CoreEntity {
     /** Fetch messages list from the db for current thread, Messages will be order Desc/Asc on demand.*/
     @Keep
     public List<Message> getMessagesWithOrder(int order, int limit) {
-        QueryBuilder<Message> qb = daoSession.queryBuilder(Message.class);
-        qb.where(MessageDao.Properties.ThreadId.eq(getId()));
-
-        if(order == DaoCore.ORDER_ASC) {
-            qb.orderAsc(MessageDao.Properties.Date);
-        }
-        else if(order == DaoCore.ORDER_DESC) {
-            qb.orderDesc(MessageDao.Properties.Date);
-        }
-
-        // Making sure no null messages infected the sort.
-        qb.where(MessageDao.Properties.Date.isNotNull());
+        Query<Message> query = QueryRegistry.messagesForThread(order, limit > 0);
+        query.setParameter(0, getId());
 
         if (limit > 0) {
-            qb.limit(limit);
+            query.setLimit(limit);
         }
 
-        Query<Message> query = qb.build().forCurrentThread();
         return query.list();
     }
 
-    public void addMessage (Message message) {
-        setLastMessage(message);
-        message.setThreadId(this.getId());
-        message.update();
-        getMessages().add(message);
-        update();
-//        resetMessages();
+    public void addMessage (final Message message) {
+        UnitOfWork.runInTx(new Runnable() {
+            @Override
+            public void run() {
+                boolean isNew = !getId().equals(message.getThreadId());
+
+                message.setThreadId(getId());
+                message.update();
+
+                if (isNew) {
+                    // Only keep the to-many list in step if it's already been loaded,
+                    // we don't want to pull the whole history into memory here
+                    if (messages != null) {
+                        messages.add(message);
+                    }
+                    if (!message.isRead()) {
+                        setUnreadMessageCount(getUnreadMessagesCount() + 1);
+                    }
+                }
+
+                updateLastMessage(message);
+                update();
+            }
+        });
+    }
+
+    /**
+     * Move the last message forward if this message is newer than the current one. If the message
+     * is already the last message its date is refreshed, the server timestamp can differ slightly
+     * from the local one.
+     */
+    protected void updateLastMessage (Message message) {
+        Date date = message.getDate() != null ? message.getDate().toDate() : null;
+        boolean isLastMessage = lastMessageId != null && lastMessageId.equals(message.getId());
+        if (isLastMessage || lastMessageDate == null || (date != null && !date.before(lastMessageDate))) {
+            setLastMessage(message);
+            setLastMessageDate(date);
+        }
+    }
+
+    /**
+     * Recalculate the last message from the database, used when a message has been removed
+     */
+    protected void updateLastMessage () {
+        List<Message> newest = getMessagesWithOrder(DaoCore.ORDER_DESC, 1);
+        if (newest.size() > 0) {
+            Message message = newest.get(0);
+            setLastMessage(message);
+            setLastMessageDate(message.getDate() != null ? message.getDate().toDate() : null);
+        }
+        else {
+            setLastMessage(null);
+            setLastMessageDate(null);
+        }
     }
 
     @Keep
@@ -250,6 +316,7 @@ public class Thread implements CoreEntity {
             metaValue = ChatSDK.db().createEntity(ThreadMetaValue.class);
             metaValue.setThreadId(this.getId());
             getMetaValues().add(metaValue);
+            metaValueIndex.invalidate();
         }
         metaValue.setValue(value);
         metaValue.setKey(key);
@@ -266,59 +333,55 @@ public class Thread implements CoreEntity {
 
     @Keep
     public ThreadMetaValue metaValueForKey (String key) {
-        ArrayList<MetaValue> values = new ArrayList<>();
-        values.addAll(getMetaValues());
-        return (ThreadMetaValue) MetaValueHelper.metaValueForKey(key, values);
+        return metaValueIndex.get(key, getMetaValues());
     }
 
-    public void removeMessage (Message message) {
-
-        List<Message> messages = getMessages();
-
-        if (messages.contains(message)) {
-            messages.remove(message);
-        }
+    public void removeMessage (final Message message) {
+        UnitOfWork.runInTx(new Runnable() {
+            @Override
+            public void run() {
+                if (getId().equals(message.getThreadId()) && !message.isRead() && getUnreadMessagesCount() > 0) {
+                    setUnreadMessageCount(getUnreadMessagesCount() - 1);
+                }
 
-        message.cascadeDelete();
+                message.cascadeDelete();
 
-        update();
+                updateLastMessage();
+                update();
+            }
+        });
         resetMessages();
-
-        if (messages.size() > 1) {
-            setLastMessage(messages.get(messages.size()-1));
-        }
-        else {
-            //
-            setLastMessageId(Long.valueOf(0));
-            update();
-        }
     }
 
     public boolean hasUser(User user) {
 
-        UserThreadLink data =
-                DaoCore.fetchEntityWithProperties(UserThreadLink.class,
-                        new Property[]{UserThreadLinkDao.Properties.ThreadId, UserThreadLinkDao.Properties.UserId}, getId(), user.getId());
+        Query<UserThreadLink> query = QueryRegistry.userThreadLink();
+        query.setParameter(0, getId());
+        query.setParameter(1, user.getId());
 
-        return data != null;
+        return query.unique() != null;
     }
 
     public int getUnreadMessagesCount() {
-        int count = 0;
-        List<Message> messages = getMessagesWithOrder(DaoCore.ORDER_DESC);
-        for (Message m : messages)
-        {
-            if(!m.isRead())
-                count++;
-            else break;
+        if (unreadMessageCount == null) {
+            unreadMessageCount = countUnreadMessages();
+            update();
         }
+        return unreadMessageCount;
+    }
 
-        return count;
+    protected int countUnreadMessages() {
+        User currentUser = ChatSDK.currentUser();
+        return ChatSDK.db().unreadMessagesCountForThread(getId(), currentUser != null ? currentUser.getId() : null);
     }
 
     public boolean isLastMessageWasRead(){
-        List<Message> messages = getMessagesWithOrder(DaoCore.ORDER_DESC);
-        return messages == null || messages.size() == 0 || messages.get(0).isRead();
+        Message message = lastMessage();
+        return message == null || message.isRead();
+    }
+
+    public boolean hasMessages() {
+        return getLastMessageDate() != null;
     }
 
     public boolean isDeleted(){
@@ -326,12 +389,36 @@ public class Thread implements CoreEntity {
     }
 
     public void markRead () {
-        ArrayList<Message> messages = new ArrayList<>(getMessages());
-        for(Message m : messages) {
-            m.setRead(true);
-            m.update();
+        UnitOfWork.runInTx(new Runnable() {
+            @Override
+            public void run() {
+                ChatSDK.db().markMessagesReadForThread(getId());
+
+                // Everything up to the latest message has now been read
+                User currentUser = ChatSDK.currentUser();
+                if (currentUser != null && lastMessageDate != null) {
+                    Query<UserThreadLink> query = QueryRegistry.userThreadLink();
+                    query.setParameter(0, getId());
+                    query.setParameter(1, currentUser.getId());
+                    UserThreadLink link = query.unique();
+                    if (link != null && link.advanceReadStatus(ReadStatus.read(), new DateTime(lastMessageDate))) {
+                        link.update();
+                    }
+                }
+
+                // Keep any messages that are already loaded in step with the database
+                if (messages != null) {
+                    for(Message m : messages) {
+                        m.setRead(true);
+                    }
+                }
+                setUnreadMessageCount(0);
+                update();
+            }
+        });
+        if (ChatSDK.events() != null) {
+            ChatSDK.events().source().onNext(NetworkEvent.threadRead(this));
         }
-        update();
     }
 
     public Long getId() {
@@ -409,11 +496,7 @@ public class Thread implements CoreEntity {
     }
 
     public Date getLastMessageAddedDate () {
-        Message lastMessage = lastMessage();
-        if(lastMessage != null && lastMessage.getDate() != null) {
-            return lastMessage.getDate().toDate();
-        }
-        return null;
+        return getLastMessageDate();
     }
 
     public Integer getType() {
@@ -457,13 +540,14 @@ public class Thread implements CoreEntity {
     }
 
     public Message lastMessage () {
-        if(lastMessage == null) {
-            List<Message> messages = getMessagesWithOrder(DaoCore.ORDER_DESC);
+        Message message = getLastMessage();
+        if(message == null) {
+            List<Message> messages = getMessagesWithOrder(DaoCore.ORDER_DESC, 1);
             if (messages.size() > 0) {
-                lastMessage = messages.get(0);
+                message = messages.get(0);
             }
         }
-        return lastMessage;
+        return message;
     }
 
     public Long getCreatorId() {
@@ -559,11 +643,12 @@ public class Thread implements CoreEntity {
      * Convenient call for {@link org.greenrobot.greendao.AbstractDao#delete(Object)}.
      * Entity must attached to an entity context.
      */
-    @Generated(hash = 128553479)
+    @Keep
     public void delete() {
         if (myDao == null) {
             throw new DaoException("Entity is detached from DAO context");
         }
+        UnitOfWork.forget(this);
         myDao.delete(this);
     }
 
@@ -581,14 +666,16 @@ public class Thread implements CoreEntity {
 
     /**
      * Convenient call for {@link org.greenrobot.greendao.AbstractDao#update(Object)}.
-     * Entity must attached to an entity context.
+     * Entity must attached to an entity context. Inside a {@link UnitOfWork} the write is deferred.
      */
-    @Generated(hash = 713229351)
+    @Keep
     public void update() {
         if (myDao == null) {
             throw new DaoException("Entity is detached from DAO context");
         }
-        myDao.update(this);
+        if (!UnitOfWork.deferUpdate(this, myDao)) {
+            myDao.update(this);
+        }
     }
 
     /** called by internal mechanisms, do not call yourself. */
@@ -675,6 +762,30 @@ public class Thread implements CoreEntity {
         this.lastMessageId = lastMessageId;
     }
 
+    public Date getLastMessageDate() {
+        return this.lastMessageDate;
+    }
+
+    public void setLastMessageDate(Date lastMessageDate) {
+        this.lastMessageDate = lastMessageDate;
+    }
+
+    public Integer getUnreadMessageCount() {
+        return this.unreadMessageCount;
+    }
+
+    public void setUnreadMessageCount(Integer unreadMessageCount) {
+        this.unreadMessageCount = unreadMessageCount;
+    }
+
+    public Integer getMemberCount() {
+        return this.memberCount;
+    }
+
+    public void setMemberCount(Integer memberCount) {
+        this.memberCount = memberCount;
+    }
+
  
 
 
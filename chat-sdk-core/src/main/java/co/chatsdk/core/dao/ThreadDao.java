@@ -38,6 +38,9 @@ public class ThreadDao extends AbstractDao<Thread, Long> {
         public final static Property ApiKey = new Property(10, String.class, "apiKey", false, "API_KEY");
         public final static Property CreatorId = new Property(11, Long.class, "creatorId", false, "CREATOR_ID");
         public final static Property LastMessageId = new Property(12, Long.class, "lastMessageId", false, "LAST_MESSAGE_ID");
+        public final static Property LastMessageDate = new Property(13, java.util.Date.class, "lastMessageDate", false, "LAST_MESSAGE_DATE");
+        public final static Property UnreadMessageCount = new Property(14, Integer.class, "unreadMessageCount", false, "UNREAD_MESSAGE_COUNT");
+        public final static Property MemberCount = new Property(15, Integer.class, "memberCount", false, "MEMBER_COUNT");
     }
 
     private DaoSession daoSession;
@@ -68,7 +71,10 @@ public class ThreadDao extends AbstractDao<Thread, Long> {
                 "\"ROOT_KEY\" TEXT," + // 9: rootKey
                 "\"API_KEY\" TEXT," + // 10: apiKey
                 "\"CREATOR_ID\" INTEGER," + // 11: creatorId
-                "\"LAST_MESSAGE_ID\" INTEGER);"); // 12: lastMessageId
+                "\"LAST_MESSAGE_ID\" INTEGER," + // 12: lastMessageId
+                "\"LAST_MESSAGE_DATE\" INTEGER," + // 13: lastMessageDate
+                "\"UNREAD_MESSAGE_COUNT\" INTEGER," + // 14: unreadMessageCount
+                "\"MEMBER_COUNT\" INTEGER);"); // 15: memberCount
     }
 
     /** Drops the underlying database table. */
@@ -145,6 +151,21 @@ public class ThreadDao extends AbstractDao<Thread, Long> {
         if (lastMessageId != null) {
             stmt.bindLong(13, lastMessageId);
         }
+ 
+        java.util.Date lastMessageDate = entity.getLastMessageDate();
+        if (lastMessageDate != null) {
+            stmt.bindLong(14, lastMessageDate.getTime());
+        }
+ 
+        Integer unreadMessageCount = entity.getUnreadMessageCount();
+        if (unreadMessageCount != null) {
+            stmt.bindLong(15, unreadMessageCount);
+        }
+ 
+        Integer memberCount = entity.getMemberCount();
+        if (memberCount != null) {
+            stmt.bindLong(16, memberCount);
+        }
     }
 
     @Override
@@ -215,6 +236,21 @@ public class ThreadDao extends AbstractDao<Thread, Long> {
         if (lastMessageId != null) {
             stmt.bindLong(13, lastMessageId);
         }
+ 
+        java.util.Date lastMessageDate = entity.getLastMessageDate();
+        if (lastMessageDate != null) {
+            stmt.bindLong(14, lastMessageDate.getTime());
+        }
+ 
+        Integer unreadMessageCount = entity.getUnreadMessageCount();
+        if (unreadMessageCount != null) {
+            stmt.bindLong(15, unreadMessageCount);
+        }
+ 
+        Integer memberCount = entity.getMemberCount();
+        if (memberCount != null) {
+            stmt.bindLong(16, memberCount);
+        }
     }
 
     @Override
@@ -243,7 +279,10 @@ public class ThreadDao extends AbstractDao<Thread, Long> {
             cursor.isNull(offset + 9) ? null : cursor.getString(offset + 9), // rootKey
             cursor.isNull(offset + 10) ? null : cursor.getString(offset + 10), // apiKey
             cursor.isNull(offset + 11) ? null : cursor.getLong(offset + 11), // creatorId
-            cursor.isNull(offset + 12) ? null : cursor.getLong(offset + 12) // lastMessageId
+            cursor.isNull(offset + 12) ? null : cursor.getLong(offset + 12), // lastMessageId
+            cursor.isNull(offset + 13) ? null : new java.util.Date(cursor.getLong(offset + 13)), // lastMessageDate
+            cursor.isNull(offset + 14) ? null : cursor.getInt(offset + 14), // unreadMessageCount
+            cursor.isNull(offset + 15) ? null : cursor.getInt(offset + 15) // memberCount
         );
         return entity;
     }
@@ -263,6 +302,9 @@ public class ThreadDao extends AbstractDao<Thread, Long> {
         entity.setApiKey(cursor.isNull(offset + 10) ? null : cursor.getString(offset + 10));
         entity.setCreatorId(cursor.isNull(offset + 11) ? null : cursor.getLong(offset + 11));
         entity.setLastMessageId(cursor.isNull(offset + 12) ? null : cursor.getLong(offset + 12));
+        entity.setLastMessageDate(cursor.isNull(offset + 13) ? null : new java.util.Date(cursor.getLong(offset + 13)));
+        entity.setUnreadMessageCount(cursor.isNull(offset + 14) ? null : cursor.getInt(offset + 14));
+        entity.setMemberCount(cursor.isNull(offset + 15) ? null : cursor.getInt(offset + 15));
      }
     
     @Override
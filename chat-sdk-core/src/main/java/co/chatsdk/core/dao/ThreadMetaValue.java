@@ -4,6 +4,7 @@ import org.greenrobot.greendao.annotation.Entity;
 import org.greenrobot.greendao.annotation.Id;
 import org.greenrobot.greendao.annotation.ToOne;
 import org.greenrobot.greendao.annotation.Generated;
+import org.greenrobot.greendao.annotation.Keep;
 import org.greenrobot.greendao.DaoException;
 
 import co.chatsdk.core.interfaces.CoreEntity;
@@ -114,11 +115,12 @@ public class ThreadMetaValue implements CoreEntity, MetaValue {
      * Convenient call for {@link org.greenrobot.greendao.AbstractDao#delete(Object)}.
      * Entity must attached to an entity context.
      */
-    @Generated(hash = 128553479)
+    @Keep
     public void delete() {
         if (myDao == null) {
             throw new DaoException("Entity is detached from DAO context");
         }
+        UnitOfWork.forget(this);
         myDao.delete(this);
     }
 
@@ -136,14 +138,16 @@ public class ThreadMetaValue implements CoreEntity, MetaValue {
 
     /**
      * Convenient call for {@link org.greenrobot.greendao.AbstractDao#update(Object)}.
-     * Entity must attached to an entity context.
+     * Entity must attached to an entity context. Inside a {@link UnitOfWork} the write is deferred.
      */
-    @Generated(hash = 713229351)
+    @Keep
     public void update() {
         if (myDao == null) {
             throw new DaoException("Entity is detached from DAO context");
         }
-        myDao.update(this);
+        if (!UnitOfWork.deferUpdate(this, myDao)) {
+            myDao.update(this);
+        }
     }
 
     /** called by internal mechanisms, do not call yourself. */
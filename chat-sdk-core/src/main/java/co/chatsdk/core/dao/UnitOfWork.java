@@ -0,0 +1,134 @@
+package co.chatsdk.core.dao;
+
+import org.greenrobot.greendao.AbstractDao;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Write-behind for entity updates. While a unit of work is open on the current thread,
+ * calls to an entity's update() only mark it as dirty. Repeated updates to the same entity
+ * collapse into one and everything is written in a single transaction when the outermost
+ * unit of work ends or {@link #flush()} is called.
+ *
+ * Inserts and deletes are never deferred. Pending updates are flushed before the raw SQL
+ * in {@link DaoCore} and before any {@link QueryRegistry} query runs so they always see
+ * the latest values.
+ */
+
+public class UnitOfWork {
+
+    private static final ThreadLocal<UnitOfWork> current = new ThreadLocal<>();
+
+    @SuppressWarnings("rawtypes")
+    protected final IdentityHashMap<Object, AbstractDao> dirty = new IdentityHashMap<>();
+    protected int depth = 0;
+
+    /**
+     * Run the runnable in a unit of work, nested calls join the outer unit of work
+     */
+    public static void run (Runnable runnable) {
+        UnitOfWork work = begin();
+        try {
+            runnable.run();
+        }
+        finally {
+            work.end();
+        }
+    }
+
+    /**
+     * Run the runnable in a database transaction with its updates written at the end
+     */
+    public static void runInTx (final Runnable runnable) {
+        DaoCore.daoSession.runInTx(() -> run(runnable));
+    }
+
+    public static UnitOfWork begin () {
+        UnitOfWork work = current.get();
+        if (work == null) {
+            work = new UnitOfWork();
+            current.set(work);
+        }
+        work.depth++;
+        return work;
+    }
+
+    public void end () {
+        depth--;
+        if (depth <= 0) {
+            try {
+                flush();
+            }
+            finally {
+                current.remove();
+            }
+        }
+    }
+
+    /**
+     * @return false if there's no unit of work open and the caller should write the update itself
+     */
+    @SuppressWarnings("rawtypes")
+    public static boolean deferUpdate (Object entity, AbstractDao dao) {
+        UnitOfWork work = current.get();
+        if (work == null || entity == null || dao == null) {
+            return false;
+        }
+        work.dirty.put(entity, dao);
+        return true;
+    }
+
+    /**
+     * The entity is being deleted so there's no need to write it
+     */
+    public static void forget (Object entity) {
+        UnitOfWork work = current.get();
+        if (work != null && entity != null) {
+            work.dirty.remove(entity);
+        }
+    }
+
+    /**
+     * Write the pending updates for the current thread's unit of work, if there is one
+     */
+    public static void flushCurrent () {
+        UnitOfWork work = current.get();
+        if (work != null) {
+            work.flush();
+        }
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public void flush () {
+        if (dirty.isEmpty()) {
+            return;
+        }
+
+        // Group by DAO so each table is written with one prepared statement
+        final Map<AbstractDao, List<Object>> byDao = new HashMap<>();
+        for (Map.Entry<Object, AbstractDao> entry : dirty.entrySet()) {
+            List<Object> entities = byDao.get(entry.getValue());
+            if (entities == null) {
+                entities = new ArrayList<>();
+                byDao.put(entry.getValue(), entities);
+            }
+            entities.add(entry.getKey());
+        }
+        dirty.clear();
+
+        DaoCore.daoSession.runInTx(() -> {
+            for (Map.Entry<AbstractDao, List<Object>> entry : byDao.entrySet()) {
+                entry.getKey().updateInTx(entry.getValue());
+            }
+        });
+    }
+
+    public int pendingCount () {
+        return dirty.size();
+    }
+
+}
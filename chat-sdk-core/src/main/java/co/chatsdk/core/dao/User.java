@@ -6,6 +6,7 @@ import org.greenrobot.greendao.Property;
 import org.greenrobot.greendao.annotation.Entity;
 import org.greenrobot.greendao.annotation.Generated;
 import org.greenrobot.greendao.annotation.Id;
+import org.greenrobot.greendao.annotation.Index;
 import org.greenrobot.greendao.annotation.Keep;
 import org.greenrobot.greendao.annotation.ToMany;
 import org.greenrobot.greendao.annotation.Transient;
@@ -21,7 +22,9 @@ import co.chatsdk.core.interfaces.CoreEntity;
 import co.chatsdk.core.interfaces.UserListItem;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.session.StorageManager;
+import co.chatsdk.core.session.UserProfileCache;
 import co.chatsdk.core.types.ConnectionType;
+import co.chatsdk.core.types.UserProfile;
 
 // THIS CODE IS GENERATED BY greenDAO, EDIT ONLY INSIDE THE "KEEP"-SECTIONS
 // KEEP INCLUDES - put your token includes here
@@ -31,6 +34,7 @@ public class User implements CoreEntity, UserListItem {
 
     @Id
     private Long id;
+    @Index
     private String entityID;
     private Integer authenticationType;
     private Date lastOnline;
@@ -41,6 +45,13 @@ public class User implements CoreEntity, UserListItem {
     @ToMany(referencedJoinProperty = "userId")
     private List<LinkedAccount> linkedAccounts;
 
+    @Transient
+    private MetaValueIndex<UserMetaValue> metaValueIndex = new MetaValueIndex<>();
+
+    // Incremented, with the user locked, whenever a meta value is written
+    @Transient
+    private int metaVersion;
+
     @Transient
     private static final String TAG = User.class.getSimpleName();
     @Transient
@@ -319,11 +330,19 @@ public class User implements CoreEntity, UserListItem {
     }
 
     public String metaStringForKey(String key) {
-        return (String) metaMap().get(key);
+        return profile().get(key);
     }
 
     public Boolean metaBooleanForKey(String key) {
-        return metaValueForKey(key) != null && metaValueForKey(key).getValue().toLowerCase().equals("true");
+        String value = metaStringForKey(key);
+        return value != null && value.toLowerCase().equals("true");
+    }
+
+    /**
+     * @return an immutable snapshot of the user's meta values, it's shared so reading it is cheap
+     */
+    public UserProfile profile () {
+        return UserProfileCache.shared().get(this);
     }
 
     public void setMetaString(String key, String value) {
@@ -371,34 +390,49 @@ public class User implements CoreEntity, UserListItem {
      * Converting the metaData json to a map object
      **/
     public Map<String, String> metaMap() {
-        HashMap<String, String> map = new HashMap<>();
-
-        for(UserMetaValue v : getMetaValues()) {
-            map.put(v.getKey(), v.getValue());
-        }
-
-        return map;
+        // A copy because callers change it
+        return new HashMap<>(profile().getMeta());
     }
 
     @Keep
     public void setMetaValue (String key, String value) {
         UserMetaValue metaValue = metaValueForKey(key);
-        if (metaValue == null) {
+        if (metaValue != null && StringUtils.equals(metaValue.getValue(), value)) {
+            return;
+        }
+        List<UserMetaValue> values = getMetaValues();
+        boolean isNew = metaValue == null;
+        if (isNew) {
             metaValue = ChatSDK.db().createEntity(UserMetaValue.class);
             metaValue.setUserId(this.getId());
-            getMetaValues().add(metaValue);
         }
-        metaValue.setValue(value);
-        metaValue.setKey(key);
+        // Profile snapshots copy the values with the user locked
+        synchronized (this) {
+            if (isNew) {
+                values.add(metaValue);
+                metaValueIndex.invalidate();
+            }
+            metaValue.setValue(value);
+            metaValue.setKey(key);
+            metaVersion++;
+        }
         metaValue.update();
         update();
+        // After the write so a snapshot can't be rebuilt from the old value
+        UserProfileCache.shared().invalidate(entityID);
+    }
+
+    /**
+     * Changes each time a meta value is written, read it with the user locked
+     */
+    @Keep
+    public int getMetaVersion () {
+        return metaVersion;
     }
 
     @Keep
     public UserMetaValue metaValueForKey (String key) {
-        ArrayList<MetaValue> values = new ArrayList<>();
-        values.addAll(getMetaValues());
-        return (UserMetaValue) MetaValueHelper.metaValueForKey(key, values);
+        return metaValueIndex.get(key, getMetaValues());
     }
 
     public boolean hasThread(Thread thread){
@@ -500,11 +534,12 @@ public class User implements CoreEntity, UserListItem {
      * Convenient call for {@link org.greenrobot.greendao.AbstractDao#delete(Object)}.
      * Entity must attached to an entity context.
      */
-    @Generated(hash = 128553479)
+    @Keep
     public void delete() {
         if (myDao == null) {
             throw new DaoException("Entity is detached from DAO context");
         }
+        UnitOfWork.forget(this);
         myDao.delete(this);
     }
 
@@ -522,14 +557,16 @@ public class User implements CoreEntity, UserListItem {
 
     /**
      * Convenient call for {@link org.greenrobot.greendao.AbstractDao#update(Object)}.
-     * Entity must attached to an entity context.
+     * Entity must attached to an entity context. Inside a {@link UnitOfWork} the write is deferred.
      */
-    @Generated(hash = 713229351)
+    @Keep
     public void update() {
         if (myDao == null) {
             throw new DaoException("Entity is detached from DAO context");
         }
-        myDao.update(this);
+        if (!UnitOfWork.deferUpdate(this, myDao)) {
+            myDao.update(this);
+        }
     }
 
     /** called by internal mechanisms, do not call yourself. */
@@ -48,6 +48,9 @@ public class UserDao extends AbstractDao<User, Long> {
                 "\"ENTITY_ID\" TEXT," + // 1: entityID
                 "\"AUTHENTICATION_TYPE\" INTEGER," + // 2: authenticationType
                 "\"LAST_ONLINE\" INTEGER);"); // 3: lastOnline
+        // Add Indexes
+        db.execSQL("CREATE INDEX " + constraint + "IDX_USER_ENTITY_ID ON \"USER\"" +
+                " (\"ENTITY_ID\" ASC);");
     }
 
     /** Drops the underlying database table. */
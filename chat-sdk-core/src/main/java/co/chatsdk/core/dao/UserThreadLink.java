@@ -6,10 +6,13 @@ package co.chatsdk.core.dao;
 
 import org.greenrobot.greendao.annotation.Id;
 import org.greenrobot.greendao.annotation.Generated;
+import org.greenrobot.greendao.annotation.Keep;
 import org.greenrobot.greendao.annotation.ToOne;
 import org.greenrobot.greendao.DaoException;
+import org.joda.time.DateTime;
 
 import co.chatsdk.core.interfaces.CoreEntity;
+import co.chatsdk.core.types.ReadStatus;
 
 @org.greenrobot.greendao.annotation.Entity
 public class UserThreadLink implements CoreEntity {
@@ -19,6 +22,11 @@ public class UserThreadLink implements CoreEntity {
     private Long userId;
     private Long threadId;
 
+    // Read receipt watermarks. Every message in the thread sent at or before the date, in millis,
+    // has been delivered to or read by the user
+    private Long deliveredUpTo;
+    private Long readUpTo;
+
     @ToOne(joinProperty = "userId")
     private User user;
     @ToOne(joinProperty = "threadId")
@@ -30,11 +38,13 @@ public class UserThreadLink implements CoreEntity {
     @Generated(hash = 1486061129)
     private transient UserThreadLinkDao myDao;
 
-    @Generated(hash = 1628597386)
-    public UserThreadLink(Long id, Long userId, Long threadId) {
+    @Generated(hash = 250225012)
+    public UserThreadLink(Long id, Long userId, Long threadId, Long deliveredUpTo, Long readUpTo) {
         this.id = id;
         this.userId = userId;
         this.threadId = threadId;
+        this.deliveredUpTo = deliveredUpTo;
+        this.readUpTo = readUpTo;
     }
 
     @Generated(hash = 1452575878)
@@ -53,6 +63,58 @@ public class UserThreadLink implements CoreEntity {
         return id.toString();
     }
 
+    public ReadStatus readStatusForDate (DateTime date) {
+        if (date == null) {
+            return ReadStatus.notSet();
+        }
+        long millis = date.getMillis();
+        if (readUpTo != null && readUpTo >= millis) {
+            return ReadStatus.read();
+        }
+        if (deliveredUpTo != null && deliveredUpTo >= millis) {
+            return ReadStatus.delivered();
+        }
+        return ReadStatus.none();
+    }
+
+    public Long lowestWatermark () {
+        if (deliveredUpTo == null || readUpTo == null) {
+            return null;
+        }
+        return Math.min(deliveredUpTo, readUpTo);
+    }
+
+    public Long highestWatermark () {
+        if (deliveredUpTo == null) {
+            return readUpTo;
+        }
+        if (readUpTo == null) {
+            return deliveredUpTo;
+        }
+        return Math.max(deliveredUpTo, readUpTo);
+    }
+
+    /**
+     * Move the watermarks forward to the date. They never move back so receipts can arrive in any order
+     * @return true if either watermark changed
+     */
+    public boolean advanceReadStatus (ReadStatus status, DateTime date) {
+        if (status == null || date == null) {
+            return false;
+        }
+        long millis = date.getMillis();
+        boolean changed = false;
+        if (status.getValue() >= ReadStatus.Delivered && (deliveredUpTo == null || deliveredUpTo < millis)) {
+            deliveredUpTo = millis;
+            changed = true;
+        }
+        if (status.getValue() >= ReadStatus.Read && (readUpTo == null || readUpTo < millis)) {
+            readUpTo = millis;
+            changed = true;
+        }
+        return changed;
+    }
+
 
     public Long getId() {
         return this.id;
@@ -135,11 +197,12 @@ public class UserThreadLink implements CoreEntity {
      * Convenient call for {@link org.greenrobot.greendao.AbstractDao#delete(Object)}.
      * Entity must attached to an entity context.
      */
-    @Generated(hash = 128553479)
+    @Keep
     public void delete() {
         if (myDao == null) {
             throw new DaoException("Entity is detached from DAO context");
         }
+        UnitOfWork.forget(this);
         myDao.delete(this);
     }
 
@@ -159,12 +222,14 @@ public class UserThreadLink implements CoreEntity {
      * Convenient call for {@link org.greenrobot.greendao.AbstractDao#update(Object)}.
      * Entity must attached to an entity context.
      */
-    @Generated(hash = 713229351)
+    @Keep
     public void update() {
         if (myDao == null) {
             throw new DaoException("Entity is detached from DAO context");
         }
-        myDao.update(this);
+        if (!UnitOfWork.deferUpdate(this, myDao)) {
+            myDao.update(this);
+        }
     }
 
     /** called by internal mechanisms, do not call yourself. */
@@ -174,5 +239,21 @@ public class UserThreadLink implements CoreEntity {
         myDao = daoSession != null ? daoSession.getUserThreadLinkDao() : null;
     }
 
+    public Long getDeliveredUpTo() {
+        return this.deliveredUpTo;
+    }
+
+    public void setDeliveredUpTo(Long deliveredUpTo) {
+        this.deliveredUpTo = deliveredUpTo;
+    }
+
+    public Long getReadUpTo() {
+        return this.readUpTo;
+    }
+
+    public void setReadUpTo(Long readUpTo) {
+        this.readUpTo = readUpTo;
+    }
+
 
 }
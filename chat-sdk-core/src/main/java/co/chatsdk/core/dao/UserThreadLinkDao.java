@@ -30,6 +30,8 @@ public class UserThreadLinkDao extends AbstractDao<UserThreadLink, Long> {
         public final static Property Id = new Property(0, Long.class, "id", true, "_id");
         public final static Property UserId = new Property(1, Long.class, "userId", false, "USER_ID");
         public final static Property ThreadId = new Property(2, Long.class, "threadId", false, "THREAD_ID");
+        public final static Property DeliveredUpTo = new Property(3, Long.class, "deliveredUpTo", false, "DELIVERED_UP_TO");
+        public final static Property ReadUpTo = new Property(4, Long.class, "readUpTo", false, "READ_UP_TO");
     }
 
     private DaoSession daoSession;
@@ -51,7 +53,9 @@ public class UserThreadLinkDao extends AbstractDao<UserThreadLink, Long> {
         db.execSQL("CREATE TABLE " + constraint + "\"USER_THREAD_LINK\" (" + //
                 "\"_id\" INTEGER PRIMARY KEY ," + // 0: id
                 "\"USER_ID\" INTEGER," + // 1: userId
-                "\"THREAD_ID\" INTEGER);"); // 2: threadId
+                "\"THREAD_ID\" INTEGER," + // 2: threadId
+                "\"DELIVERED_UP_TO\" INTEGER," + // 3: deliveredUpTo
+                "\"READ_UP_TO\" INTEGER);"); // 4: readUpTo
     }
 
     /** Drops the underlying database table. */
@@ -78,6 +82,16 @@ public class UserThreadLinkDao extends AbstractDao<UserThreadLink, Long> {
         if (threadId != null) {
             stmt.bindLong(3, threadId);
         }
+ 
+        Long deliveredUpTo = entity.getDeliveredUpTo();
+        if (deliveredUpTo != null) {
+            stmt.bindLong(4, deliveredUpTo);
+        }
+ 
+        Long readUpTo = entity.getReadUpTo();
+        if (readUpTo != null) {
+            stmt.bindLong(5, readUpTo);
+        }
     }
 
     @Override
@@ -98,6 +112,16 @@ public class UserThreadLinkDao extends AbstractDao<UserThreadLink, Long> {
         if (threadId != null) {
             stmt.bindLong(3, threadId);
         }
+ 
+        Long deliveredUpTo = entity.getDeliveredUpTo();
+        if (deliveredUpTo != null) {
+            stmt.bindLong(4, deliveredUpTo);
+        }
+ 
+        Long readUpTo = entity.getReadUpTo();
+        if (readUpTo != null) {
+            stmt.bindLong(5, readUpTo);
+        }
     }
 
     @Override
@@ -116,7 +140,9 @@ public class UserThreadLinkDao extends AbstractDao<UserThreadLink, Long> {
         UserThreadLink entity = new UserThreadLink( //
             cursor.isNull(offset + 0) ? null : cursor.getLong(offset + 0), // id
             cursor.isNull(offset + 1) ? null : cursor.getLong(offset + 1), // userId
-            cursor.isNull(offset + 2) ? null : cursor.getLong(offset + 2) // threadId
+            cursor.isNull(offset + 2) ? null : cursor.getLong(offset + 2), // threadId
+            cursor.isNull(offset + 3) ? null : cursor.getLong(offset + 3), // deliveredUpTo
+            cursor.isNull(offset + 4) ? null : cursor.getLong(offset + 4) // readUpTo
         );
         return entity;
     }
@@ -126,6 +152,8 @@ public class UserThreadLinkDao extends AbstractDao<UserThreadLink, Long> {
         entity.setId(cursor.isNull(offset + 0) ? null : cursor.getLong(offset + 0));
         entity.setUserId(cursor.isNull(offset + 1) ? null : cursor.getLong(offset + 1));
         entity.setThreadId(cursor.isNull(offset + 2) ? null : cursor.getLong(offset + 2));
+        entity.setDeliveredUpTo(cursor.isNull(offset + 3) ? null : cursor.getLong(offset + 3));
+        entity.setReadUpTo(cursor.isNull(offset + 4) ? null : cursor.getLong(offset + 4));
      }
     
     @Override
@@ -0,0 +1,146 @@
+package co.chatsdk.core.events;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import co.chatsdk.core.rx.RXSchedulers;
+import io.reactivex.Observable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.Subject;
+
+/**
+ * Splits the event source into streams by event type and by thread entity ID. Each event
+ * is looked up once when it's published so subscribers only receive the events they asked
+ * for, rather than every subscriber running its own filter chain against every event.
+ *
+ * Streams are created when they're first subscribed to and dropped when the last
+ * subscriber disposes.
+ */
+
+public class EventRouter {
+
+    protected final EnumMap<EventType, Subject<NetworkEvent>> typeStreams = new EnumMap<>(EventType.class);
+    protected final HashMap<String, Subject<NetworkEvent>> threadStreams = new HashMap<>();
+
+    protected Disposable disposable;
+
+    public EventRouter (Observable<NetworkEvent> source) {
+        disposable = source.subscribe(this::route, throwable -> {});
+    }
+
+    protected void route (NetworkEvent event) {
+        Subject<NetworkEvent> typeStream;
+        Subject<NetworkEvent> threadStream = null;
+
+        synchronized (this) {
+            typeStream = typeStreams.get(event.type);
+            String threadEntityID = threadEntityID(event);
+            if (threadEntityID != null) {
+                threadStream = threadStreams.get(threadEntityID);
+            }
+        }
+
+        if (typeStream != null) {
+            typeStream.onNext(event);
+        }
+        if (threadStream != null) {
+            threadStream.onNext(event);
+        }
+    }
+
+    /**
+     * Events of any of the given types
+     */
+    public Observable<NetworkEvent> type (EventType... types) {
+        List<Observable<NetworkEvent>> streams = new ArrayList<>();
+        for (EventType type : types) {
+            streams.add(typeStream(type));
+        }
+        return Observable.merge(streams);
+    }
+
+    /**
+     * Every event for the thread
+     */
+    public Observable<NetworkEvent> thread (final String threadEntityID) {
+        return Observable.defer(() -> {
+            synchronized (this) {
+                Subject<NetworkEvent> stream = threadStreams.get(threadEntityID);
+                if (stream == null) {
+                    stream = PublishSubject.<NetworkEvent>create().toSerialized();
+                    threadStreams.put(threadEntityID, stream);
+                }
+                final Subject<NetworkEvent> subject = stream;
+                return subject.doFinally(() -> {
+                    synchronized (EventRouter.this) {
+                        if (!subject.hasObservers() && threadStreams.get(threadEntityID) == subject) {
+                            threadStreams.remove(threadEntityID);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Events of the given types for the thread
+     */
+    public Observable<NetworkEvent> thread (final String threadEntityID, EventType type, EventType... types) {
+        final EnumSet<EventType> typeSet = EnumSet.of(type, types);
+        return thread(threadEntityID).filter(networkEvent -> typeSet.contains(networkEvent.type));
+    }
+
+    /**
+     * Merge bursts of events so each thread emits at most once per interval. The first
+     * event is passed straight through and the latest event of the burst is emitted when
+     * the interval ends. Events without a thread are merged by type.
+     */
+    public static Observable<NetworkEvent> coalesce (Observable<NetworkEvent> events, long interval) {
+        if (interval <= 0) {
+            return events;
+        }
+        return events.groupBy(EventRouter::coalesceKey)
+                .flatMap(group -> group.throttleLatest(interval, TimeUnit.MILLISECONDS, RXSchedulers.computation(), true));
+    }
+
+    protected Observable<NetworkEvent> typeStream (final EventType type) {
+        return Observable.defer(() -> {
+            synchronized (this) {
+                Subject<NetworkEvent> stream = typeStreams.get(type);
+                if (stream == null) {
+                    stream = PublishSubject.<NetworkEvent>create().toSerialized();
+                    typeStreams.put(type, stream);
+                }
+                final Subject<NetworkEvent> subject = stream;
+                return subject.doFinally(() -> {
+                    synchronized (EventRouter.this) {
+                        if (!subject.hasObservers() && typeStreams.get(type) == subject) {
+                            typeStreams.remove(type);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    protected static String threadEntityID (NetworkEvent event) {
+        return event.thread != null ? event.thread.getEntityID() : null;
+    }
+
+    protected static String coalesceKey (NetworkEvent event) {
+        String threadEntityID = threadEntityID(event);
+        return threadEntityID != null ? threadEntityID : event.type.name();
+    }
+
+    public void dispose () {
+        if (disposable != null) {
+            disposable.dispose();
+        }
+    }
+
+}
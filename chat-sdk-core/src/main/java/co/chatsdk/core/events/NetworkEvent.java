@@ -1,5 +1,7 @@
 package co.chatsdk.core.events;
 
+import java.util.List;
+
 import co.chatsdk.core.dao.Message;
 import co.chatsdk.core.dao.Thread;
 import co.chatsdk.core.dao.User;
@@ -14,6 +16,7 @@ public class NetworkEvent {
 
     final public EventType type;
     public Message message;
+    public List<Message> messages;
     public Thread thread;
     public User user;
     public String text;
@@ -77,6 +80,16 @@ public class NetworkEvent {
         return new NetworkEvent(EventType.MessageAdded, thread, message);
     }
 
+    /**
+     * A batch of messages that were added to the thread together. The message
+     * field is set to the last message in the batch
+     */
+    public static NetworkEvent messagesAdded (Thread thread, List<Message> messages) {
+        NetworkEvent event = new NetworkEvent(EventType.MessagesAdded, thread, messages.isEmpty() ? null : messages.get(messages.size() - 1));
+        event.messages = messages;
+        return event;
+    }
+
     public static NetworkEvent messageRemoved (Thread thread, Message message) {
         return new NetworkEvent(EventType.MessageRemoved, thread, message);
     }
@@ -180,6 +193,8 @@ public class NetworkEvent {
                 EventType.ThreadRemoved,
                 EventType.ThreadLastMessageUpdated,
                 EventType.ThreadUsersChanged,
+                EventType.MessageAdded,
+                EventType.MessagesAdded,
                 EventType.MessageRemoved,
                 EventType.UserMetaUpdated // Be careful to check that the user is a member of the thread...
         );
@@ -0,0 +1,48 @@
+package co.chatsdk.core.events;
+
+import co.chatsdk.core.rx.RXSchedulers;
+import io.reactivex.Observable;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+
+/**
+ * An event together with the data a screen needs to show it. The data is worked out on the
+ * database scheduler so the main thread only has to bind it. Anything the preparer returns
+ * should be immutable, or at least not changed after it's handed over.
+ */
+
+public class PreparedEvent<T> {
+
+    public interface Preparer<T> {
+        /**
+         * Called on the database scheduler
+         * @return the data for the event, or null if there's nothing to show
+         */
+        T prepare (NetworkEvent event) throws Exception;
+    }
+
+    public final NetworkEvent event;
+    public final T data;
+
+    public PreparedEvent (NetworkEvent event, T data) {
+        this.event = event;
+        this.data = data;
+    }
+
+    public EventType getType () {
+        return event.type;
+    }
+
+    public boolean hasData () {
+        return data != null;
+    }
+
+    /**
+     * Prepare each event on the database scheduler and deliver it on the main thread
+     */
+    public static <T> Observable<PreparedEvent<T>> prepare (Observable<NetworkEvent> events, final Preparer<T> preparer) {
+        return events.observeOn(RXSchedulers.db())
+                .map(event -> new PreparedEvent<T>(event, preparer.prepare(event)))
+                .observeOn(AndroidSchedulers.mainThread());
+    }
+
+}
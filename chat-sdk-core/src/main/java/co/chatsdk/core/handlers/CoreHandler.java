@@ -25,7 +25,7 @@ import io.reactivex.Completable;
     }
 
     /**
-     * Update the user on the server
+     * Update the user on the server, this does nothing if the profile hasn't changed
      */
     Completable pushUser ();
 
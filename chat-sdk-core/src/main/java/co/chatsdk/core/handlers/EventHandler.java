@@ -1,6 +1,8 @@
 package co.chatsdk.core.handlers;
 
+import co.chatsdk.core.dao.Thread;
 import co.chatsdk.core.dao.User;
+import co.chatsdk.core.events.EventRouter;
 import co.chatsdk.core.events.NetworkEvent;
 import io.reactivex.Observable;
 import io.reactivex.disposables.Disposable;
@@ -16,9 +18,25 @@ import io.reactivex.subjects.ReplaySubject;
 public interface EventHandler {
 
     PublishSubject<NetworkEvent> source ();
+
+    /**
+     * Every event on the main thread. Subscribers that need to read the database should use
+     * {@link co.chatsdk.core.events.PreparedEvent#prepare} instead
+     */
     Observable<NetworkEvent> sourceOnMain ();
 
+    /**
+     * Streams partitioned by event type and thread
+     */
+    EventRouter router ();
+
     void impl_currentUserOn (String userEntityID);
     void impl_currentUserOff (String userEntityID);
 
+    /**
+     * The thread is being shown so it should be kept up to date until it's closed
+     */
+    void threadOpened (Thread thread);
+    void threadClosed (Thread thread);
+
 }
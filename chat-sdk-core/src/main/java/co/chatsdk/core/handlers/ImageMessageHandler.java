@@ -1,5 +1,6 @@
 package co.chatsdk.core.handlers;
 
+import co.chatsdk.core.dao.Message;
 import co.chatsdk.core.types.MessageSendProgress;
 import io.reactivex.Observable;
 import co.chatsdk.core.dao.Thread;
@@ -20,4 +21,10 @@ public interface ImageMessageHandler {
      * @param thread   thread that the message is sent to.
      */
     Observable<MessageSendProgress> sendMessageWithImage(String filePath, Thread thread);
+
+    /**
+     * Continue uploading the image for a message whose upload was interrupted
+     * @see co.chatsdk.core.handlers.UploadHandler#pendingUploads()
+     */
+    Observable<MessageSendProgress> resumeMessageWithImage(Message message);
 }
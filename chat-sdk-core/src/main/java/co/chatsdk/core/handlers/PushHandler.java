@@ -14,6 +14,11 @@ public interface PushHandler {
     void subscribeToPushChannel(String channel);
     void unsubscribeToPushChannel(String channel);
 
+    /**
+     * Send a push for a message the user has sent. Pushes for the same thread may be combined
+     */
+    void pushForMessage(Message message);
+
     HashMap<String, Object> pushDataForMessage(Message message);
     void sendPushNotification (HashMap<String, Object> data);
 
@@ -1,7 +1,12 @@
 package co.chatsdk.core.handlers;
 
+import java.util.List;
+
+import co.chatsdk.core.dao.Message;
+import co.chatsdk.core.dao.Thread;
 import co.chatsdk.core.dao.User;
 import io.reactivex.Observable;
+import io.reactivex.Single;
 
 /**
  * Created by SimonSmiley-Andrews on 01/05/2017.
@@ -23,4 +28,12 @@ public interface SearchHandler {
 
     Observable<User> usersForIndexes(final String value, int limit, final String... indexes);
 
+    // Search the local index, results are paged
+    Single<List<Message>> searchMessages(final String text, final Thread thread, int offset, int limit);
+    Single<List<Thread>> searchThreads(final String text, int offset, int limit);
+    Single<List<User>> searchUsers(final String text, int offset, int limit);
+
+    // Users from the local index first then from the server
+    Observable<User> usersForText(final String text, int limit);
+
 }
@@ -60,6 +60,11 @@ public interface ThreadHandler {
      */
     Observable<MessageSendProgress> sendMessage(Message message);
 
+    /**
+     * Continue sending image messages whose upload was interrupted. Called once the user has authenticated
+     */
+    Completable resumePendingUploads();
+
     int getUnreadMessagesAmount(boolean onePerThread);
 
     // TODO: Consider making this a PThread for consistency
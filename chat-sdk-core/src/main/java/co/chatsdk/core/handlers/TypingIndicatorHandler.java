@@ -5,6 +5,11 @@ import io.reactivex.Completable;
 
 /**
  * Created by SimonSmiley-Andrews on 01/05/2017.
+ *
+ * The UI doesn't call setChatState directly, states are throttled by {@link co.chatsdk.core.utils.TypingStateEngine}.
+ * Implementations should report other users typing to the engine with
+ * {@link co.chatsdk.core.utils.TypingStateEngine#remoteTypingChanged(Thread, String)}. The engine also
+ * listens to TypingStateChanged events they send, so those are deduplicated and expire too.
  */
 
 public interface TypingIndicatorHandler {
@@ -1,8 +1,14 @@
 package co.chatsdk.core.handlers;
 
 import android.graphics.Bitmap;
+import android.net.Uri;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
 
 import co.chatsdk.core.types.FileUploadResult;
+import co.chatsdk.core.types.UploadSession;
 import io.reactivex.Observable;
 
 /**
@@ -12,6 +18,22 @@ import io.reactivex.Observable;
 public interface UploadHandler {
 
     Observable<FileUploadResult> uploadFile(byte[] data, String name, String mimeType);
+    Observable<FileUploadResult> uploadFile(File file, String name, String mimeType);
+
+    /**
+     * Upload the contents of the stream without reading it into memory first
+     */
+    Observable<FileUploadResult> uploadFile(InputStream stream, String name, String mimeType);
+
+    /**
+     * Upload the contents of the uri, reading it in chunks rather than loading the whole file into memory.
+     * @param sessionKey if set, the upload progress is persisted under this key, usually the message entity ID,
+     *                   and an interrupted upload can be continued with {@link #resumeUpload(String)}
+     */
+    Observable<FileUploadResult> uploadFile(Uri uri, String name, String mimeType, String sessionKey);
+    Observable<FileUploadResult> resumeUpload(String sessionKey);
+    List<UploadSession> pendingUploads();
+
 //    Observable<MessageUploadResult> uploadImage(final Bitmap image, final Bitmap thumbnail);
     Observable<FileUploadResult> uploadImage(final Bitmap image);
 
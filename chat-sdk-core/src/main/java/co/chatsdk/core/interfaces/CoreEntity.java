@@ -6,6 +6,8 @@ package co.chatsdk.core.interfaces;
 
 public interface CoreEntity {
 
+    Long getId ();
+
     void setEntityID (String entityID);
     String getEntityID ();
 
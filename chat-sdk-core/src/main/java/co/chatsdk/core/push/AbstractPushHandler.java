@@ -1,19 +1,23 @@
 package co.chatsdk.core.push;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 import co.chatsdk.core.dao.Message;
-import co.chatsdk.core.dao.User;
 import co.chatsdk.core.handlers.PushHandler;
 import co.chatsdk.core.interfaces.BroadcastHandler;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.utils.StringChecker;
+import io.reactivex.Completable;
 
 public abstract class AbstractPushHandler implements PushHandler {
 
     public static String QuickReplyNotificationCategory = "co.chatsdk.QuickReply";
 
     protected BroadcastHandler broadcastHandler = new BaseBroadcastHandler();
+    protected PushDispatcher dispatcher;
 
     public BroadcastHandler getBroadcastHandler() {
         return broadcastHandler;
@@ -23,35 +27,62 @@ public abstract class AbstractPushHandler implements PushHandler {
         this.broadcastHandler = broadcastHandler;
     }
 
+    public synchronized PushDispatcher dispatcher () {
+        if (dispatcher == null) {
+            dispatcher = new PushDispatcher(this);
+        }
+        return dispatcher;
+    }
+
+    @Override
+    public void pushForMessage(Message message) {
+        if (ChatSDK.config().clientPushEnabled) {
+            dispatcher().add(message);
+        }
+    }
+
     @Override
     public HashMap<String, Object> pushDataForMessage(Message message) {
-        String body = message.getText();
+        return pushDataForMessages(Collections.singletonList(message));
+    }
 
-        if (body == null || body.isEmpty() || !ChatSDK.config().clientPushEnabled) {
+    /**
+     * The data for one push for messages sent to the same thread. The body is the latest
+     * message, if there is more than one the bodies are all sent in order and the pushToChannels
+     * function shows them together
+     */
+    public HashMap<String, Object> pushDataForMessages(List<Message> messages) {
+        if (!ChatSDK.config().clientPushEnabled) {
             return null;
         }
 
-        HashMap<String, String> users = new HashMap<>();
-        for(User user : message.getThread().getUsers()) {
-
-            String userName = user.getName();
-            String userEntityID = user.getPushChannel();
-
-            if (!user.isMe() && !StringChecker.isNullOrEmpty(userEntityID) && !StringChecker.isNullOrEmpty(userName)) {
-                if(!user.getIsOnline() || !ChatSDK.config().onlySendPushToOfflineUsers) {
-                    users.put(userEntityID, userName);
-                }
+        List<String> bodies = new ArrayList<>();
+        Message message = null;
+        for (Message m : messages) {
+            String text = m.getText();
+            if (text != null && !text.isEmpty()) {
+                bodies.add(text);
+                message = m;
             }
         }
 
+        if (message == null) {
+            return null;
+        }
+
+        HashMap<String, String> users = dispatcher().recipients(message.getThread());
+
         if(users.keySet().size() == 0) {
             return null;
         }
 
         HashMap<String, Object> data = new HashMap<>();
 
-        data.put("userIds", users);
-        data.put("body", body);
+        data.put("userIds", new HashMap<>(users));
+        data.put("body", message.getText());
+        if (bodies.size() > 1) {
+            data.put("bodies", bodies);
+        }
         data.put("type", message.getType());
         data.put("senderId", message.getSender().getEntityID());
         data.put("threadId", message.getThread().getEntityID());
@@ -63,5 +94,13 @@ public abstract class AbstractPushHandler implements PushHandler {
         return data;
     }
 
+    /**
+     * Send the push and complete when it's been accepted. The dispatcher retries it if it fails.
+     * This default can't tell, sendPushNotification doesn't report failures so it completes
+     * straight away and is never retried. Handlers that can tell should override this
+     */
+    public Completable sendPush (final HashMap<String, Object> data) {
+        return Completable.fromAction(() -> sendPushNotification(data));
+    }
 
 }
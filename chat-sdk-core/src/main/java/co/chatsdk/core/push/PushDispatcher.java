@@ -0,0 +1,223 @@
+package co.chatsdk.core.push;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import co.chatsdk.core.dao.Message;
+import co.chatsdk.core.dao.Thread;
+import co.chatsdk.core.dao.User;
+import co.chatsdk.core.events.EventType;
+import co.chatsdk.core.events.NetworkEvent;
+import co.chatsdk.core.rx.RXSchedulers;
+import co.chatsdk.core.session.ChatSDK;
+import co.chatsdk.core.utils.DisposableMap;
+import co.chatsdk.core.utils.StringChecker;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.disposables.Disposable;
+
+/**
+ * Sends the push notifications for outgoing messages.
+ *
+ * The first message sent to a thread is pushed straight away. Messages that follow within
+ * {@link co.chatsdk.core.session.Configuration#pushCoalesceInterval} are held and sent as one push when
+ * the interval ends. A failed push is retried up to {@link co.chatsdk.core.session.Configuration#pushMaxRetries}
+ * times, the delay doubles after each attempt. Retries need a handler that reports failures from
+ * {@link AbstractPushHandler#sendPush(HashMap)}.
+ *
+ * The recipients for each thread are cached so the thread's users only need to be loaded once.
+ * A thread's recipients are dropped when its users change or when one of its users' presence
+ * or meta changes, because they decide whether the user gets the push and what it says.
+ */
+
+public class PushDispatcher {
+
+    protected static class Recipients {
+        // Every member's push channel, used to tell which threads a user change affects
+        protected final Set<String> members = new HashSet<>();
+        // Push channel to name for the members that should get the push
+        protected final HashMap<String, String> users = new HashMap<>();
+    }
+
+    protected final AbstractPushHandler handler;
+
+    protected final Map<String, Recipients> recipients = new HashMap<>();
+    protected final Map<String, List<Message>> pending = new HashMap<>();
+    // Threads that have had a push within the coalesce interval
+    protected final Set<String> windows = new HashSet<>();
+    protected final DisposableMap timers = new DisposableMap();
+
+    protected Disposable eventDisposable;
+
+    public PushDispatcher (AbstractPushHandler handler) {
+        this.handler = handler;
+        eventDisposable = ChatSDK.events().router().type(EventType.ThreadUsersChanged, EventType.ThreadRemoved,
+                EventType.UserPresenceUpdated, EventType.UserMetaUpdated, EventType.Logout)
+                .subscribe(this::onEvent, ChatSDK::logError);
+    }
+
+    /**
+     * Push the message now, or when the thread's coalesce interval ends if a push was just sent
+     */
+    public void add (Message message) {
+        Thread thread = message.getThread();
+        if (thread == null || thread.getEntityID() == null) {
+            return;
+        }
+        String key = thread.getEntityID();
+
+        synchronized (this) {
+            if (windows.contains(key)) {
+                List<Message> messages = pending.get(key);
+                if (messages == null) {
+                    messages = new ArrayList<>();
+                    pending.put(key, messages);
+                }
+                messages.add(message);
+                return;
+            }
+            openWindow(key);
+        }
+
+        push(Collections.singletonList(message));
+    }
+
+    protected void openWindow (final String key) {
+        long interval = ChatSDK.config().pushCoalesceInterval;
+        if (interval > 0) {
+            windows.add(key);
+            timers.add(key, Completable.timer(interval, TimeUnit.MILLISECONDS, RXSchedulers.db())
+                    .subscribe(() -> flush(key), ChatSDK::logError));
+        }
+    }
+
+    /**
+     * Called when the interval ends, anything that arrived during it is sent and the thread
+     * stays coalesced for another interval
+     */
+    protected void flush (String key) {
+        List<Message> messages;
+        synchronized (this) {
+            messages = pending.remove(key);
+            windows.remove(key);
+            timers.remove(key);
+            if (messages != null && !messages.isEmpty()) {
+                openWindow(key);
+            }
+        }
+        if (messages != null && !messages.isEmpty()) {
+            push(messages);
+        }
+    }
+
+    protected void push (List<Message> messages) {
+        HashMap<String, Object> data = handler.pushDataForMessages(messages);
+        if (data != null) {
+            send(data);
+        }
+    }
+
+    protected void send (HashMap<String, Object> data) {
+        final int maxRetries = ChatSDK.config().pushMaxRetries;
+        final long retryDelay = ChatSDK.config().pushRetryDelay;
+
+        handler.sendPush(data).retryWhen(errors -> {
+            final AtomicInteger attempts = new AtomicInteger();
+            return errors.flatMap(error -> {
+                int attempt = attempts.incrementAndGet();
+                if (attempt > maxRetries) {
+                    return Flowable.error(error);
+                }
+                return Flowable.timer(retryDelay << (attempt - 1), TimeUnit.MILLISECONDS, RXSchedulers.network());
+            });
+        }).subscribe(() -> {}, ChatSDK::logError);
+    }
+
+    /**
+     * Push channel to name for the thread's members who should get a push, don't change it
+     */
+    public synchronized HashMap<String, String> recipients (Thread thread) {
+        Recipients cached = recipients.get(thread.getEntityID());
+        if (cached == null) {
+            cached = loadRecipients(thread);
+            if (thread.getEntityID() != null) {
+                recipients.put(thread.getEntityID(), cached);
+            }
+        }
+        return cached.users;
+    }
+
+    protected Recipients loadRecipients (Thread thread) {
+        Recipients result = new Recipients();
+        for(User user : thread.getUsers()) {
+
+            String userName = user.getName();
+            String channel = user.getPushChannel();
+
+            if (!StringChecker.isNullOrEmpty(channel)) {
+                result.members.add(channel);
+            }
+            if (!user.isMe() && !StringChecker.isNullOrEmpty(channel) && !StringChecker.isNullOrEmpty(userName)) {
+                if(!user.getIsOnline() || !ChatSDK.config().onlySendPushToOfflineUsers) {
+                    result.users.put(channel, userName);
+                }
+            }
+        }
+        return result;
+    }
+
+    protected synchronized void onEvent (NetworkEvent event) {
+        switch (event.type) {
+            case ThreadUsersChanged:
+            case ThreadRemoved:
+                if (event.thread != null) {
+                    recipients.remove(event.thread.getEntityID());
+                }
+                break;
+            case UserPresenceUpdated:
+            case UserMetaUpdated:
+                if (event.user != null && event.user.getEntityID() != null) {
+                    invalidateUser(event.user.getPushChannel());
+                }
+                else {
+                    recipients.clear();
+                }
+                break;
+            case Logout:
+                // The user can't send pushes any more
+                timers.dispose();
+                windows.clear();
+                pending.clear();
+                recipients.clear();
+                break;
+        }
+    }
+
+    protected void invalidateUser (String channel) {
+        Iterator<Recipients> iterator = recipients.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().members.contains(channel)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void dispose () {
+        if (eventDisposable != null) {
+            eventDisposable.dispose();
+        }
+        timers.dispose();
+        windows.clear();
+        pending.clear();
+        recipients.clear();
+    }
+
+}
@@ -0,0 +1,72 @@
+package co.chatsdk.core.rx;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import co.chatsdk.core.session.ChatSDK;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * The schedulers used by the handlers and network adapters. Work is split so that
+ * a slow network call for one thread can't hold up database writes or sends for
+ * another:
+ *
+ * db - a single thread, database writes are serialized on it
+ * network - a fixed pool for Firebase listeners, pushes and uploads
+ * computation - CPU bound work like image compression
+ *
+ * Each scheduler can be replaced, for example with a trampoline scheduler in tests.
+ */
+
+public class RXSchedulers {
+
+    private static Scheduler db;
+    private static Scheduler network;
+    private static Scheduler computation;
+
+    public static synchronized Scheduler db () {
+        if (db == null) {
+            db = Schedulers.from(newExecutor("chat-sdk-db", 1));
+        }
+        return db;
+    }
+
+    public static synchronized Scheduler network () {
+        if (network == null) {
+            int poolSize = ChatSDK.config() != null ? ChatSDK.config().networkThreadPoolSize : 4;
+            network = Schedulers.from(newExecutor("chat-sdk-network", Math.max(1, poolSize)));
+        }
+        return network;
+    }
+
+    public static synchronized Scheduler computation () {
+        if (computation == null) {
+            computation = Schedulers.computation();
+        }
+        return computation;
+    }
+
+    public static synchronized void setDb (Scheduler scheduler) {
+        db = scheduler;
+    }
+
+    public static synchronized void setNetwork (Scheduler scheduler) {
+        network = scheduler;
+    }
+
+    public static synchronized void setComputation (Scheduler scheduler) {
+        computation = scheduler;
+    }
+
+    private static ExecutorService newExecutor (final String name, int threads) {
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+}
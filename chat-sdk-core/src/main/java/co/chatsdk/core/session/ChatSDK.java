@@ -19,6 +19,7 @@ import co.chatsdk.core.dao.User;
 import co.chatsdk.core.error.ChatSDKException;
 import co.chatsdk.core.events.EventType;
 import co.chatsdk.core.events.NetworkEvent;
+import co.chatsdk.core.events.PreparedEvent;
 import co.chatsdk.core.handlers.AudioMessageHandler;
 import co.chatsdk.core.handlers.AuthenticationHandler;
 import co.chatsdk.core.handlers.BlockingHandler;
@@ -150,24 +151,31 @@ public class ChatSDK {
             localNotificationDisposable.dispose();
         }
 
-        // TODO: Check this
-        localNotificationDisposable = ChatSDK.events().sourceOnMain()
-                .filter(NetworkEvent.filterType(EventType.MessageAdded))
-                .subscribe(networkEvent -> {
-                    Message message = networkEvent.message;
-                    Thread thread = networkEvent.thread;
-                    if(message != null && !AppBackgroundMonitor.shared().inBackground()) {
-                        if (thread.typeIs(ThreadType.Private) || (thread.typeIs(ThreadType.Public) && ChatSDK.config().pushNotificationsForPublicChatRoomsEnabled)) {
-                            if(!message.getSender().isMe() && ChatSDK.ui().showLocalNotifications(message.getThread())) {
-                                ReadStatus status = message.readStatusForUser(ChatSDK.currentUser());
-                                if (!message.isRead() && !status.is(ReadStatus.delivered())) {
-                                    // Only show the alert if we'recyclerView not on the private threads tab
-                                    ChatSDK.ui().notificationDisplayHandler().createMessageNotification(message);
-                                }
-                            }
-                        }
+        // The checks read the database so they run in the background, only the notification is shown on the main thread
+        localNotificationDisposable = PreparedEvent.prepare(ChatSDK.events().router().type(EventType.MessageAdded, EventType.MessagesAdded), this::messageForLocalNotification)
+                .filter(PreparedEvent::hasData)
+                .subscribe(prepared -> ChatSDK.ui().notificationDisplayHandler().createMessageNotification(prepared.data), ChatSDK::logError);
+    }
+
+    /**
+     * @return the message to show a local notification for or null if there shouldn't be one
+     */
+    protected Message messageForLocalNotification (NetworkEvent networkEvent) {
+        // For a batch this is the latest message
+        Message message = networkEvent.message;
+        Thread thread = networkEvent.thread;
+        if(message != null && thread != null && !AppBackgroundMonitor.shared().inBackground()) {
+            if (thread.typeIs(ThreadType.Private) || (thread.typeIs(ThreadType.Public) && ChatSDK.config().pushNotificationsForPublicChatRoomsEnabled)) {
+                if(!message.getSender().isMe() && ChatSDK.ui().showLocalNotifications(message.getThread())) {
+                    ReadStatus status = message.readStatusForUser(ChatSDK.currentUser());
+                    if (!message.isRead() && !status.is(ReadStatus.delivered())) {
+                        // Only show the alert if we'recyclerView not on the private threads tab
+                        return message;
                     }
-                });
+                }
+            }
+        }
+        return null;
     }
 
     public void setLocalNotificationHandler (LocalNotificationHandler handler) {
@@ -78,6 +78,14 @@ public class Configuration {
 
     // If this is true, then we will only send a push notification if the recipient is offline
     public boolean onlySendPushToOfflineUsers = false;
+
+    // The first message to a thread is pushed straight away, messages that follow within this many
+    // millis are sent together as one push, see PushDispatcher.
+    // A failed push is retried with the delay doubling after each attempt
+    public long pushCoalesceInterval = 1500;
+    public int pushMaxRetries = 3;
+    public long pushRetryDelay = 1000;
+
     public boolean showEmptyChats = false;
 
     // Contact Book
@@ -120,9 +128,42 @@ public class Configuration {
     public int messageHistoryDownloadLimit = 30;
     public int messageDeletionListenerLimit = 30;
 
+    // Size of the pool used for network requests, see RXSchedulers
+    public int networkThreadPoolSize = 4;
+
+    // Incoming messages are buffered for this long and then written in one transaction
+    public long messageIngestionBatchWindow = 250;
+
+    // Bursts of events for the same thread are merged into one within this window, see EventRouter.coalesce
+    public long eventCoalesceInterval = 16;
+
+    // The most messages the chat screen keeps in memory, older or newer pages are trimmed and reloaded from the database
+    public int messageListWindowSize = 200;
+
+    // The most threads that are fully listened to, other threads only listen to their last message
+    // until they become active or are opened. See ThreadListenerScheduler in the Firebase adapter
+    public int activeThreadListenerLimit = 30;
+
+    // Typing indicator timings in millis, see TypingStateEngine. Composing is written at most once
+    // per write interval, the user goes back to active after the timeout and other users' typing
+    // states are dropped after the expiry if they haven't been refreshed
+    public long typingStateWriteInterval = 3000;
+    public long typingStateTimeout = 5000;
+    public long typingStateExpiry = 8000;
+
+    // The most user profile snapshots kept in memory, see UserProfileCache
+    public int userProfileCacheSize = 500;
+
+    // Report database access on the main thread, see MainThreadAccessDetector. If fatal is set
+    // the access throws instead of being logged
+    public boolean detectMainThreadDatabaseAccess = false;
+    public boolean mainThreadDatabaseAccessFatal = false;
+
     public int imageMaxWidth = 1920;
     public int imageMaxHeight = 2560;
     public int imageMaxThumbnailDimension = 400;
+    // Longest side of the inline preview sent with image messages, it's shown blurred so it can be tiny
+    public int imagePreviewDimension = 16;
     public int maxInboxNotificationLines = 7;
     public boolean imageCroppingEnabled = true;
 
@@ -432,6 +473,57 @@ public class Configuration {
             return this;
         }
 
+        public Builder networkThreadPoolSize (int size) {
+            config.networkThreadPoolSize = size;
+            return this;
+        }
+
+        public Builder messageIngestionBatchWindow (long millis) {
+            config.messageIngestionBatchWindow = millis;
+            return this;
+        }
+
+        public Builder eventCoalesceInterval (long millis) {
+            config.eventCoalesceInterval = millis;
+            return this;
+        }
+
+        public Builder messageListWindowSize (int size) {
+            config.messageListWindowSize = size;
+            return this;
+        }
+
+        public Builder activeThreadListenerLimit (int limit) {
+            config.activeThreadListenerLimit = limit;
+            return this;
+        }
+
+        public Builder typingStateWriteInterval (long millis) {
+            config.typingStateWriteInterval = millis;
+            return this;
+        }
+
+        public Builder typingStateTimeout (long millis) {
+            config.typingStateTimeout = millis;
+            return this;
+        }
+
+        public Builder typingStateExpiry (long millis) {
+            config.typingStateExpiry = millis;
+            return this;
+        }
+
+        public Builder userProfileCacheSize (int size) {
+            config.userProfileCacheSize = size;
+            return this;
+        }
+
+        public Builder detectMainThreadDatabaseAccess (boolean detect, boolean fatal) {
+            config.detectMainThreadDatabaseAccess = detect;
+            config.mainThreadDatabaseAccessFatal = fatal;
+            return this;
+        }
+
         public Builder contactsToLoadPerBatch (int number) {
             config.contactsToLoadPerBatch = number;
             return this;
@@ -532,6 +624,11 @@ public class Configuration {
             return this;
         }
 
+        public Builder imagePreviewDimension(int value) {
+            config.imagePreviewDimension = value;
+            return this;
+        }
+
         public Builder maxInboxNotificationLines(int value) {
             config.maxInboxNotificationLines = value;
             return this;
@@ -612,6 +709,17 @@ public class Configuration {
             return this;
         }
 
+        public Builder pushCoalesceInterval(long millis) {
+            config.pushCoalesceInterval = millis;
+            return this;
+        }
+
+        public Builder pushRetries(int maxRetries, long delayMillis) {
+            config.pushMaxRetries = maxRetries;
+            config.pushRetryDelay = delayMillis;
+            return this;
+        }
+
         public Builder pushNotificationSound(String sound) {
             config.pushNotificationSound = sound;
             return this;
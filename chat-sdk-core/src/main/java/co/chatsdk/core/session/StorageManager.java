@@ -1,14 +1,15 @@
 package co.chatsdk.core.session;
 
-import org.greenrobot.greendao.query.QueryBuilder;
+import org.greenrobot.greendao.query.Query;
 
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import co.chatsdk.core.dao.DaoCore;
 import co.chatsdk.core.dao.Message;
-import co.chatsdk.core.dao.MessageDao;
+import co.chatsdk.core.dao.QueryRegistry;
 import co.chatsdk.core.dao.Thread;
 import co.chatsdk.core.dao.ThreadDao;
 import co.chatsdk.core.dao.User;
@@ -91,7 +92,7 @@ public class StorageManager {
 
     public Thread fetchThreadWithEntityID (String entityID) {
         if(entityID != null) {
-            return fetchEntityWithProperty(Thread.class, ThreadDao.Properties.EntityID, entityID);
+            return DaoCore.fetchEntityWithEntityID(Thread.class, entityID);
         }
         return null;
     }
@@ -115,33 +116,72 @@ public class StorageManager {
     }
 
 
-    public List<Message> fetchMessagesForThreadWithID (long threadID, int limit) {
-        return fetchMessagesForThreadWithID(threadID, limit, null);
+    public int unreadMessagesCountForThread (Long threadID, Long userID) {
+        return DaoCore.countUnreadMessagesForThread(threadID, userID);
     }
 
-    public List<Message> fetchMessagesForThreadWithID (long threadID, int limit, Date olderThan) {
-        List<Message> list ;
+    /**
+     * Unread counts for all threads in one query, threads with no unread messages are omitted
+     */
+    public Map<Long, Integer> unreadMessagesCountByThread (Long userID) {
+        return DaoCore.countUnreadMessagesByThread(userID);
+    }
 
-        QueryBuilder<Message> qb = daoSession.queryBuilder(Message.class);
-        qb.where(MessageDao.Properties.ThreadId.eq(threadID));
+    public void markMessagesReadForThread (Long threadID) {
+        DaoCore.markMessagesReadForThread(threadID);
+    }
 
-        // Making sure no null messages infected the sort.
-        qb.where(MessageDao.Properties.Date.isNotNull());
-        qb.where(MessageDao.Properties.SenderId.isNotNull());
+    /**
+     * Keyset paging on (date, id). Returns up to limit messages older than the given message,
+     * newest first. If the message is null the newest messages are returned
+     */
+    public List<Message> fetchMessagesBefore (long threadID, Message before, int limit) {
+        boolean hasCursor = before != null && before.getDate() != null && before.getId() != null;
+        return keysetPage(QueryRegistry.messagesBefore(hasCursor, limit != -1), threadID, hasCursor ? before : null, limit);
+    }
 
-        if(olderThan != null) {
-            qb.where(MessageDao.Properties.Date.lt(olderThan.getTime()));
+    /**
+     * Keyset paging on (date, id). Returns up to limit messages newer than the given message, oldest first
+     */
+    public List<Message> fetchMessagesAfter (long threadID, Message after, int limit) {
+        boolean hasCursor = after != null && after.getDate() != null && after.getId() != null;
+        return keysetPage(QueryRegistry.messagesAfter(hasCursor, limit != -1), threadID, hasCursor ? after : null, limit);
+    }
+
+    protected List<Message> keysetPage (Query<Message> query, long threadID, Message cursor, int limit) {
+        query.setParameter(0, threadID);
+        if (cursor != null) {
+            long time = cursor.getDate().toDate().getTime();
+            query.setParameter(1, time);
+            query.setParameter(2, time);
+            query.setParameter(3, cursor.getId());
         }
+        if (limit != -1) {
+            query.setLimit(limit);
+        }
+        return query.list();
+    }
 
-        qb.orderDesc(MessageDao.Properties.Date);
+    public void deleteMessagesForThread (Long threadID) {
+        DaoCore.deleteMessagesForThread(threadID);
+    }
 
-        if (limit != -1)
-            qb.limit(limit);
+    public List<Message> fetchMessagesForThreadWithID (long threadID, int limit) {
+        return fetchMessagesForThreadWithID(threadID, limit, null);
+    }
 
-        list = qb.list();
+    public List<Message> fetchMessagesForThreadWithID (long threadID, int limit, Date olderThan) {
+        Query<Message> query = QueryRegistry.messagesOlderThan(olderThan != null, limit != -1);
+        query.setParameter(0, threadID);
 
-        return list;
+        if(olderThan != null) {
+            query.setParameter(1, olderThan.getTime());
+        }
+
+        if (limit != -1)
+            query.setLimit(limit);
 
+        return query.list();
     }
 
 }
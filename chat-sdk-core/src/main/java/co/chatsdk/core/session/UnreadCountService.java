@@ -0,0 +1,180 @@
+package co.chatsdk.core.session;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import co.chatsdk.core.dao.Thread;
+import co.chatsdk.core.dao.User;
+import co.chatsdk.core.events.EventType;
+import co.chatsdk.core.events.NetworkEvent;
+import co.chatsdk.core.interfaces.ThreadType;
+import co.chatsdk.core.rx.RXSchedulers;
+import io.reactivex.Observable;
+import io.reactivex.subjects.BehaviorSubject;
+
+/**
+ * Keeps the number of unread messages in private threads so badges don't need to query the
+ * database. The counts are loaded once with a single query and after that each thread's
+ * count is read from its unread message count column, which the thread keeps up to date,
+ * whenever a message is added or removed or the thread is read.
+ *
+ * The totals are persisted so they are available straight away when the app starts.
+ */
+
+public class UnreadCountService {
+
+    public static final String Preferences = "chat_sdk_unread_counts";
+    protected static final String TotalKey = "total";
+    protected static final String ThreadsKey = "threads";
+
+    protected static UnreadCountService instance;
+
+    protected final Map<Long, Integer> counts = new HashMap<>();
+    protected int total;
+    protected int threads;
+    protected boolean loaded = false;
+
+    protected final BehaviorSubject<Integer> totalSubject;
+    protected final BehaviorSubject<Integer> threadsSubject;
+
+    public static synchronized UnreadCountService shared () {
+        if (instance == null) {
+            instance = new UnreadCountService();
+            instance.start();
+        }
+        return instance;
+    }
+
+    protected UnreadCountService () {
+        SharedPreferences preferences = preferences();
+        total = preferences.getInt(TotalKey, 0);
+        threads = preferences.getInt(ThreadsKey, 0);
+        totalSubject = BehaviorSubject.createDefault(total);
+        threadsSubject = BehaviorSubject.createDefault(threads);
+    }
+
+    protected void start () {
+        ChatSDK.events().router().type(EventType.MessageAdded, EventType.MessagesAdded, EventType.MessageRemoved,
+                EventType.ThreadRead, EventType.ThreadRemoved, EventType.Logout)
+                .observeOn(RXSchedulers.db())
+                .subscribe(this::onEvent, ChatSDK::logError);
+    }
+
+    /**
+     * @param onePerThread count threads with unread messages instead of messages
+     */
+    public Observable<Integer> count (boolean onePerThread) {
+        return (onePerThread ? threadsSubject : totalSubject).distinctUntilChanged();
+    }
+
+    /**
+     * The count without touching the database, it may be the persisted count from the last
+     * session until the counts have been loaded
+     */
+    public synchronized int getCount (boolean onePerThread) {
+        return onePerThread ? threads : total;
+    }
+
+    /**
+     * Make sure the counts come from the database, this runs one query the first time
+     */
+    public synchronized int loadCount (boolean onePerThread) {
+        if (!loaded) {
+            load();
+        }
+        return getCount(onePerThread);
+    }
+
+    public synchronized int getCount (Thread thread) {
+        Integer count = counts.get(thread.getId());
+        return count != null ? count : 0;
+    }
+
+    protected synchronized void onEvent (NetworkEvent event) {
+        if (event.type == EventType.Logout) {
+            reset();
+            return;
+        }
+        if (!loaded) {
+            load();
+            return;
+        }
+        Thread thread = event.thread;
+        if (thread == null || thread.getId() == null) {
+            return;
+        }
+        if (event.type == EventType.ThreadRemoved || thread.isDeleted() || !thread.typeIs(ThreadType.Private)) {
+            set(thread.getId(), 0);
+        }
+        else {
+            set(thread.getId(), thread.getUnreadMessagesCount());
+        }
+        publish();
+    }
+
+    protected void load () {
+        counts.clear();
+        total = 0;
+        threads = 0;
+
+        User currentUser = ChatSDK.currentUser();
+        if (currentUser != null) {
+            Map<Long, Integer> unread = ChatSDK.db().unreadMessagesCountByThread(currentUser.getId());
+            List<Thread> privateThreads = ChatSDK.thread().getThreads(ThreadType.Private, false);
+            for (Thread thread : privateThreads) {
+                Integer count = unread.get(thread.getId());
+                if (count != null) {
+                    set(thread.getId(), count);
+                }
+            }
+        }
+
+        loaded = true;
+        publish();
+    }
+
+    protected void set (Long threadId, int count) {
+        Integer previous = counts.get(threadId);
+        int previousCount = previous != null ? previous : 0;
+        if (previousCount == count) {
+            return;
+        }
+
+        total += count - previousCount;
+        if (previousCount == 0) {
+            threads++;
+        }
+        if (count == 0) {
+            threads--;
+            counts.remove(threadId);
+        }
+        else {
+            counts.put(threadId, count);
+        }
+    }
+
+    protected synchronized void reset () {
+        counts.clear();
+        total = 0;
+        threads = 0;
+        loaded = false;
+        publish();
+    }
+
+    protected void publish () {
+        if (total != preferences().getInt(TotalKey, -1) || threads != preferences().getInt(ThreadsKey, -1)) {
+            preferences().edit().putInt(TotalKey, total).putInt(ThreadsKey, threads).apply();
+        }
+        totalSubject.onNext(total);
+        threadsSubject.onNext(threads);
+    }
+
+    protected SharedPreferences preferences () {
+        return ChatSDK.shared().context().getSharedPreferences(Preferences, Context.MODE_PRIVATE);
+    }
+
+}
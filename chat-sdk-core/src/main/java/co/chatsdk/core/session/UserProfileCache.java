@@ -0,0 +1,117 @@
+package co.chatsdk.core.session;
+
+import android.util.LruCache;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import co.chatsdk.core.dao.User;
+import co.chatsdk.core.dao.UserMetaValue;
+import co.chatsdk.core.types.UserProfile;
+
+/**
+ * Snapshots of user profiles keyed by entity ID. The user's getters read from the snapshot so
+ * list rows can ask for a name, avatar or availability without touching the meta values.
+ *
+ * A snapshot is dropped whenever one of the user's meta values is set and rebuilt the next time
+ * it's read. When a batch of values arrives from the server the snapshot is rebuilt once at the
+ * end with {@link #update(User)}. The least recently used snapshots are evicted when there are more
+ * than {@link Configuration#userProfileCacheSize}.
+ */
+
+public class UserProfileCache {
+
+    protected static UserProfileCache instance;
+
+    protected final LruCache<String, UserProfile> profiles;
+
+    public static synchronized UserProfileCache shared () {
+        if (instance == null) {
+            int size = ChatSDK.config() != null ? ChatSDK.config().userProfileCacheSize : 500;
+            instance = new UserProfileCache(Math.max(1, size));
+        }
+        return instance;
+    }
+
+    protected UserProfileCache (int size) {
+        profiles = new LruCache<>(size);
+    }
+
+    /**
+     * @return the user's profile, built from their meta values if it isn't cached
+     */
+    public UserProfile get (User user) {
+        String entityID = user.getEntityID();
+        UserProfile profile = entityID != null ? profiles.get(entityID) : null;
+        if (profile == null) {
+            List<UserMetaValue> values = user.getMetaValues();
+            int version;
+            synchronized (user) {
+                version = user.getMetaVersion();
+                profile = build(user, values);
+            }
+            if (entityID != null) {
+                put(user, profile, version);
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * Only cache the snapshot if no value has been written since it was built, otherwise an
+     * older snapshot could replace the invalidation that followed the write
+     */
+    protected synchronized void put (User user, UserProfile profile, int version) {
+        synchronized (user) {
+            if (user.getMetaVersion() != version) {
+                return;
+            }
+        }
+        profiles.put(user.getEntityID(), profile);
+    }
+
+    /**
+     * @return the cached profile or null, this never reads the database
+     */
+    public UserProfile get (String entityID) {
+        return entityID != null ? profiles.get(entityID) : null;
+    }
+
+    /**
+     * Rebuild the user's snapshot after their meta values have changed
+     */
+    public UserProfile update (User user) {
+        invalidate(user.getEntityID());
+        return get(user);
+    }
+
+    public synchronized void invalidate (String entityID) {
+        if (entityID != null) {
+            profiles.remove(entityID);
+        }
+    }
+
+    public void clear () {
+        profiles.evictAll();
+    }
+
+    public int size () {
+        return profiles.size();
+    }
+
+    /**
+     * Called with the user locked, the same lock writers hold
+     */
+    protected UserProfile build (User user, List<UserMetaValue> values) {
+        Map<String, String> meta = new HashMap<>();
+        for (UserMetaValue value : values) {
+            // Keep the first value for a key to match metaValueForKey
+            if (value.getKey() != null && !meta.containsKey(value.getKey())) {
+                meta.put(value.getKey(), value.getValue());
+            }
+        }
+        return new UserProfile(user.getEntityID(), meta);
+    }
+
+}
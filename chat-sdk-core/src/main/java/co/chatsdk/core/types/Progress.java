@@ -9,6 +9,14 @@ public class Progress {
     private long transferredBytes;
     private long totalBytes;
 
+    public long getTransferredBytes() {
+        return transferredBytes;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
     public float asFraction() {
         return (float) transferredBytes / (float) totalBytes;
     }
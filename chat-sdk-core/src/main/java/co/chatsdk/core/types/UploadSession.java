@@ -0,0 +1,54 @@
+package co.chatsdk.core.types;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The state of an upload that can be resumed. Sessions are keyed by the entity ID
+ * of the message the file belongs to and are persisted by {@link co.chatsdk.core.utils.UploadSessionStore}
+ * so an upload can carry on after the app has been killed.
+ */
+
+public class UploadSession {
+
+    public String key;
+    public String fileUri;
+    public String name;
+    public String mimeType;
+
+    // Set by the upload handler, a session can only be resumed against the same remote file
+    public String remotePath;
+    public String sessionUri;
+    public Progress progress = new Progress();
+
+    public UploadSession (String key, String fileUri, String name, String mimeType) {
+        this.key = key;
+        this.fileUri = fileUri;
+        this.name = name;
+        this.mimeType = mimeType;
+    }
+
+    public String toJson () throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("key", key);
+        json.put("fileUri", fileUri);
+        json.put("name", name);
+        json.put("mimeType", mimeType);
+        json.putOpt("remotePath", remotePath);
+        json.putOpt("sessionUri", sessionUri);
+        json.put("transferredBytes", progress.getTransferredBytes());
+        json.put("totalBytes", progress.getTotalBytes());
+        return json.toString();
+    }
+
+    public static UploadSession fromJson (String value) throws JSONException {
+        JSONObject json = new JSONObject(value);
+        UploadSession session = new UploadSession(json.getString("key"), json.getString("fileUri"),
+                json.optString("name", null), json.optString("mimeType", null));
+        session.remotePath = json.optString("remotePath", null);
+        session.sessionUri = json.optString("sessionUri", null);
+        session.progress.set(json.optLong("totalBytes"), json.optLong("transferredBytes"));
+        return session;
+    }
+
+}
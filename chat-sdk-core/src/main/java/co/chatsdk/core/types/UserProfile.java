@@ -0,0 +1,56 @@
+package co.chatsdk.core.types;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import co.chatsdk.core.dao.Keys;
+
+/**
+ * An immutable snapshot of a user's meta values. Snapshots are shared by
+ * {@link co.chatsdk.core.session.UserProfileCache} and replaced rather than changed
+ * so they can be read from any thread.
+ */
+
+public class UserProfile {
+
+    protected final String entityID;
+    protected final Map<String, String> meta;
+
+    public UserProfile (String entityID, Map<String, String> meta) {
+        this.entityID = entityID;
+        this.meta = Collections.unmodifiableMap(new HashMap<>(meta));
+    }
+
+    public String getEntityID () {
+        return entityID;
+    }
+
+    public String get (String key) {
+        return meta.get(key);
+    }
+
+    /**
+     * @return a read only view of the meta values
+     */
+    public Map<String, String> getMeta () {
+        return meta;
+    }
+
+    public String getName () {
+        return meta.get(Keys.Name);
+    }
+
+    public String getAvatarURL () {
+        return meta.get(Keys.AvatarURL);
+    }
+
+    public String getAvailability () {
+        return meta.get(Keys.Availability);
+    }
+
+    public String getStatus () {
+        return meta.get(Keys.Status);
+    }
+
+}
@@ -8,6 +8,7 @@ import com.facebook.common.executors.CallerThreadExecutor;
 import com.facebook.common.references.CloseableReference;
 import com.facebook.datasource.DataSource;
 import com.facebook.drawee.backends.pipeline.Fresco;
+import com.facebook.imagepipeline.common.ResizeOptions;
 import com.facebook.imagepipeline.core.ImagePipeline;
 import com.facebook.imagepipeline.datasource.BaseBitmapDataSubscriber;
 import com.facebook.imagepipeline.image.CloseableImage;
@@ -27,12 +28,21 @@ public class ImageBuilder {
 
     // TODO: Localize
     public static Single<Bitmap> bitmapForURL (final Context context, final String url) {
+        return bitmapForURL(context, url, 0, 0);
+    }
+
+    /**
+     * If a width and height are given the image is downsampled while it's decoded
+     */
+    public static Single<Bitmap> bitmapForURL (final Context context, final String url, final int width, final int height) {
         return Single.create((SingleOnSubscribe<Bitmap>) e -> {
             if(!StringChecker.isNullOrEmpty(url)) {
                 Uri uri = Uri.parse(url);
-                ImageRequest request = ImageRequestBuilder
-                        .newBuilderWithSource(uri)
-                        .build();
+                ImageRequestBuilder builder = ImageRequestBuilder.newBuilderWithSource(uri);
+                if (width > 0 && height > 0) {
+                    builder.setResizeOptions(new ResizeOptions(width, height));
+                }
+                ImageRequest request = builder.build();
                 ImagePipeline pipeline = Fresco.getImagePipeline();
                 DataSource dataSource = pipeline.fetchDecodedImage(request, context);
                 dataSource.subscribe(new BaseBitmapDataSubscriber() {
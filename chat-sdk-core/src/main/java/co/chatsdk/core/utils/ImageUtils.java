@@ -18,6 +18,7 @@ import android.media.ThumbnailUtils;
 import android.net.Uri;
 import android.os.Environment;
 import android.os.StrictMode;
+import android.util.Base64;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -75,9 +76,13 @@ public class ImageUtils {
     }
 
     public static File compressImageToFile(Bitmap bitmap, File outFile, Bitmap.CompressFormat format) {
+        return compressImageToFile(bitmap, outFile, format, 100);
+    }
+
+    public static File compressImageToFile(Bitmap bitmap, File outFile, Bitmap.CompressFormat format, int quality) {
         try {
             OutputStream outStream = new FileOutputStream(outFile);
-            bitmap.compress(format, 100, outStream);
+            bitmap.compress(format, quality, outStream);
             outStream.flush();
             outStream.close();
         }
@@ -201,6 +206,64 @@ public class ImageUtils {
     }
 
 
+    /**
+     * Decode the image at the path so that its longest side is at most maxDimension. The
+     * image is subsampled while it's decoded so the full size bitmap is never allocated
+     */
+    public static Bitmap decodeScaledBitmap(String path, int maxDimension) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int sampleSize = 1;
+        while (Math.max(options.outWidth, options.outHeight) / (sampleSize * 2) >= maxDimension) {
+            sampleSize *= 2;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap bitmap = BitmapFactory.decodeFile(path, options);
+
+        if (bitmap != null && Math.max(bitmap.getWidth(), bitmap.getHeight()) > maxDimension) {
+            Bitmap scaled = scaleImage(bitmap, maxDimension);
+            if (scaled != bitmap) {
+                bitmap.recycle();
+            }
+            bitmap = scaled;
+        }
+        return bitmap;
+    }
+
+    /**
+     * A tiny JPEG of the image encoded as Base64. It's small enough to be sent inline with
+     * the message and shown blurred while the thumbnail downloads
+     */
+    public static String getPreviewString(Bitmap bitmap, int maxDimension) {
+        Bitmap preview = scaleImage(bitmap, maxDimension);
+        if (preview == null) {
+            return null;
+        }
+        String value = Base64.encodeToString(getImageByteArray(preview, 40), Base64.NO_WRAP);
+        if (preview != bitmap) {
+            preview.recycle();
+        }
+        return value;
+    }
+
+    public static Bitmap decodePreviewString(String preview) {
+        try {
+            byte [] bytes = Base64.decode(preview, Base64.NO_WRAP);
+            return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
     public static byte[] getImageByteArray(Bitmap bitmap){
         return getImageByteArray(bitmap, 50);
     }
@@ -0,0 +1,178 @@
+package co.chatsdk.core.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import co.chatsdk.core.dao.Thread;
+import co.chatsdk.core.events.EventType;
+import co.chatsdk.core.events.NetworkEvent;
+import co.chatsdk.core.handlers.TypingIndicatorHandler;
+import co.chatsdk.core.rx.RXSchedulers;
+import co.chatsdk.core.session.ChatSDK;
+import io.reactivex.Completable;
+import io.reactivex.Observable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.Subject;
+
+/**
+ * Sits between the UI and the {@link TypingIndicatorHandler}.
+ *
+ * Outgoing, the chat screen reports every keystroke with {@link #composing(Thread)}. The composing
+ * state is written at most once per {@link co.chatsdk.core.session.Configuration#typingStateWriteInterval},
+ * and repeated at that interval while the user keeps typing so it doesn't expire for the other users.
+ * The active state is written once the user has stopped typing for
+ * {@link co.chatsdk.core.session.Configuration#typingStateTimeout}. Other states are only written
+ * when they change.
+ *
+ * Incoming, typing indicator handlers report the other users with {@link #remoteTypingChanged(Thread, String)}.
+ * Handlers that publish TypingStateChanged events themselves are covered too, the engine subscribes
+ * to those events once {@link #events()} is first called.
+ * A remote typing state expires locally after {@link co.chatsdk.core.session.Configuration#typingStateExpiry}
+ * unless it's refreshed, so a user who drops off mid message doesn't appear to type forever.
+ * The engine publishes its own TypingStateChanged events with {@link #events()}, only when a thread's
+ * typing text changes. The UI should listen to these rather than the handler's events.
+ */
+
+public class TypingStateEngine {
+
+    protected static final TypingStateEngine instance = new TypingStateEngine();
+
+    protected static class SentState {
+        protected TypingIndicatorHandler.State state;
+        protected long date;
+    }
+
+    protected final Map<String, SentState> sent = new HashMap<>();
+    protected final Map<String, String> remote = new HashMap<>();
+    protected final DisposableMap idleTimers = new DisposableMap();
+    protected final DisposableMap expiryTimers = new DisposableMap();
+
+    protected final Subject<NetworkEvent> events = PublishSubject.<NetworkEvent>create().toSerialized();
+    protected Disposable handlerEvents;
+
+    public static TypingStateEngine shared () {
+        return instance;
+    }
+
+    /**
+     * TypingStateChanged events for every thread
+     */
+    public Observable<NetworkEvent> events () {
+        listen();
+        return events;
+    }
+
+    /**
+     * TypingStateChanged events for the thread
+     */
+    public Observable<NetworkEvent> events (final Thread thread) {
+        final String entityID = thread.getEntityID();
+        return events().filter(event -> entityID.equals(event.thread.getEntityID()));
+    }
+
+    /**
+     * Pass the typing events the handler publishes through the engine
+     */
+    protected synchronized void listen () {
+        if (handlerEvents == null && ChatSDK.events() != null) {
+            handlerEvents = ChatSDK.events().router().type(EventType.TypingStateChanged)
+                    .filter(event -> event.thread != null)
+                    .subscribe(event -> remoteTypingChanged(event.thread, event.text), ChatSDK::logError);
+        }
+    }
+
+    /**
+     * Called for each keystroke
+     */
+    public synchronized void composing (final Thread thread) {
+        String key = thread.getEntityID();
+        SentState state = sentState(key);
+
+        long now = System.currentTimeMillis();
+        if (state.state != TypingIndicatorHandler.State.composing || now - state.date >= ChatSDK.config().typingStateWriteInterval) {
+            send(thread, state, TypingIndicatorHandler.State.composing);
+        }
+
+        // Go back to active once the user stops typing
+        idleTimers.add(key, Completable.timer(ChatSDK.config().typingStateTimeout, TimeUnit.MILLISECONDS, RXSchedulers.computation())
+                .subscribe(() -> stopped(thread, false), ChatSDK::logError));
+    }
+
+    public synchronized void stopped (Thread thread, boolean inactive) {
+        setState(thread, inactive ? TypingIndicatorHandler.State.inactive : TypingIndicatorHandler.State.active);
+    }
+
+    /**
+     * Write the state if it's different from the last state written for the thread
+     */
+    public synchronized void setState (Thread thread, TypingIndicatorHandler.State state) {
+        String key = thread.getEntityID();
+        if (state != TypingIndicatorHandler.State.composing) {
+            idleTimers.dispose(key);
+        }
+        SentState sentState = sentState(key);
+        if (sentState.state != state) {
+            send(thread, sentState, state);
+        }
+    }
+
+    /**
+     * Called by the typing indicator handler when the other users' typing state changes
+     * @param text who is typing or null if nobody is
+     */
+    public void remoteTypingChanged (final Thread thread, String text) {
+        String key = thread.getEntityID();
+        boolean changed;
+
+        synchronized (this) {
+            String previous = text != null ? remote.put(key, text) : remote.remove(key);
+            changed = text != null ? !text.equals(previous) : previous != null;
+
+            if (text != null) {
+                expiryTimers.add(key, Completable.timer(ChatSDK.config().typingStateExpiry, TimeUnit.MILLISECONDS, RXSchedulers.computation())
+                        .subscribe(() -> remoteTypingChanged(thread, null), ChatSDK::logError));
+            }
+            else {
+                expiryTimers.dispose(key);
+            }
+        }
+
+        if (changed) {
+            events.onNext(NetworkEvent.typingStateChanged(text, thread));
+        }
+    }
+
+    public synchronized String typingText (Thread thread) {
+        return remote.get(thread.getEntityID());
+    }
+
+    /**
+     * Forget everything, for example when the user logs out
+     */
+    public synchronized void reset () {
+        idleTimers.dispose();
+        expiryTimers.dispose();
+        sent.clear();
+        remote.clear();
+    }
+
+    protected SentState sentState (String key) {
+        SentState state = sent.get(key);
+        if (state == null) {
+            state = new SentState();
+            sent.put(key, state);
+        }
+        return state;
+    }
+
+    protected void send (Thread thread, SentState sentState, TypingIndicatorHandler.State state) {
+        sentState.state = state;
+        sentState.date = System.currentTimeMillis();
+        if (ChatSDK.typingIndicator() != null) {
+            ChatSDK.typingIndicator().setChatState(state, thread).subscribe(new CrashReportingCompletableObserver());
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package co.chatsdk.core.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import co.chatsdk.core.session.ChatSDK;
+import co.chatsdk.core.types.UploadSession;
+
+/**
+ * Persists resumable upload sessions so the progress of an upload survives the
+ * process being killed. Sessions are removed when the upload completes.
+ */
+
+public class UploadSessionStore {
+
+    public static final String Preferences = "chat_sdk_upload_sessions";
+
+    protected static SharedPreferences preferences () {
+        return ChatSDK.shared().context().getSharedPreferences(Preferences, Context.MODE_PRIVATE);
+    }
+
+    public static UploadSession get (String key) {
+        if (key == null) {
+            return null;
+        }
+        return parse(preferences().getString(key, null));
+    }
+
+    public static void save (UploadSession session) {
+        try {
+            preferences().edit().putString(session.key, session.toJson()).apply();
+        } catch (JSONException e) {
+            ChatSDK.logError(e);
+        }
+    }
+
+    public static void remove (String key) {
+        if (key != null) {
+            preferences().edit().remove(key).apply();
+        }
+    }
+
+    /**
+     * Uploads that were started but haven't finished
+     */
+    public static List<UploadSession> all () {
+        List<UploadSession> sessions = new ArrayList<>();
+        for (Map.Entry<String, ?> entry : preferences().getAll().entrySet()) {
+            if (entry.getValue() instanceof String) {
+                UploadSession session = parse((String) entry.getValue());
+                if (session != null) {
+                    sessions.add(session);
+                }
+            }
+        }
+        return sessions;
+    }
+
+    protected static UploadSession parse (String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return UploadSession.fromJson(value);
+        } catch (JSONException e) {
+            ChatSDK.logError(e);
+            return null;
+        }
+    }
+
+}
@@ -16,6 +16,7 @@ import co.chatsdk.core.dao.User;
 import co.chatsdk.core.enums.AuthStatus;
 import co.chatsdk.core.events.NetworkEvent;
 import co.chatsdk.core.hook.HookEvent;
+import co.chatsdk.core.rx.RXSchedulers;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.types.AccountDetails;
 import co.chatsdk.core.types.AuthKeys;
@@ -25,7 +26,6 @@ import co.chatsdk.firebase.wrappers.UserWrapper;
 import io.reactivex.Completable;
 import io.reactivex.Single;
 import io.reactivex.SingleOnSubscribe;
-import io.reactivex.schedulers.Schedulers;
 
 import static co.chatsdk.firebase.FirebaseErrors.getFirebaseError;
 
@@ -54,7 +54,7 @@ public class FirebaseAuthenticationHandler extends AbstractAuthenticationHandler
                 })
                 .flatMapCompletable(this::authenticateWithUser)
                 .doOnTerminate(this::setAuthStateToIdle) // Whether we complete successfully or not, we set the status to idle
-                .subscribeOn(Schedulers.single());
+                .subscribeOn(RXSchedulers.network());
     }
 
     @Override
@@ -99,7 +99,7 @@ public class FirebaseAuthenticationHandler extends AbstractAuthenticationHandler
                 })
                 .flatMapCompletable(this::authenticateWithUser)
                 .doOnTerminate(this::setAuthStateToIdle)
-                .subscribeOn(Schedulers.single());
+                .subscribeOn(RXSchedulers.network());
     }
 
     public Completable authenticateWithUser(final FirebaseUser user) {
@@ -136,13 +136,14 @@ public class FirebaseAuthenticationHandler extends AbstractAuthenticationHandler
                         }
 
                         ChatSDK.core().setUserOnline().subscribe(new CrashReportingCompletableObserver());
+                        ChatSDK.thread().resumePendingUploads().subscribe(new CrashReportingCompletableObserver());
 
                         authenticatedThisSession = true;
 
                         userWrapper.push().subscribe(e::onComplete, e::onError);
                     }, e::onError);
                 })
-                .subscribeOn(Schedulers.single());
+                .subscribeOn(RXSchedulers.network());
     }
 
     public Boolean isAuthenticated() {
@@ -165,7 +166,7 @@ public class FirebaseAuthenticationHandler extends AbstractAuthenticationHandler
 
                     user.updatePassword(newPassword).addOnCompleteListener(resultHandler);
                 })
-                .subscribeOn(Schedulers.single());
+                .subscribeOn(RXSchedulers.network());
 
     }
 
@@ -206,7 +207,7 @@ public class FirebaseAuthenticationHandler extends AbstractAuthenticationHandler
                     }, emitter::onError);
 
                 })
-                .subscribeOn(Schedulers.single());
+                .subscribeOn(RXSchedulers.network());
     }
 
     public Completable sendPasswordResetMail(final String email) {
@@ -222,7 +223,7 @@ public class FirebaseAuthenticationHandler extends AbstractAuthenticationHandler
 
                     FirebaseAuth.getInstance().sendPasswordResetEmail(email).addOnCompleteListener(resultHandler);
 
-                }).subscribeOn(Schedulers.single());
+                }).subscribeOn(RXSchedulers.network());
     }
 
     // TODO: Allow users to turn anonymous login off or on in settings
@@ -19,6 +19,7 @@ import co.chatsdk.core.events.EventType;
 import co.chatsdk.core.events.NetworkEvent;
 import co.chatsdk.core.handlers.EventHandler;
 import co.chatsdk.core.hook.HookEvent;
+import co.chatsdk.core.rx.RXSchedulers;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.types.FileUploadResult;
 import co.chatsdk.core.utils.CrashReportingCompletableObserver;
@@ -30,7 +31,6 @@ import io.reactivex.Single;
 import io.reactivex.SingleOnSubscribe;
 import io.reactivex.annotations.NonNull;
 import io.reactivex.disposables.Disposable;
-import io.reactivex.schedulers.Schedulers;
 import timber.log.Timber;
 
 /**
@@ -51,7 +51,20 @@ public class FirebaseCoreHandler extends AbstractCoreHandler {
                 .subscribe(networkEvent -> disposableList.dispose());
     }
 
+    /**
+     * Push the current user's profile if it has changed since it was last pushed
+     */
     public Completable pushUser() {
+        return Completable.defer(() -> {
+            User user = ChatSDK.currentUser();
+            if (user == null || !new UserWrapper(user).hasUnpushedChanges()) {
+                return Completable.complete();
+            }
+            return pushUserProfile();
+        }).subscribeOn(RXSchedulers.network());
+    }
+
+    protected Completable pushUserProfile() {
         return Single.create((SingleOnSubscribe<User>) e -> {
             String url = ChatSDK.currentUser().getAvatarURL();
             if (url == null || url.isEmpty()) {
@@ -92,7 +105,7 @@ public class FirebaseCoreHandler extends AbstractCoreHandler {
                     e.onSuccess(ChatSDK.currentUser());
                 }
             }
-        }).flatMapCompletable(user -> new UserWrapper(user).push()).subscribeOn(Schedulers.single());
+        }).flatMapCompletable(user -> new UserWrapper(user).push()).subscribeOn(RXSchedulers.network());
     }
 
     public Completable setUserOnline() {
@@ -142,13 +155,16 @@ public class FirebaseCoreHandler extends AbstractCoreHandler {
         }));
     }
 
+    /**
+     * Only the last online time is written, the rest of the profile is pushed when it changes
+     */
     public Completable updateLastOnline() {
-        return Completable.create(e -> {
+        return Completable.defer(() -> {
             User currentUser = ChatSDK.currentUser();
             currentUser.setLastOnline(new Date());
             currentUser.update();
-            e.onComplete();
-        }).concatWith(pushUser()).subscribeOn(Schedulers.single());
+            return UserWrapper.initWithModel(currentUser).pushLastOnline();
+        }).subscribeOn(RXSchedulers.network());
     }
 
     public Completable userOn(final User user) {
@@ -5,10 +5,12 @@ import com.google.firebase.database.DatabaseReference;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 import co.chatsdk.core.base.AbstractEventHandler;
 import co.chatsdk.core.dao.DaoCore;
 import co.chatsdk.core.dao.Keys;
+import co.chatsdk.core.dao.Message;
 import co.chatsdk.core.dao.Thread;
 import co.chatsdk.core.dao.User;
 import co.chatsdk.core.events.NetworkEvent;
@@ -17,10 +19,12 @@ import co.chatsdk.core.hook.HookEvent;
 import co.chatsdk.core.interfaces.ThreadType;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.session.StorageManager;
+import co.chatsdk.core.session.UserProfileCache;
 import co.chatsdk.core.types.ConnectionType;
 import co.chatsdk.core.utils.CrashReportingCompletableObserver;
 import co.chatsdk.core.utils.CrashReportingObserver;
 import co.chatsdk.core.utils.DisposableList;
+import co.chatsdk.core.utils.TypingStateEngine;
 import co.chatsdk.firebase.wrappers.ThreadWrapper;
 import co.chatsdk.firebase.wrappers.UserWrapper;
 import io.reactivex.Completable;
@@ -33,9 +37,10 @@ import io.reactivex.subjects.PublishSubject;
  * Created by benjaminsmiley-andrews on 10/05/2017.
  */
 
-public class FirebaseEventHandler extends AbstractEventHandler {
+public class FirebaseEventHandler extends AbstractEventHandler implements ThreadListenerScheduler.Delegate {
 
     protected boolean isOn = false;
+    protected ThreadListenerScheduler threadListeners = new ThreadListenerScheduler(this);
 
     public void impl_currentUserOn(final String entityID){
 
@@ -72,12 +77,7 @@ public class FirebaseEventHandler extends AbstractEventHandler {
                 thread.getModel().addUser(user);
 
                 // Starting to listen to thread changes.
-                thread.on().doOnNext(thread14 -> eventSource.onNext(NetworkEvent.threadDetailsUpdated(thread14))).subscribe(new CrashReportingObserver<>(disposableList));
-                thread.lastMessageOn().doOnNext(thread13 -> eventSource.onNext(NetworkEvent.threadLastMessageUpdated(thread13))).subscribe(new CrashReportingObserver<>(disposableList));
-                thread.messagesOn().doOnNext(message -> eventSource.onNext(NetworkEvent.messageAdded(message.getThread(), message))).subscribe(new CrashReportingObserver<>(disposableList));
-                thread.messageRemovedOn().doOnNext(message -> eventSource.onNext(NetworkEvent.messageRemoved(message.getThread(), message))).subscribe(new CrashReportingObserver<>(disposableList));
-                thread.usersOn().doOnNext(user12 -> eventSource.onNext(NetworkEvent.threadUsersChanged(thread.getModel(), user12))).subscribe(new CrashReportingObserver<>(disposableList));
-                thread.metaOn().doOnNext(thread1 -> eventSource.onNext(NetworkEvent.threadMetaUpdated(thread.getModel()))).subscribe(new CrashReportingObserver<>(disposableList));
+                threadListeners.add(thread, false);
 
                 eventSource.onNext(NetworkEvent.threadAdded(thread.getModel()));
 
@@ -85,13 +85,62 @@ public class FirebaseEventHandler extends AbstractEventHandler {
         }).onChildRemoved((snapshot, hasValue) -> {
             if (hasValue) {
                 ThreadWrapper thread = new ThreadWrapper(snapshot.getKey());
-                thread.off();
+                threadListeners.remove(snapshot.getKey());
                 eventSource.onNext(NetworkEvent.threadRemoved(thread.getModel()));
             }
         }));
         FirebaseReferenceManager.shared().addRef(threadsRef, threadsListener);
     }
 
+    /**
+     * The full set of listeners for a thread that is open or recently active
+     */
+    public void threadListenersOn (ThreadWrapper thread, boolean isPublic, DisposableList disposables) {
+        thread.on().doOnNext(thread1 -> eventSource.onNext(NetworkEvent.threadDetailsUpdated(thread1))).subscribe(new CrashReportingObserver<>(disposables));
+        thread.messagesOn().doOnNext(messages -> eventSource.onNext(messagesAddedEvent(thread.getModel(), messages))).subscribe(new CrashReportingObserver<>(disposables));
+        thread.messageRemovedOn().doOnNext(message -> eventSource.onNext(NetworkEvent.messageRemoved(message.getThread(), message))).subscribe(new CrashReportingObserver<>(disposables));
+        thread.usersOn().doOnNext(user -> eventSource.onNext(NetworkEvent.threadUsersChanged(thread.getModel(), user))).subscribe(new CrashReportingObserver<>(disposables));
+        if (!isPublic) {
+            thread.metaOn().doOnNext(thread1 -> eventSource.onNext(NetworkEvent.threadMetaUpdated(thread.getModel()))).subscribe(new CrashReportingObserver<>(disposables));
+        }
+    }
+
+    public void threadListenersOff (ThreadWrapper thread) {
+        thread.detailsOff();
+        thread.messagesOff();
+        thread.messageRemovedOff();
+        thread.usersOff();
+        thread.metaOff();
+    }
+
+    public void threadLastMessageUpdated (Thread thread) {
+        eventSource.onNext(NetworkEvent.threadLastMessageUpdated(thread));
+    }
+
+    @Override
+    public void threadOpened (Thread thread) {
+        if (thread != null) {
+            threadListeners.opened(thread.getEntityID());
+        }
+    }
+
+    @Override
+    public void threadClosed (Thread thread) {
+        if (thread != null) {
+            threadListeners.closed(thread.getEntityID());
+        }
+    }
+
+    /**
+     * A single message keeps the existing message added event, larger batches are coalesced
+     */
+    protected NetworkEvent messagesAddedEvent (Thread thread, List<Message> messages) {
+        if (messages.size() == 1) {
+            return NetworkEvent.messageAdded(thread, messages.get(0));
+        }
+        return NetworkEvent.messagesAdded(thread, messages);
+    }
+
     protected void publicThreadsOn (User user) {
         String entityID = user.getEntityID();
         // Remove all users from public threads
@@ -108,16 +157,12 @@ public class FirebaseEventHandler extends AbstractEventHandler {
             final ThreadWrapper thread = new ThreadWrapper(snapshot.getKey());
 
             // Starting to listen to thread changes.
-            thread.on().doOnNext(thread12 -> eventSource.onNext(NetworkEvent.threadDetailsUpdated(thread12))).subscribe(new CrashReportingObserver<>(disposableList));
-            thread.lastMessageOn().doOnNext(thread15 -> eventSource.onNext(NetworkEvent.threadLastMessageUpdated(thread15))).subscribe(new CrashReportingObserver<>(disposableList));
-            thread.messagesOn().doOnNext(message -> eventSource.onNext(NetworkEvent.messageAdded(message.getThread(), message))).subscribe(new CrashReportingObserver<>(disposableList));
-            thread.messageRemovedOn().doOnNext(message -> eventSource.onNext(NetworkEvent.messageRemoved(message.getThread(), message))).subscribe(new CrashReportingObserver<>(disposableList));
-            thread.usersOn().doOnNext(user1 -> eventSource.onNext(NetworkEvent.threadUsersChanged(thread.getModel(), user1))).subscribe(new CrashReportingObserver<>(disposableList));
+            threadListeners.add(thread, true);
 
             eventSource.onNext(NetworkEvent.threadAdded(thread.getModel()));
         }).onChildRemoved((snapshot, hasValue) -> {
             ThreadWrapper thread = new ThreadWrapper(snapshot.getKey());
-            thread.off();
+            threadListeners.remove(snapshot.getKey());
             eventSource.onNext(NetworkEvent.threadRemoved(thread.getModel()));
         }));
         FirebaseReferenceManager.shared().addRef(publicThreadsRef, publicThreadsListener);
@@ -128,7 +173,7 @@ public class FirebaseEventHandler extends AbstractEventHandler {
 
         DatabaseReference ref = FirebasePaths.userContactsRef(ChatSDK.currentUserID());
 
-        ref.addChildEventListener(new FirebaseEventListener().onChildAdded((snapshot, s, hasValue) -> {
+        ChildEventListener addedListener = ref.addChildEventListener(new FirebaseEventListener().onChildAdded((snapshot, s, hasValue) -> {
             if (hasValue) {
                 User contact = ChatSDK.db().fetchOrCreateEntityWithEntityID(User.class, snapshot.getKey());
                 Object value = snapshot.getValue();
@@ -143,7 +188,9 @@ public class FirebaseEventHandler extends AbstractEventHandler {
             }
         }));
 
-        ref.addChildEventListener(new FirebaseEventListener().onChildRemoved((snapshot, hasValue) -> {
+        FirebaseReferenceManager.shared().addRef(ref, addedListener);
+
+        ChildEventListener removedListener = ref.addChildEventListener(new FirebaseEventListener().onChildRemoved((snapshot, hasValue) -> {
             if (hasValue) {
                 User contact = ChatSDK.db().fetchOrCreateEntityWithEntityID(User.class, snapshot.getKey());
                 Object value = snapshot.getValue();
@@ -157,6 +204,7 @@ public class FirebaseEventHandler extends AbstractEventHandler {
                 }
             }
         }));
+        FirebaseReferenceManager.shared().addRef(ref, removedListener);
 
     }
 
@@ -165,10 +213,17 @@ public class FirebaseEventHandler extends AbstractEventHandler {
 
         final User user = DaoCore.fetchEntityWithEntityID(User.class, entityID);
 
+        threadListeners.clear();
         threadsOff(user);
         publicThreadsOff(user);
         contactsOff(user);
 
+        // Anything else that is still listening, for example the other users' meta
+        FirebaseReferenceManager.shared().removeAllListeners();
+
+        TypingStateEngine.shared().reset();
+        UserProfileCache.shared().clear();
+
         if (ChatSDK.push() != null) {
             ChatSDK.push().unsubscribeToPushChannel(user.getPushChannel());
         }
@@ -180,10 +235,8 @@ public class FirebaseEventHandler extends AbstractEventHandler {
         String entityID = user.getEntityID();
         FirebaseReferenceManager.shared().removeListeners(FirebasePaths.userThreadsRef(entityID));
         for (Thread thread : ChatSDK.thread().getThreads(ThreadType.Private)) {
-            ThreadWrapper wrapper = new ThreadWrapper(thread);
-            wrapper.off();
-            wrapper.messagesOff();
-            wrapper.usersOff();
+            new ThreadWrapper(thread).off();
+            FirebaseReferenceManager.shared().removeListenersWithPrefix(FirebasePaths.threadRef(thread.getEntityID()));
         }
     }
 
@@ -191,15 +244,14 @@ public class FirebaseEventHandler extends AbstractEventHandler {
         String entityID = user.getEntityID();
         FirebaseReferenceManager.shared().removeListeners(FirebasePaths.publicThreadsRef());
         for (Thread thread : ChatSDK.thread().getThreads(ThreadType.Public)) {
-            ThreadWrapper wrapper = new ThreadWrapper(thread);
-            wrapper.off();
-            wrapper.messagesOff();
-            wrapper.usersOff();
+            new ThreadWrapper(thread).off();
+            FirebaseReferenceManager.shared().removeListenersWithPrefix(FirebasePaths.threadRef(thread.getEntityID()));
         }
     }
 
     protected void contactsOff (User user) {
         String entityID = user.getEntityID();
+        FirebaseReferenceManager.shared().removeListeners(FirebasePaths.userContactsRef(entityID));
         for (User contact : ChatSDK.contact().contacts()) {
             UserWrapper.initWithModel(contact).metaOff();
         }
@@ -11,13 +11,13 @@ import co.chatsdk.core.dao.Thread;
 import co.chatsdk.core.dao.User;
 import co.chatsdk.core.handlers.PublicThreadHandler;
 import co.chatsdk.core.interfaces.ThreadType;
+import co.chatsdk.core.rx.RXSchedulers;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.session.NM;
 import co.chatsdk.core.session.StorageManager;
 import co.chatsdk.firebase.wrappers.ThreadWrapper;
 import io.reactivex.Single;
 import io.reactivex.SingleOnSubscribe;
-import io.reactivex.schedulers.Schedulers;
 
 /**
  * Created by benjaminsmiley-andrews on 24/05/2017.
@@ -87,7 +87,7 @@ public class FirebasePublicThreadHandler extends AbstractPublicThreadHandler {
                 });
             });
 
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.network());
     }
 
 
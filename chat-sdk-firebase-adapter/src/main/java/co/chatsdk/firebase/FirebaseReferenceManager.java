@@ -4,16 +4,26 @@ import com.google.firebase.database.ChildEventListener;
 import com.google.firebase.database.Query;
 import com.google.firebase.database.ValueEventListener;
 
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  * Created by benjaminsmiley-andrews on 18/05/2017.
+ *
+ * Keeps track of the listeners added to the database so they can be removed. Listeners are
+ * indexed by path, a path can have any number of listeners and the listeners for a whole
+ * subtree, like a thread or a user, can be removed together.
+ *
+ * Listeners are added and removed from Firebase callbacks and from background threads so
+ * changes are synchronized. {@link #isOn(Query)} doesn't need to take the lock.
  */
 
 public class FirebaseReferenceManager {
 
-    private class Value {
+    private static class Value {
 
         private ChildEventListener cel;
         private ValueEventListener vel;
@@ -29,6 +39,10 @@ public class FirebaseReferenceManager {
             this.ref = ref;
         }
 
+        private boolean hasListener (Object listener) {
+            return listener == cel || listener == vel;
+        }
+
         private void removeListener () {
             if(cel != null) {
                 ref.removeEventListener(cel);
@@ -40,41 +54,165 @@ public class FirebaseReferenceManager {
 
     }
 
-    private static FirebaseReferenceManager instance;
-    private HashMap<String, Value> references = new HashMap<>();
+    private static final FirebaseReferenceManager instance = new FirebaseReferenceManager();
+
+    // Sorted so the paths in a subtree are next to each other
+    private final ConcurrentSkipListMap<String, List<Value>> references = new ConcurrentSkipListMap<>();
+
+    private int listenerCount = 0;
+    private long addedCount = 0;
+    private long removedCount = 0;
 
     public static FirebaseReferenceManager shared() {
-        if (instance == null) {
-            instance = new FirebaseReferenceManager();
-        }
         return instance;
     }
 
     public void addRef (Query ref, ChildEventListener l) {
-        references.put(ref.toString(), new Value(ref, l));
+        add(ref, new Value(ref, l));
     }
 
     public void addRef (Query ref, ValueEventListener l) {
-        references.put(ref.toString(), new Value(ref, l));
+        add(ref, new Value(ref, l));
+    }
+
+    private synchronized void add (Query ref, Value value) {
+        String path = path(ref);
+        List<Value> values = references.get(path);
+        if (values == null) {
+            values = new ArrayList<>();
+            references.put(path, values);
+        }
+        values.add(value);
+        listenerCount++;
+        addedCount++;
     }
 
+    /**
+     * @return true if there are any listeners at the path
+     */
     public boolean isOn (Query ref) {
-        return references.get(ref.toString()) != null;
+        return references.containsKey(path(ref));
     }
 
-    public void removeListeners (Query ref) {
-        if(isOn(ref)) {
-            Value v = references.get(ref.toString());
-            v.removeListener();
-            references.remove(ref.toString());
+    /**
+     * Remove every listener at the path. Listeners on queries at the same path are removed too
+     */
+    public synchronized void removeListeners (Query ref) {
+        List<Value> values = references.remove(path(ref));
+        if (values != null) {
+            remove(values);
         }
     }
 
-    public void removeAllListeners () {
-        Collection<Value> values = references.values();
-        for(Value v : values) {
+    /**
+     * Remove one listener, other listeners at the path are kept
+     */
+    public synchronized void removeListener (Query ref, Object listener) {
+        String path = path(ref);
+        List<Value> values = references.get(path);
+        if (values == null) {
+            return;
+        }
+        Iterator<Value> iterator = values.iterator();
+        while (iterator.hasNext()) {
+            Value value = iterator.next();
+            if (value.hasListener(listener)) {
+                iterator.remove();
+                value.removeListener();
+                listenerCount--;
+                removedCount++;
+            }
+        }
+        if (values.isEmpty()) {
+            references.remove(path);
+        }
+    }
+
+    /**
+     * Remove the listeners at the path and at every path below it
+     */
+    public void removeListenersWithPrefix (Query ref) {
+        removeListenersWithPrefix(path(ref));
+    }
+
+    public synchronized void removeListenersWithPrefix (String path) {
+        Iterator<Map.Entry<String, List<Value>>> iterator = subtree(path).entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, List<Value>> entry = iterator.next();
+            if (isInSubtree(entry.getKey(), path)) {
+                iterator.remove();
+                remove(entry.getValue());
+            }
+        }
+    }
+
+    public synchronized void removeAllListeners () {
+        for(List<Value> values : references.values()) {
+            remove(values);
+        }
+        references.clear();
+    }
+
+    private void remove (List<Value> values) {
+        for (Value v : values) {
             v.removeListener();
         }
+        listenerCount -= values.size();
+        removedCount += values.size();
+    }
+
+    /* Metrics */
+
+    public int pathCount () {
+        return references.size();
+    }
+
+    public synchronized int listenerCount () {
+        return listenerCount;
+    }
+
+    public synchronized int listenerCount (Query ref) {
+        return listenerCount(path(ref));
+    }
+
+    /**
+     * The number of listeners at the path and below it
+     */
+    public synchronized int listenerCount (String path) {
+        int count = 0;
+        for (Map.Entry<String, List<Value>> entry : subtree(path).entrySet()) {
+            if (isInSubtree(entry.getKey(), path)) {
+                count += entry.getValue().size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The total number of listeners added since the app started
+     */
+    public synchronized long addedCount () {
+        return addedCount;
+    }
+
+    public synchronized long removedCount () {
+        return removedCount;
+    }
+
+    /**
+     * The path is much cheaper to build than the reference's URL
+     */
+    private String path (Query ref) {
+        return ref.getPath().toString();
+    }
+
+    private Map<String, List<Value>> subtree (String path) {
+        // All the paths that start with the prefix, this can include siblings like /a/bc for /a/b
+        return references.subMap(path, true, path + Character.MAX_VALUE, true);
+    }
+
+    private boolean isInSubtree (String key, String path) {
+        return key.length() == path.length() || key.charAt(path.length()) == '/' || path.endsWith("/");
     }
 
-}
\ No newline at end of file
+}
@@ -10,13 +10,13 @@ import java.util.HashMap;
 import co.chatsdk.core.base.AbstractSearchHandler;
 import co.chatsdk.core.dao.Keys;
 import co.chatsdk.core.dao.User;
+import co.chatsdk.core.rx.RXSchedulers;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.types.ChatError;
 import co.chatsdk.firebase.wrappers.UserWrapper;
 import io.reactivex.Observable;
 import io.reactivex.ObservableOnSubscribe;
 import io.reactivex.disposables.Disposable;
-import io.reactivex.schedulers.Schedulers;
 
 /**
  * Created by benjaminsmiley-andrews on 24/05/2017.
@@ -93,7 +93,7 @@ public class FirebaseSearchHandler extends AbstractSearchHandler {
                     return false;
                 }
             });
-        }).subscribeOn(Schedulers.single());    }
+        }).subscribeOn(RXSchedulers.network());    }
 
     public static String processForQuery(String query){
         return StringUtils.isBlank(query) ? "" : query.replace(" ", "").toLowerCase();
@@ -14,6 +14,7 @@ import co.chatsdk.core.dao.Thread;
 import co.chatsdk.core.dao.User;
 import co.chatsdk.core.hook.HookEvent;
 import co.chatsdk.core.interfaces.ThreadType;
+import co.chatsdk.core.rx.RXSchedulers;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.session.StorageManager;
 import co.chatsdk.core.types.MessageSendProgress;
@@ -29,7 +30,6 @@ import io.reactivex.SingleOnSubscribe;
 import io.reactivex.SingleSource;
 import io.reactivex.functions.Consumer;
 import io.reactivex.functions.Function;
-import io.reactivex.schedulers.Schedulers;
 
 /**
  * Created by benjaminsmiley-andrews on 25/05/2017.
@@ -110,7 +110,7 @@ public class FirebaseThreadHandler extends AbstractThreadHandler {
                     e.onError(databaseError.toException());
                 }
             });
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.network());
     }
 
     public Completable removeUsersFromThread(final Thread thread, List<User> users) {
@@ -134,7 +134,7 @@ public class FirebaseThreadHandler extends AbstractThreadHandler {
     public Observable<MessageSendProgress> sendMessage(final Message message) {
         return Observable.create(e -> {
             new MessageWrapper(message).send()
-                .subscribeOn(Schedulers.single())
+                .subscribeOn(RXSchedulers.network())
                 .subscribe(() -> {
                     pushForMessage(message);
                     e.onNext(new MessageSendProgress(message));
@@ -245,7 +245,7 @@ public class FirebaseThreadHandler extends AbstractThreadHandler {
             } else {
                 e.onSuccess(thread);
             }
-        })).doOnSuccess(thread -> thread.addUsers(users)).subscribeOn(Schedulers.single());
+        })).doOnSuccess(thread -> thread.addUsers(users)).subscribeOn(RXSchedulers.db());
     }
 
     public Completable deleteThread(Thread thread) {
@@ -256,13 +256,12 @@ public class FirebaseThreadHandler extends AbstractThreadHandler {
         return Single.create((SingleOnSubscribe<Thread>) e -> {
             final Thread thread = DaoCore.fetchEntityWithEntityID(Thread.class, entityID);
             e.onSuccess(thread);
-        }).flatMapCompletable(thread -> new ThreadWrapper(thread).deleteThread()).subscribeOn(Schedulers.single());
+        }).flatMapCompletable(thread -> new ThreadWrapper(thread).deleteThread()).subscribeOn(RXSchedulers.db());
     }
 
     protected void pushForMessage(final Message message) {
         if (ChatSDK.push() != null && message.getThread().typeIs(ThreadType.Private)) {
-            HashMap<String, Object> data = ChatSDK.push().pushDataForMessage(message);
-            ChatSDK.push().sendPushNotification(data);
+            ChatSDK.push().pushForMessage(message);
         }
     }
 
@@ -0,0 +1,217 @@
+package co.chatsdk.firebase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import co.chatsdk.core.dao.Thread;
+import co.chatsdk.core.session.ChatSDK;
+import co.chatsdk.core.utils.DisposableList;
+import co.chatsdk.firebase.wrappers.ThreadWrapper;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.subjects.PublishSubject;
+
+/**
+ * Decides which threads get a full set of listeners. Every thread has a listener on its last
+ * message, which is cheap. The details, messages, users and meta listeners are only added to
+ * threads that are open or that are among the {@link co.chatsdk.core.session.Configuration#activeThreadListenerLimit}
+ * most recently active. When a thread's last message changes it moves up the ranking and the
+ * least recently active thread is demoted to make room for it.
+ */
+
+public class ThreadListenerScheduler {
+
+    // Activity arrives in bursts at login so the ranking is only updated once things settle
+    public static long RebalanceDelay = 250;
+
+    public interface Delegate {
+        /**
+         * Add the full set of listeners, the subscriptions should be added to the list
+         */
+        void threadListenersOn (ThreadWrapper thread, boolean isPublic, DisposableList disposables);
+
+        /**
+         * Remove the listeners added by threadListenersOn
+         */
+        void threadListenersOff (ThreadWrapper thread);
+
+        void threadLastMessageUpdated (Thread thread);
+    }
+
+    protected static class Entry {
+
+        protected final ThreadWrapper thread;
+        protected final boolean isPublic;
+        protected long activity;
+        protected boolean hot;
+        protected final DisposableList disposables = new DisposableList();
+        protected Disposable lastMessageDisposable;
+
+        protected Entry (ThreadWrapper thread, boolean isPublic) {
+            this.thread = thread;
+            this.isPublic = isPublic;
+        }
+    }
+
+    protected final Delegate delegate;
+    protected final Map<String, Entry> entries = new HashMap<>();
+    protected final Map<String, Integer> openCounts = new HashMap<>();
+    protected final PublishSubject<Object> rebalanceRequests = PublishSubject.create();
+
+    public ThreadListenerScheduler (Delegate delegate) {
+        this.delegate = delegate;
+        rebalanceRequests.debounce(RebalanceDelay, TimeUnit.MILLISECONDS).subscribe(o -> rebalance(), ChatSDK::logError);
+    }
+
+    /**
+     * Start listening to the thread. It starts cold and is promoted if it's active enough
+     */
+    public synchronized void add (ThreadWrapper thread, boolean isPublic) {
+        final String key = thread.getModel().getEntityID();
+        if (key == null || entries.containsKey(key)) {
+            return;
+        }
+
+        Entry entry = new Entry(thread, isPublic);
+        Date lastMessageDate = thread.getModel().getLastMessageAddedDate();
+        entry.activity = lastMessageDate != null ? lastMessageDate.getTime() : 0;
+        entries.put(key, entry);
+
+        entry.lastMessageDisposable = thread.lastMessageDateOn().subscribe(date -> lastMessageUpdated(key, date), ChatSDK::logError);
+
+        rebalanceRequests.onNext(key);
+    }
+
+    public synchronized void remove (String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            if (entry.lastMessageDisposable != null) {
+                entry.lastMessageDisposable.dispose();
+            }
+            entry.thread.lastMessageOff();
+            if (entry.hot) {
+                demote(entry);
+            }
+            // Anything else that is still listening to the thread
+            FirebaseReferenceManager.shared().removeListenersWithPrefix(FirebasePaths.threadRef(key));
+        }
+    }
+
+    public synchronized void clear () {
+        for (String key : new ArrayList<>(entries.keySet())) {
+            remove(key);
+        }
+        openCounts.clear();
+    }
+
+    /**
+     * Open threads are always fully listened to. Calls should be balanced by {@link #closed(String)}
+     */
+    public void opened (String key) {
+        synchronized (this) {
+            Integer count = openCounts.get(key);
+            openCounts.put(key, count != null ? count + 1 : 1);
+        }
+        // The thread's messages are wanted now
+        rebalance();
+    }
+
+    public void closed (String key) {
+        synchronized (this) {
+            Integer count = openCounts.get(key);
+            if (count != null && count > 1) {
+                openCounts.put(key, count - 1);
+            }
+            else {
+                openCounts.remove(key);
+            }
+        }
+        rebalanceRequests.onNext(key);
+    }
+
+    public synchronized boolean isHot (String key) {
+        Entry entry = entries.get(key);
+        return entry != null && entry.hot;
+    }
+
+    public synchronized int hotCount () {
+        int count = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.hot) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    protected void lastMessageUpdated (String key, long date) {
+        boolean moved = false;
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                return;
+            }
+            if (date > entry.activity) {
+                entry.activity = date;
+                moved = !entry.hot;
+            }
+        }
+        if (moved) {
+            rebalanceRequests.onNext(key);
+        }
+        delegate.threadLastMessageUpdated(entry.thread.getModel());
+    }
+
+    protected synchronized void rebalance () {
+        List<Entry> ranked = new ArrayList<>(entries.values());
+        Collections.sort(ranked, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry e1, Entry e2) {
+                boolean open1 = isOpen(e1);
+                boolean open2 = isOpen(e2);
+                if (open1 != open2) {
+                    return open1 ? -1 : 1;
+                }
+                return Long.compare(e2.activity, e1.activity);
+            }
+        });
+
+        int limit = ChatSDK.config().activeThreadListenerLimit;
+        int hot = 0;
+
+        for (Entry entry : ranked) {
+            boolean shouldBeHot = isOpen(entry) || hot < limit;
+            if (shouldBeHot) {
+                hot++;
+            }
+            if (shouldBeHot && !entry.hot) {
+                promote(entry);
+            }
+            else if (!shouldBeHot && entry.hot) {
+                demote(entry);
+            }
+        }
+    }
+
+    protected boolean isOpen (Entry entry) {
+        return openCounts.containsKey(entry.thread.getModel().getEntityID());
+    }
+
+    protected void promote (Entry entry) {
+        entry.hot = true;
+        delegate.threadListenersOn(entry.thread, entry.isPublic, entry.disposables);
+    }
+
+    protected void demote (Entry entry) {
+        entry.hot = false;
+        entry.disposables.dispose();
+        delegate.threadListenersOff(entry.thread);
+    }
+
+}
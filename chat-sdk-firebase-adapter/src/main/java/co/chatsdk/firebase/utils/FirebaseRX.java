@@ -4,11 +4,11 @@ import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
 
+import co.chatsdk.core.rx.RXSchedulers;
 import co.chatsdk.firebase.FirebasePaths;
 import io.reactivex.Completable;
 import io.reactivex.CompletableEmitter;
 import io.reactivex.CompletableOnSubscribe;
-import io.reactivex.schedulers.Schedulers;
 
 /**
  * Created by ben on 9/27/17.
@@ -24,7 +24,7 @@ public class FirebaseRX {
             else {
                 e.onComplete();
             }
-        })).subscribeOn(Schedulers.single());
+        })).subscribeOn(RXSchedulers.network());
     }
 
     public static Completable set (final DatabaseReference ref, final Object value) {
@@ -44,6 +44,6 @@ public class FirebaseRX {
             if(onDisconnectRemoveValue) {
                 ref.onDisconnect().removeValue();
             }
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.network());
     }
 }
@@ -15,12 +15,16 @@ import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import co.chatsdk.core.dao.DaoCore;
 import co.chatsdk.core.dao.Keys;
 import co.chatsdk.core.dao.Message;
+import co.chatsdk.core.dao.Thread;
 import co.chatsdk.core.dao.User;
+import co.chatsdk.core.dao.UserThreadLink;
+import co.chatsdk.core.rx.RXSchedulers;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.session.StorageManager;
 import co.chatsdk.core.types.MessageSendStatus;
@@ -29,12 +33,14 @@ import co.chatsdk.firebase.FirebaseEntity;
 import co.chatsdk.firebase.FirebasePaths;
 import co.chatsdk.firebase.R;
 import io.reactivex.Completable;
-import io.reactivex.schedulers.Schedulers;
 
 public class MessageWrapper  {
 
     private Message model;
 
+    // Receipts that arrived before the message was added to its thread
+    private HashMap<String, Object> pendingReadReceipts;
+
     public MessageWrapper(Message model){
         this.model = model;
     }
@@ -156,30 +162,69 @@ public class MessageWrapper  {
         model.update();
     }
 
+    /**
+     * Apply the receipts that were deserialized before the message had a thread. Call this
+     * once the message has been added to its thread
+     */
+    public void updateReadReceipts () {
+        if (pendingReadReceipts != null) {
+            HashMap<String, Object> map = pendingReadReceipts;
+            pendingReadReceipts = null;
+            updateReadReceipts(map);
+        }
+    }
+
     public void updateReadReceipts (HashMap<String, Object> map) {
-        for(String key : map.keySet()) {
+        String currentUserID = ChatSDK.currentUserID();
+
+        // The current user's own flag doesn't depend on the thread
+        if (currentUserID != null && readStatus(map.get(currentUserID)) >= ReadStatus.Read) {
+            model.setRead(true);
+        }
+
+        Thread thread = model.getThread();
+        if (thread == null || model.getDate() == null) {
+            pendingReadReceipts = map;
+            return;
+        }
 
-            User user = ChatSDK.db().fetchOrCreateEntityWithEntityID(User.class, key);
+        // Receipts are stored as each member's watermark for the thread so index the members
+        // once instead of fetching every user in the receipt map
+        List<UserThreadLink> links = thread.getUserThreadLinks();
+        Map<String, UserThreadLink> linksByUser = new HashMap<>();
+        for (UserThreadLink link : links) {
+            User user = link.getUser();
+            if (user != null) {
+                linksByUser.put(user.getEntityID(), link);
+            }
+        }
+
+        for(String key : map.keySet()) {
 
             Object innerMap = map.get(key);
 
             if(innerMap != null && innerMap instanceof HashMap) {
 
-                Map<String, Object> statusMap = (Map) innerMap;
-                long status = ReadStatus.None;
-                long date = 0;
+                long status = readStatus(innerMap);
 
-                if(statusMap.get(Keys.Status) instanceof Long) {
-                    status = (Long) statusMap.get(Keys.Status);
-                }
-                if(statusMap.get(Keys.Date) instanceof Long) {
-                    date = (Long) statusMap.get(Keys.Date);
+                UserThreadLink link = linksByUser.get(key);
+                Long previousWatermark = link != null ? link.lowestWatermark() : null;
+                if (link != null && link.advanceReadStatus(new ReadStatus((int) status), model.getDate())) {
+                    link.update();
+                    // The watermark also covers the earlier messages in the thread
+                    DaoCore.updateReadStatusSummaries(thread.getId(), previousWatermark, link.highestWatermark());
                 }
-
-                model.setUserReadStatus(user, new ReadStatus((int) status), new DateTime(date));
             }
         }
 
+        model.updateReadStatusSummary(links);
+    }
+
+    protected static long readStatus (Object statusMap) {
+        if (statusMap instanceof Map && ((Map) statusMap).get(Keys.Status) instanceof Long) {
+            return (Long) ((Map) statusMap).get(Keys.Status);
+        }
+        return ReadStatus.None;
     }
 
     public Completable push() {
@@ -213,7 +258,7 @@ public class MessageWrapper  {
             else {
                 e.onError(new Throwable(ChatSDK.shared().context().getString(R.string.message_doesnt_have_a_thread)));
             }
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.network());
 
     }
 
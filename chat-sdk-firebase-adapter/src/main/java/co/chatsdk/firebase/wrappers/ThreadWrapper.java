@@ -8,6 +8,7 @@
 package co.chatsdk.firebase.wrappers;
 
 import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.Query;
 import com.google.firebase.database.ServerValue;
@@ -18,15 +19,18 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import co.chatsdk.core.dao.DaoCore;
 import co.chatsdk.core.dao.Keys;
 import co.chatsdk.core.dao.Message;
 import co.chatsdk.core.dao.Thread;
 import co.chatsdk.core.dao.ThreadMetaValue;
+import co.chatsdk.core.dao.UnitOfWork;
 import co.chatsdk.core.dao.User;
 import co.chatsdk.core.hook.HookEvent;
 import co.chatsdk.core.interfaces.ThreadType;
+import co.chatsdk.core.rx.RXSchedulers;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.session.StorageManager;
 import co.chatsdk.core.types.MessageSendStatus;
@@ -41,6 +45,7 @@ import io.reactivex.ObservableOnSubscribe;
 import io.reactivex.Single;
 import io.reactivex.SingleOnSubscribe;
 import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.PublishSubject;
 
 public class ThreadWrapper  {
 
@@ -86,11 +91,22 @@ public class ThreadWrapper  {
             if(ChatSDK.typingIndicator() != null) {
                 ChatSDK.typingIndicator().typingOn(model);
             }
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.network());
     }
 
     public Observable<Thread> lastMessageOn () {
-        return Observable.create((ObservableOnSubscribe<Thread>) e -> {
+        // We just update the thread. The last message will already have been
+        // set by the message listener
+        return lastMessageDateOn().map(date -> model);
+    }
+
+    /**
+     * Start listening to the thread's last message. This is much cheaper than listening
+     * to the messages so it can be used to watch threads that aren't active
+     * @return the date of the last message in millis, or zero if it doesn't have one
+     */
+    public Observable<Long> lastMessageDateOn () {
+        return Observable.create((ObservableOnSubscribe<Long>) e -> {
 
             DatabaseReference ref = FirebasePaths.threadLastMessageRef(model.getEntityID());
 
@@ -100,16 +116,19 @@ public class ThreadWrapper  {
             }
 
             ValueEventListener listener = ref.addValueEventListener(new FirebaseEventListener().onValue((snapshot, hasValue) -> {
-                // We just update the thread. The last message will already have been
-                // set by the message listener
                 if (hasValue) {
-                    e.onNext(model);
+                    Object date = snapshot.child(Keys.Date).getValue();
+                    e.onNext(date instanceof Long ? (Long) date : 0L);
                 }
             }));
 
             FirebaseReferenceManager.shared().addRef(ref, listener);
 
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.network());
+    }
+
+    public void lastMessageOff () {
+        FirebaseReferenceManager.shared().removeListeners(FirebasePaths.threadLastMessageRef(model.getEntityID()));
     }
 
     // When we remove the listener it seems to remove the general message listener too
@@ -177,16 +196,23 @@ public class ThreadWrapper  {
                 e.onComplete();
             }));
 
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.network());
     }
 
     /**
      * Stop listening to thread details change
      **/
     public void off() {
-        FirebaseReferenceManager.shared().removeListeners(FirebasePaths.threadDetailsRef(model.getEntityID()));
-        FirebaseReferenceManager.shared().removeListeners(FirebasePaths.threadLastMessageRef(model.getEntityID()));
+        detailsOff();
+        lastMessageOff();
         metaOff();
+    }
+
+    /**
+     * Stop listening to thread details change but keep listening to the last message
+     **/
+    public void detailsOff() {
+        FirebaseReferenceManager.shared().removeListeners(FirebasePaths.threadDetailsRef(model.getEntityID()));
         if(ChatSDK.typingIndicator() != null) {
             ChatSDK.typingIndicator().typingOff(model);
         }
@@ -195,11 +221,7 @@ public class ThreadWrapper  {
     public Observable<Message> messageRemovedOn() {
         return Observable.create(e -> {
 
-            Query query = FirebasePaths.threadMessagesRef(model.getEntityID());
-
-            query = query.orderByChild(Keys.Date);
-            query = query.limitToLast(ChatSDK.config().messageDeletionListenerLimit);
-
+            Query query = messageRemovedQuery();
 
             ChildEventListener removedListener = query.addChildEventListener(new FirebaseEventListener().onChildRemoved((snapshot, hasValue) -> {
                 if(hasValue) {
@@ -213,11 +235,23 @@ public class ThreadWrapper  {
         });
     }
 
+    protected Query messageRemovedQuery () {
+        return FirebasePaths.threadMessagesRef(model.getEntityID())
+                .orderByChild(Keys.Date)
+                .limitToLast(ChatSDK.config().messageDeletionListenerLimit);
+    }
+
+    public void messageRemovedOff() {
+        FirebaseReferenceManager.shared().removeListeners(messageRemovedQuery());
+    }
+
     /**
-     * Start listening to incoming messages.
+     * Start listening to incoming messages. Messages are buffered for
+     * {@link co.chatsdk.core.session.Configuration#messageIngestionBatchWindow} and written
+     * to the database in a single transaction. Each batch of new messages is emitted together
      **/
-    public Observable<Message> messagesOn() {
-        return Observable.create((ObservableOnSubscribe<Message>) e -> {
+    public Observable<List<Message>> messagesOn() {
+        return Observable.create((ObservableOnSubscribe<List<Message>>) e -> {
 
             updateReadReceipts();
 
@@ -228,21 +262,47 @@ public class ThreadWrapper  {
 //                return;
 //            }
 
-            // Add the delete listener
+            final PublishSubject<DataSnapshot> snapshots = PublishSubject.create();
+
+            e.setDisposable(snapshots
+                    .buffer(ChatSDK.config().messageIngestionBatchWindow, TimeUnit.MILLISECONDS, ChatSDK.config().messageHistoryDownloadLimit)
+                    .filter(batch -> !batch.isEmpty())
+                    .observeOn(RXSchedulers.db())
+                    .subscribe(batch -> {
+                        List<Message> newMessages = new ArrayList<>();
+                        for (Message message : ingestMessages(batch, newMessages)) {
+                            if(ChatSDK.hook() != null) {
+                                HashMap<String, Object> data = new HashMap<>();
+                                data.put(HookEvent.Message, message);
+                                data.put(HookEvent.IsNew_Boolean, newMessages.contains(message));
+                                ChatSDK.hook().executeHook(HookEvent.MessageReceived, data).subscribe(new CrashReportingCompletableObserver());
+                            }
+                        }
 
+                        // If we remove this, then the thread will update twice for each message.
+                        // That can fix a bug if the user's system time is wrong
+                        if (!newMessages.isEmpty()) {
+                            e.onNext(newMessages);
+                        }
+                        updateReadReceipts();
+                    }, e::onError));
 
             threadDeletedDate()
-                    .subscribeOn(Schedulers.single())
+                    .subscribeOn(RXSchedulers.network())
                     .subscribe(deletedTimestamp -> {
 
-                        Query query = ref;
+                        // The listeners may have been turned off while we were waiting
+                        if (e.isDisposed()) {
+                            return;
+                        }
 
-                        final List<Message> messages = model.getMessagesWithOrder(DaoCore.ORDER_DESC);
+                        Query query = ref;
 
                         Long startTimestamp = null;
 
-                        if(messages.size() > 0) {
-                            startTimestamp = messages.get(0).getDate().toDate().getTime() + 1;
+                        Date lastMessageDate = model.getLastMessageDate();
+                        if(lastMessageDate != null) {
+                            startTimestamp = lastMessageDate.getTime() + 1;
                         }
 
                         if(deletedTimestamp > 0) {
@@ -256,56 +316,65 @@ public class ThreadWrapper  {
                         query = query.orderByChild(Keys.Date).limitToLast(ChatSDK.config().messageHistoryDownloadLimit);
 
                         ChildEventListener listener = query.addChildEventListener(new FirebaseEventListener().onChildAdded((snapshot, s, hasValue) -> {
-                            if (hasValue) {
-
-                                Object value = snapshot.getValue();
-                                if (value instanceof HashMap) {
-                                    HashMap<String, Object> hashValue = (HashMap) snapshot.getValue();
-                                    Object userIDObject = hashValue.get(Keys.UserFirebaseId);
-                                    if (userIDObject instanceof String) {
-                                        String userID = (String) userIDObject;
-                                        if (ChatSDK.blocking() != null && ChatSDK.blocking().isBlocked(userID)) {
-                                            return;
-                                        }
-                                    }
-                                }
-
-                                model.setDeleted(false);
-
-                                MessageWrapper message = new MessageWrapper(snapshot);
-
-                                boolean newMessage = message.getModel().getMessageStatus() == MessageSendStatus.None;
-
-                                message.getModel().setMessageStatus(MessageSendStatus.Delivered);
-
-                                model.addMessage(message.getModel());
-                                model.setLastMessage(message.getModel());
-
-                                // Update the message and thread
-                                message.getModel().update();
-                                model.update();
-
-                                if(ChatSDK.hook() != null) {
-                                    HashMap<String, Object> data = new HashMap<>();
-                                    data.put(HookEvent.Message, message.getModel());
-                                    data.put(HookEvent.IsNew_Boolean, newMessage);
-                                    ChatSDK.hook().executeHook(HookEvent.MessageReceived, data).subscribe(new CrashReportingCompletableObserver());;
-                                }
-
-                                // If we remove this, then the thread will update twice for each message.
-                                // That can fix a bug if the user's system time is wrong
-                                if (newMessage) {
-                                    e.onNext(message.getModel());
-                                }
-                                updateReadReceipts();
+                            if (hasValue && !isBlocked(snapshot)) {
+                                snapshots.onNext(snapshot);
                             }
                         }));
                         FirebaseReferenceManager.shared().addRef(ref, listener);
                     });
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.network());
 
     }
 
+    /**
+     * Write a batch of message snapshots, their meta values and read receipts to the
+     * database in one transaction
+     * @param snapshots the message snapshots
+     * @param newMessages messages which hadn't been seen before are added to this list
+     * @return all the messages in the batch
+     */
+    protected List<Message> ingestMessages(final List<DataSnapshot> snapshots, final List<Message> newMessages) {
+        final List<Message> messages = new ArrayList<>();
+
+        // Updates to the same message or thread are collapsed and written once at the end
+        UnitOfWork.runInTx(() -> {
+            model.setDeleted(false);
+
+            for (DataSnapshot snapshot : snapshots) {
+                MessageWrapper message = new MessageWrapper(snapshot);
+
+                if (message.getModel().getMessageStatus() == MessageSendStatus.None) {
+                    newMessages.add(message.getModel());
+                }
+
+                message.getModel().setMessageStatus(MessageSendStatus.Delivered);
+
+                // Also moves the thread's last message forward if this one is newer
+                model.addMessage(message.getModel());
+
+                // The receipts need the thread's members so they can only be applied now
+                message.updateReadReceipts();
+
+                message.getModel().update();
+                messages.add(message.getModel());
+            }
+
+            model.update();
+        });
+
+        return messages;
+    }
+
+    protected boolean isBlocked(DataSnapshot snapshot) {
+        Object value = snapshot.getValue();
+        if (value instanceof HashMap && ChatSDK.blocking() != null) {
+            Object userIDObject = ((HashMap) value).get(Keys.UserFirebaseId);
+            if (userIDObject instanceof String) {
+                return ChatSDK.blocking().isBlocked((String) userIDObject);
+            }
+        }
+        return false;
+    }
 
     /**
      * Stop listening to incoming messages.
@@ -330,7 +399,7 @@ public class ThreadWrapper  {
                 }
                 e.onNext(model);
             })));
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.network());
     }
 
     public Completable pushMeta() {
@@ -358,7 +427,7 @@ public class ThreadWrapper  {
                 e.onComplete();
             }
 
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.network());
     }
 
     public void metaOff () {
@@ -395,7 +464,7 @@ public class ThreadWrapper  {
             }));
 
             FirebaseReferenceManager.shared().addRef(ref, listener);
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.network());
     }
 
     /**
@@ -429,7 +498,7 @@ public class ThreadWrapper  {
                 }
             }));
 
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.network());
     }
 
     //Note - Maybe should treat group thread and one on one thread the same
@@ -445,12 +514,13 @@ public class ThreadWrapper  {
                 e.onComplete();
             }
             else {
-                List<Message> messages = model.getMessages();
-
-                for (Message m : messages) {
-                    DaoCore.deleteEntity(m);
-                }
+                // Delete the history in SQL rather than loading every message first
+                ChatSDK.db().deleteMessagesForThread(model.getId());
+                model.resetMessages();
 
+                model.setLastMessage(null);
+                model.setLastMessageDate(null);
+                model.setUnreadMessageCount(0);
                 model.update();
 
                 final User currentUser = ChatSDK.currentUser();
@@ -481,16 +551,14 @@ public class ThreadWrapper  {
                     ChatSDK.thread().removeUsersFromThread(model, currentUser).subscribe(e::onComplete, e::onError);
                 }
             }
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.db());
     }
 
     public Single<List<Message>> loadMoreMessages(final Message fromMessage, final Integer numberOfMessages){
         return Single.create((SingleOnSubscribe<List<Message>>) e -> {
 
-            Date messageDate = fromMessage != null ? fromMessage.getDate().toDate() : new Date();
-
             // First try to load the messages from the database
-            List<Message> list = ChatSDK.db().fetchMessagesForThreadWithID(model.getId(), numberOfMessages + 1, messageDate);
+            List<Message> list = ChatSDK.db().fetchMessagesBefore(model.getId(), fromMessage, numberOfMessages + 1);
 
             if(!list.isEmpty()) {
                 e.onSuccess(list);
@@ -506,28 +574,19 @@ public class ThreadWrapper  {
 
                 query.addListenerForSingleValueEvent(new FirebaseEventListener().onValue((snapshot, hasValue) -> {
                     if(hasValue) {
-                        List<Message> messages = new ArrayList<Message>();
-
-                        MessageWrapper message;
-                        for (String key : ((Map<String, Object>) snapshot.getValue()).keySet())
-                        {
-                            message = new MessageWrapper(snapshot.child(key));
-                            model.addMessage(message.getModel());
-
-                            message.getModel().setMessageStatus(MessageSendStatus.Delivered);
-                            messages.add(message.getModel());
-
-                            message.getModel().update();
-                            model.update();
+                        List<DataSnapshot> children = new ArrayList<>();
+                        for (DataSnapshot child : snapshot.getChildren()) {
+                            children.add(child);
                         }
-                        e.onSuccess(messages);
+                        // The whole page is written in one transaction
+                        e.onSuccess(ingestMessages(children, new ArrayList<>()));
                     }
                     else {
                         e.onSuccess(new ArrayList<>());
                     }
                 }));
             }
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.db());
     }
 
     /**
@@ -571,7 +630,7 @@ public class ThreadWrapper  {
                     e.onError(databaseError.toException());
                 }
             });
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.network());
     }
 
     /**
@@ -655,7 +714,7 @@ public class ThreadWrapper  {
                     e.onError(databaseError.toException());
                 }
             });
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.network());
     }
 
     public Completable pushLastMessage (final HashMap<String, Object> messageData) {
@@ -666,7 +725,7 @@ public class ThreadWrapper  {
             else {
                 e.onError(databaseError.toException());
             }
-        })).subscribeOn(Schedulers.single());
+        })).subscribeOn(RXSchedulers.network());
     }
 
     private void updateReadReceipts() {
@@ -7,6 +7,7 @@
 
 package co.chatsdk.firebase.wrappers;
 
+import android.content.SharedPreferences;
 import android.net.Uri;
 
 import com.google.firebase.auth.FirebaseAuth;
@@ -22,13 +23,17 @@ import org.apache.commons.lang3.StringUtils;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
-import co.chatsdk.core.dao.DaoCore;
 import co.chatsdk.core.dao.Keys;
+import co.chatsdk.core.dao.UnitOfWork;
 import co.chatsdk.core.dao.User;
 import co.chatsdk.core.defines.Availability;
+import co.chatsdk.core.rx.RXSchedulers;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.session.StorageManager;
+import co.chatsdk.core.session.UserProfileCache;
+import co.chatsdk.core.types.UserProfile;
 import co.chatsdk.core.utils.CrashReportingCompletableObserver;
 import co.chatsdk.core.utils.StringChecker;
 import co.chatsdk.core.utils.HashMapHelper;
@@ -40,12 +45,16 @@ import co.chatsdk.firebase.utils.FirebaseRX;
 import io.reactivex.Completable;
 import io.reactivex.Observable;
 import io.reactivex.ObservableOnSubscribe;
-import io.reactivex.schedulers.Schedulers;
 import timber.log.Timber;
 
 
 public class UserWrapper {
 
+    // What the server is known to have, from the last push from this device or the last time the
+    // user's meta was read from the server, so unchanged profiles and indexes aren't written again
+    protected static final String PushedProfileKeyPrefix = "pushed-profile-";
+    protected static final String PushedIndexKeyPrefix = "pushed-index-";
+
     private User model;
 
     public static UserWrapper initWithAuthData(FirebaseUser authData){
@@ -175,7 +184,7 @@ public class UserWrapper {
                 e.onComplete();
             }));
 
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.network());
     }
 
     public Observable<User> metaOn() {
@@ -202,7 +211,7 @@ public class UserWrapper {
 
 
 
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.network());
     }
 
 
@@ -228,24 +237,46 @@ public class UserWrapper {
 
     void deserializeMeta(Map<String, Object> value){
         if (value != null) {
-            Map<String, String> oldData = model.metaMap();
+            UserProfile oldData = model.profile();
 
             // Expand
             Map<String, Object> newData = HashMapHelper.flatten(value);
 
-            // Updating the old bundle
+            // Only the values that have changed are written
+            final Map<String, String> changed = new HashMap<>();
             for (String key : newData.keySet()) {
-                if (oldData.get(key) == null || !oldData.get(key).equals(newData.get(key))) {
-                    // We don't store availability data in the Firebase meta - it's handled by the online flag
-                    if (!key.equals(Keys.Availability)) {
-                        oldData.put(key, newData.get(key).toString());
-                    }
+                // We don't store availability data in the Firebase meta - it's handled by the online flag
+                if (newData.get(key) == null || key.equals(Keys.Availability)) {
+                    continue;
+                }
+                String newValue = newData.get(key).toString();
+                if (!newValue.equals(oldData.get(key))) {
+                    changed.put(key, newValue);
                 }
             }
 
-            model.setMetaMap(oldData);
+            if (!changed.isEmpty()) {
+                // Each meta value is written once rather than also updating the user per key
+                UnitOfWork.runInTx(() -> {
+                    model.setMetaMap(changed);
+                    model.update();
+                });
+                UserProfileCache.shared().update(model);
+            }
 
-            model = DaoCore.updateEntity(model);
+            // Another device may have changed the profile since this one last pushed it
+            if (model.isMe()) {
+                Map<String, String> serverMeta = new HashMap<>();
+                for (String key : newData.keySet()) {
+                    if (newData.get(key) != null && !key.equals(Keys.Availability)) {
+                        serverMeta.put(key, newData.get(key).toString());
+                    }
+                }
+                preferences().edit()
+                        .putString(PushedProfileKeyPrefix + model.getEntityID(), fingerprint(serverMeta))
+                        .putString(PushedIndexKeyPrefix + model.getEntityID(), fingerprint(indexValues(serverMeta.get(Keys.Name), serverMeta.get(Keys.Email), serverMeta.get(Keys.Phone))))
+                        .apply();
+            }
         }
     }
 
@@ -264,7 +295,7 @@ public class UserWrapper {
                 e.onNext(available);
             }));
             FirebaseReferenceManager.shared().addRef(ref, listener);
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.network());
     }
 
     public void onlineOff () {
@@ -273,12 +304,11 @@ public class UserWrapper {
     }
 
     Map<String, Object> serialize() {
-        Map<String, Object> values = new HashMap<>();
+        return serialize(metaForPush());
+    }
 
-        // Don't push availability to Firebase
-        HashMap<String, String> metaMap = new HashMap<>(model.metaMap());
-        metaMap.remove(Keys.Availability);
-        metaMap.put(Keys.NameLowercase, model.getName() != null ? model.getName().toLowerCase() : "");
+    Map<String, Object> serialize(Map<String, String> metaMap) {
+        Map<String, Object> values = new HashMap<>();
 
         // Expand
         Map<String, Object> expandedMetaMap = HashMapHelper.expand(metaMap);
@@ -288,7 +318,29 @@ public class UserWrapper {
 
         return values;
     }
-    
+
+    protected Map<String, String> metaForPush () {
+        // Don't push availability to Firebase
+        HashMap<String, String> metaMap = new HashMap<>(model.metaMap());
+        metaMap.remove(Keys.Availability);
+        metaMap.put(Keys.NameLowercase, model.getName() != null ? model.getName().toLowerCase() : "");
+        return metaMap;
+    }
+
+    /**
+     * @return true if the meta is different from what the server was last known to have
+     */
+    public boolean hasUnpushedChanges () {
+        return !fingerprint(metaForPush()).equals(preferences().getString(PushedProfileKeyPrefix + model.getEntityID(), null));
+    }
+
+    /**
+     * Update the last online time without pushing the rest of the user
+     */
+    public Completable pushLastOnline () {
+        return FirebaseRX.set(ref().child(Keys.LastOnline), ServerValue.TIMESTAMP);
+    }
+
     public Completable push() {
         return Completable.create(e -> {
 
@@ -296,8 +348,11 @@ public class UserWrapper {
 
             updateFirebaseUser().subscribe(new CrashReportingCompletableObserver());
 
-            ref.updateChildren(serialize(), (firebaseError, firebase) -> {
+            final Map<String, String> meta = metaForPush();
+
+            ref.updateChildren(serialize(meta), (firebaseError, firebase) -> {
                 if (firebaseError == null) {
+                    preferences().edit().putString(PushedProfileKeyPrefix + model.getEntityID(), fingerprint(meta)).apply();
                     // index should be updated whenever the user is pushed
                     FirebaseEntity.pushUserMetaUpdated(model.getEntityID()).subscribe(new CrashReportingCompletableObserver());
                     e.onComplete();
@@ -306,7 +361,7 @@ public class UserWrapper {
                     e.onError(firebaseError.toException());
                 }
             });
-        }).subscribeOn(Schedulers.single()).andThen(updateIndex());
+        }).subscribeOn(RXSchedulers.network()).andThen(updateIndex());
     }
 
     public Completable updateFirebaseUser () {
@@ -324,7 +379,7 @@ public class UserWrapper {
             final UserProfileChangeRequest changeRequest = builder.build();
 
             user.updateProfile(changeRequest).addOnCompleteListener(task -> e.onComplete());
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.network());
     }
     
     public DatabaseReference ref(){
@@ -334,27 +389,45 @@ public class UserWrapper {
     public Completable updateIndex() {
         return Completable.create(e -> {
 
-            final Map<String, String> values = new HashMap<String, String>();
-
-            String name = model.getName();
-            String email = model.getEmail();
-            String phoneNumber = model.metaStringForKey(Keys.Phone);
+            final Map<String, String> values = indexValues(model.getName(), model.getEmail(), model.metaStringForKey(Keys.Phone));
 
-            values.put(Keys.Name, StringUtils.isNotEmpty(name) ? processForQuery(name) : "");
-            values.put(Keys.Email, StringUtils.isNotEmpty(email) ? processForQuery(email) : "");
-            values.put(Keys.Phone, StringUtils.isNotEmpty(phoneNumber) ? processForQuery(phoneNumber) : "");
+            // The index only needs to be written if one of the values has changed
+            final String key = PushedIndexKeyPrefix + model.getEntityID();
+            final String fingerprint = fingerprint(values);
+            if (fingerprint.equals(preferences().getString(key, null))) {
+                e.onComplete();
+                return;
+            }
 
             final DatabaseReference ref = FirebasePaths.indexRef().child(model.getEntityID());
 
 
             ref.setValue(values, (firebaseError, firebase) -> {
                 if (firebaseError == null) {
+                    preferences().edit().putString(key, fingerprint).apply();
                     e.onComplete();
                 } else {
                     e.onError(firebaseError.toException());
                 }
             });
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.network());
+    }
+
+    protected static Map<String, String> indexValues (String name, String email, String phoneNumber) {
+        Map<String, String> values = new HashMap<>();
+        values.put(Keys.Name, StringUtils.isNotEmpty(name) ? processForQuery(name) : "");
+        values.put(Keys.Email, StringUtils.isNotEmpty(email) ? processForQuery(email) : "");
+        values.put(Keys.Phone, StringUtils.isNotEmpty(phoneNumber) ? processForQuery(phoneNumber) : "");
+        return values;
+    }
+
+    protected static String fingerprint (Map<String, String> values) {
+        // Sorted so the same values always give the same string
+        return new TreeMap<>(values).toString();
+    }
+
+    protected static SharedPreferences preferences () {
+        return ChatSDK.shared().getPreferences();
     }
     
     /**
@@ -4,36 +4,37 @@ import android.net.Uri;
 
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.StorageMetadata;
+import com.google.firebase.storage.StorageException;
 import com.google.firebase.storage.StorageReference;
 import com.google.firebase.storage.UploadTask;
 
+import java.io.InputStream;
+
 import co.chatsdk.core.base.AbstractUploadHandler;
+import co.chatsdk.core.rx.RXSchedulers;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.types.ChatError;
 import co.chatsdk.core.types.FileUploadResult;
+import co.chatsdk.core.types.UploadSession;
 import co.chatsdk.core.utils.StringChecker;
+import co.chatsdk.core.utils.UploadSessionStore;
 import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
 import io.reactivex.ObservableOnSubscribe;
-import io.reactivex.schedulers.Schedulers;
 
 /**
  * Created by Erk on 26.07.2016.
  */
 public class FirebaseUploadHandler extends AbstractUploadHandler {
 
+    protected static final long ProgressSaveInterval = 1000;
+
     public Observable<FileUploadResult> uploadFile(final byte[] data, final String name, final String mimeType) {
         return Observable.create((ObservableOnSubscribe<FileUploadResult>) e -> {
 
-            FirebaseStorage storage = null;
-            if(!StringChecker.isNullOrEmpty(ChatSDK.config().firebaseStorageUrl)) {
-                storage = FirebaseStorage.getInstance(ChatSDK.config().firebaseStorageUrl);
-            }
-            else {
-                storage = FirebaseStorage.getInstance();
-            }
-            StorageReference filesRef = storage.getReference().child("files");
             final String fullName = getUUID() + "_" + name;
-            StorageReference fileRef = filesRef.child(fullName);
+            StorageReference fileRef = filesRef().child(fullName);
 
             final FileUploadResult result = new FileUploadResult();
 
@@ -48,22 +49,138 @@ public class FirebaseUploadHandler extends AbstractUploadHandler {
                 // TODO: With Firebase this appears to be brokenProfileFragment.newInstance
                 e.onNext(result);
             }).addOnSuccessListener(taskSnapshot -> {
-                fileRef.getDownloadUrl().addOnSuccessListener(new OnSuccessListener<Uri>() {
-                    @Override
-                    public void onSuccess(Uri uri) {
-                        result.name = name;
-                        result.mimeType = mimeType;
-                        result.url = uri.toString();
-                        result.progress.set(taskSnapshot.getTotalByteCount(), taskSnapshot.getTotalByteCount());
-                        e.onNext(result);
-                        e.onComplete();
-                    }
-                });
+                onUploadComplete(fileRef, taskSnapshot, name, mimeType, result, e);
             }).addOnFailureListener(error -> e.onError(ChatError.getError(ChatError.Code.FIREBASE_STORAGE_EXCEPTION, error.getMessage())));
 
-        }).subscribeOn(Schedulers.single());
+        }).subscribeOn(RXSchedulers.network());
     }
 
+    public Observable<FileUploadResult> uploadFile(final InputStream stream, final String name, final String mimeType) {
+        return Observable.create((ObservableOnSubscribe<FileUploadResult>) e -> {
+
+            final String fullName = getUUID() + "_" + name;
+            final StorageReference fileRef = filesRef().child(fullName);
+
+            final FileUploadResult result = new FileUploadResult();
 
+            StorageMetadata metadata = new StorageMetadata.Builder().setContentType(mimeType).build();
+
+            fileRef.putStream(stream, metadata).addOnProgressListener(taskSnapshot -> {
+                result.progress.set(taskSnapshot.getTotalByteCount(), taskSnapshot.getBytesTransferred());
+                e.onNext(result);
+            }).addOnSuccessListener(taskSnapshot -> {
+                onUploadComplete(fileRef, taskSnapshot, name, mimeType, result, e);
+            }).addOnFailureListener(error -> e.onError(ChatError.getError(ChatError.Code.FIREBASE_STORAGE_EXCEPTION, error.getMessage())));
+
+        }).subscribeOn(RXSchedulers.network());
+    }
+
+    /**
+     * Firebase reads the file in chunks so the payload is never held in memory. If a session
+     * key is passed, the session and its progress are stored while the upload runs and the upload
+     * continues from the last confirmed byte when it's started again with the same key. The session
+     * is kept if the upload fails and removed when it succeeds or is cancelled.
+     */
+    @Override
+    public Observable<FileUploadResult> uploadFile(final Uri uri, final String name, final String mimeType, final String sessionKey) {
+        return Observable.create((ObservableOnSubscribe<FileUploadResult>) e -> {
+
+            UploadSession existing = UploadSessionStore.get(sessionKey);
+            if (sessionKey != null && existing == null) {
+                existing = new UploadSession(sessionKey, uri.toString(), name, mimeType);
+            }
+            final UploadSession session = existing;
+
+            if (session != null && session.remotePath == null) {
+                session.remotePath = getUUID() + "_" + name;
+            }
+
+            final String fullName = session != null ? session.remotePath : getUUID() + "_" + name;
+            final StorageReference fileRef = filesRef().child(fullName);
+
+            final FileUploadResult result = new FileUploadResult();
+
+            StorageMetadata metadata = new StorageMetadata.Builder().setContentType(mimeType).build();
+
+            UploadTask uploadTask;
+            if (session != null && session.sessionUri != null) {
+                uploadTask = fileRef.putFile(uri, metadata, Uri.parse(session.sessionUri));
+            }
+            else {
+                uploadTask = fileRef.putFile(uri, metadata);
+            }
+
+            final boolean resuming = session != null && session.sessionUri != null;
+            final long[] lastSaved = {0};
+
+            uploadTask.addOnProgressListener(taskSnapshot -> {
+                result.progress.set(taskSnapshot.getTotalByteCount(), taskSnapshot.getBytesTransferred());
+
+                if (session != null) {
+                    boolean sessionUriChanged = session.sessionUri == null && taskSnapshot.getUploadSessionUri() != null;
+                    if (sessionUriChanged) {
+                        session.sessionUri = taskSnapshot.getUploadSessionUri().toString();
+                    }
+                    session.progress.set(taskSnapshot.getTotalByteCount(), taskSnapshot.getBytesTransferred());
+
+                    // Progress events can arrive for every chunk so the progress is only written now and then
+                    long now = System.currentTimeMillis();
+                    if (sessionUriChanged || now - lastSaved[0] >= ProgressSaveInterval) {
+                        lastSaved[0] = now;
+                        UploadSessionStore.save(session);
+                    }
+                }
+
+                e.onNext(result);
+            }).addOnSuccessListener(taskSnapshot -> {
+                UploadSessionStore.remove(sessionKey);
+                onUploadComplete(fileRef, taskSnapshot, name, mimeType, result, e);
+            }).addOnFailureListener(error -> {
+                if (session != null) {
+                    int code = error instanceof StorageException ? ((StorageException) error).getErrorCode() : 0;
+                    int httpCode = error instanceof StorageException ? ((StorageException) error).getHttpResultCode() : 0;
+                    if (code == StorageException.ERROR_CANCELED) {
+                        UploadSessionStore.remove(sessionKey);
+                    }
+                    else {
+                        // Keep the session so the upload can carry on from the last confirmed byte,
+                        // unless the server no longer knows the session
+                        if (resuming && (httpCode == 404 || httpCode == 410)) {
+                            session.sessionUri = null;
+                            session.progress.set(session.progress.getTotalBytes(), 0);
+                        }
+                        UploadSessionStore.save(session);
+                    }
+                }
+                e.onError(ChatError.getError(ChatError.Code.FIREBASE_STORAGE_EXCEPTION, error.getMessage()));
+            });
+
+        }).subscribeOn(RXSchedulers.network());
+    }
+
+    protected void onUploadComplete (StorageReference fileRef, UploadTask.TaskSnapshot taskSnapshot, String name, String mimeType, FileUploadResult result, ObservableEmitter<FileUploadResult> e) {
+        fileRef.getDownloadUrl().addOnSuccessListener(new OnSuccessListener<Uri>() {
+            @Override
+            public void onSuccess(Uri uri) {
+                result.name = name;
+                result.mimeType = mimeType;
+                result.url = uri.toString();
+                result.progress.set(taskSnapshot.getTotalByteCount(), taskSnapshot.getTotalByteCount());
+                e.onNext(result);
+                e.onComplete();
+            }
+        }).addOnFailureListener(error -> e.onError(ChatError.getError(ChatError.Code.FIREBASE_STORAGE_EXCEPTION, error.getMessage())));
+    }
+
+    protected StorageReference filesRef () {
+        FirebaseStorage storage = null;
+        if(!StringChecker.isNullOrEmpty(ChatSDK.config().firebaseStorageUrl)) {
+            storage = FirebaseStorage.getInstance(ChatSDK.config().firebaseStorageUrl);
+        }
+        else {
+            storage = FirebaseStorage.getInstance();
+        }
+        return storage.getReference().child("files");
+    }
 
 }
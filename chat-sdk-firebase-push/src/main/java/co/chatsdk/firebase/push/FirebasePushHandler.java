@@ -1,8 +1,6 @@
 package co.chatsdk.firebase.push;
 
-import com.google.android.gms.tasks.Continuation;
 import com.google.firebase.functions.FirebaseFunctions;
-import com.google.firebase.functions.HttpsCallableResult;
 import com.google.firebase.messaging.FirebaseMessaging;
 
 import java.util.HashMap;
@@ -15,6 +13,7 @@ import co.chatsdk.core.push.AbstractPushHandler;
 import co.chatsdk.core.push.BaseBroadcastHandler;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.utils.StringChecker;
+import io.reactivex.Completable;
 import timber.log.Timber;
 
 /**
@@ -40,16 +39,21 @@ public class FirebasePushHandler extends AbstractPushHandler {
     @Override
     public void sendPushNotification (HashMap<String, Object> data) {
         if (data != null) {
-            FirebaseFunctions.getInstance().getHttpsCallable("pushToChannels").call(data).continueWith((Continuation<HttpsCallableResult, String>) task -> {
-                if(task.getException() != null) {
-                    Timber.d(task.getException());
-                }
-                else {
-                    Timber.d(task.getResult().getData().toString());
-                }
-                return null;
-            });
+            sendPush(data).subscribe(() -> {}, Timber::d);
         }
     }
 
+    @Override
+    public Completable sendPush (HashMap<String, Object> data) {
+        return Completable.create(emitter -> FirebaseFunctions.getInstance().getHttpsCallable("pushToChannels").call(data)
+                .addOnSuccessListener(result -> {
+                    Timber.d(String.valueOf(result.getData()));
+                    emitter.onComplete();
+                })
+                .addOnFailureListener(e -> {
+                    Timber.d(e);
+                    emitter.onError(e);
+                }));
+    }
+
 }
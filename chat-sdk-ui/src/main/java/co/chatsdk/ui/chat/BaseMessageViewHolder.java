@@ -140,12 +140,16 @@ public class BaseMessageViewHolder extends AbstractMessageViewHolder {
     protected void updateReadStatus () {
         if (message != null) {
             int resource = R.drawable.ic_message_received;
-            ReadStatus status = message.getReadStatus();
+            ReadStatus status;
 
             // Hide the read receipt for public threads
             if(message.getThread().typeIs(ThreadType.Public) || ChatSDK.readReceipts() == null) {
                 status = ReadStatus.hide();
             }
+            else {
+                // Read from the message's summary column, the members aren't loaded
+                status = message.getReadStatus();
+            }
 
             if(status.is(ReadStatus.delivered())) {
                 resource = R.drawable.ic_message_delivered;
@@ -30,45 +30,49 @@ import com.facebook.drawee.view.SimpleDraweeView;
 import org.apache.commons.lang3.StringUtils;
 import org.ocpsoft.prettytime.PrettyTime;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.TimeUnit;
 
 import co.chatsdk.core.audio.Recording;
 import co.chatsdk.core.dao.Keys;
 import co.chatsdk.core.dao.Message;
 import co.chatsdk.core.dao.Thread;
 import co.chatsdk.core.dao.User;
+import co.chatsdk.core.events.EventRouter;
 import co.chatsdk.core.events.EventType;
 import co.chatsdk.core.events.NetworkEvent;
+import co.chatsdk.core.events.PreparedEvent;
 import co.chatsdk.core.handlers.TypingIndicatorHandler;
 import co.chatsdk.core.interfaces.ChatOption;
 import co.chatsdk.core.interfaces.ChatOptionsDelegate;
 import co.chatsdk.core.interfaces.ChatOptionsHandler;
 import co.chatsdk.core.interfaces.ThreadType;
+import co.chatsdk.core.rx.RXSchedulers;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.session.InterfaceManager;
 import co.chatsdk.core.session.StorageManager;
 import co.chatsdk.core.types.ChatOptionType;
 import co.chatsdk.core.types.MessageSendProgress;
 import co.chatsdk.core.types.MessageSendStatus;
-import co.chatsdk.core.types.ReadStatus;
 import co.chatsdk.core.utils.CrashReportingCompletableObserver;
 import co.chatsdk.core.utils.CrashReportingObserver;
 import co.chatsdk.core.utils.DisposableList;
 import co.chatsdk.core.utils.StringChecker;
 import co.chatsdk.core.utils.Strings;
+import co.chatsdk.core.utils.TypingStateEngine;
 import co.chatsdk.ui.R;
 import co.chatsdk.ui.contacts.ContactsFragment;
 import co.chatsdk.ui.contacts.SelectContactActivity;
 import co.chatsdk.ui.main.BaseActivity;
 import co.chatsdk.ui.threads.ThreadImageBuilder;
 import co.chatsdk.ui.utils.ToastHelper;
+import io.reactivex.Completable;
 import io.reactivex.Observable;
 import io.reactivex.Observer;
+import io.reactivex.Single;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
-import io.reactivex.schedulers.Schedulers;
 import timber.log.Timber;
 
 public class ChatActivity extends BaseActivity implements TextInputDelegate, ChatOptionsDelegate {
@@ -105,10 +109,13 @@ public class ChatActivity extends BaseActivity implements TextInputDelegate, Cha
     protected RecyclerView recyclerView;
     protected MessageListAdapter messageListAdapter;
     protected Thread thread;
+
+    // The thread the listeners were told is open, set between onStart and onStop
+    protected Thread openedThread;
+
     protected TextView subtitleTextView;
 
     protected DisposableList disposableList = new DisposableList();
-    protected Disposable typingTimerDisposable;
 
     protected ProgressBar progressBar;
     protected int listPos = -1;
@@ -126,6 +133,13 @@ public class ChatActivity extends BaseActivity implements TextInputDelegate, Cha
      */
     protected boolean scrolling = false;
 
+    /**
+     * The list only keeps a window of messages in memory. This is set when newer
+     * messages have been trimmed off the bottom and need to be paged back in.
+     */
+    protected boolean hasNewerMessages = false;
+    protected boolean loadingNewerMessages = false;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -248,8 +262,10 @@ public class ChatActivity extends BaseActivity implements TextInputDelegate, Cha
                                 for(Message m : messages) {
                                     messageListAdapter.addRow(m, false, false);
                                 }
-                                messageListAdapter.sortAndNotify();
-                                recyclerView.getLayoutManager().scrollToPosition(messages.size());
+                                if (messageListAdapter.trimNewest(ChatSDK.config().messageListWindowSize, false) > 0) {
+                                    hasNewerMessages = true;
+                                }
+                                messageListAdapter.sortAndNotify(() -> recyclerView.getLayoutManager().scrollToPosition(messages.size()));
                             }
                         }
                         mSwipeRefresh.setRefreshing(false);
@@ -259,6 +275,15 @@ public class ChatActivity extends BaseActivity implements TextInputDelegate, Cha
         recyclerView = findViewById(R.id.list_chat);
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
 
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (dy > 0 && layoutManager().findLastVisibleItemPosition() >= messageListAdapter.getItemCount() - 2) {
+                    loadNewerMessages();
+                }
+            }
+        });
+
         recyclerView.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
             @Override
             public void onLayoutChange(View v, int left, int top, int right, int bottom, int oldLeft, int oldTop, int oldRight, int oldBottom) {
@@ -285,6 +310,11 @@ public class ChatActivity extends BaseActivity implements TextInputDelegate, Cha
             return;
         }
 
+        // Jump back to the latest page so the new message is shown in context
+        if (hasNewerMessages) {
+            loadMessages(false, -1, ListPosition.Bottom);
+        }
+
         handleMessageSend(ChatSDK.thread().sendMessageWithText(text.trim(), thread));
 
         if (clearEditText && textInputView != null) {
@@ -309,9 +339,8 @@ public class ChatActivity extends BaseActivity implements TextInputDelegate, Cha
                         // It's best not to sort here because then we are just adding the message
                         // to the bottom of the list. We only sort after the message has also been
                         // received from Firebase so the datestamp is also correct
-                        if(messageListAdapter.addRow(messageSendProgress.message, false, true, messageSendProgress.uploadProgress)) {
-                            scrollListTo(ListPosition.Bottom, false);
-                        }
+                        boolean isAdded = messageListAdapter.addRow(messageSendProgress.message, false, false, messageSendProgress.uploadProgress);
+                        messageListAdapter.submit(isAdded ? () -> scrollListTo(ListPosition.Bottom, false) : null);
                     }
 
                     @Override
@@ -322,8 +351,7 @@ public class ChatActivity extends BaseActivity implements TextInputDelegate, Cha
 
                     @Override
                     public void onComplete() {
-                        messageListAdapter.notifyDataSetChanged();
-                        scrollListTo(ListPosition.Bottom, false);
+                        messageListAdapter.submit(() -> scrollListTo(ListPosition.Bottom, false));
                     }
                 });
     }
@@ -350,72 +378,84 @@ public class ChatActivity extends BaseActivity implements TextInputDelegate, Cha
     protected void onStart() {
         super.onStart();
 
-        disposableList.add(ChatSDK.events().sourceOnMain()
-                .filter(NetworkEvent.filterType(EventType.MessageAdded, EventType.ThreadReadReceiptUpdated, EventType.MessageRemoved))
-                .filter(NetworkEvent.filterThreadEntityID(thread.getEntityID()))
-                .subscribe(networkEvent -> {
+        setOpenedThread(thread);
+
+        // The list items are created in the background so the main thread doesn't touch the database
+        disposableList.add(PreparedEvent.prepare(ChatSDK.events().router().thread(thread.getEntityID(), EventType.MessageAdded, EventType.ThreadReadReceiptUpdated), this::prepareMessageItem)
+                .filter(PreparedEvent::hasData)
+                .subscribe(prepared -> {
 
-                    Message message = networkEvent.message;
+                    MessageListItem item = prepared.data;
 
-                    // Check that the message is relevant to the current thread.
-                    if (message.getThreadId() != thread.getId().intValue()) {
+                    // The user is looking at older history, the message will be paged in when they scroll down
+                    if (hasNewerMessages && !messageListAdapter.messageExists(item.getMessage())) {
+                        markRead();
                         return;
                     }
 
-                    message.setRead(true);
-                    message.update();
+                    // The adapter works out whether the row was inserted, moved or needs
+                    // rebinding for a status or read receipt change
+                    int lastVisible = layoutManager().findLastVisibleItemPosition();
+                    int itemCount = messageListAdapter.getItemCount();
 
-                    boolean isAdded = messageListAdapter.addRow(message, false, false);
-                    if(isAdded || message.getMessageStatus() == MessageSendStatus.None) {
-                        messageListAdapter.sortAndNotify();
-                        // Make sure to update for read receipts if necessary
-                    } else if (ChatSDK.readReceipts() != null && message.getSender().isMe() && message.getReadStatus() != ReadStatus.read()) {
-                        messageListAdapter.sortAndNotify();
-                    }
+                    boolean isAdded = messageListAdapter.addItem(item, false, false);
+                    trimOldestIfAtBottom();
 
-                    // Check if the message from the current user, If so return so we wont vibrate for the user messages.
-                    if (message.getSender().isMe() && isAdded) {
-                        scrollListTo(ListPosition.Bottom, layoutManager().findLastVisibleItemPosition() > messageListAdapter.size() - 2);
+                    // Scroll once the row has been inserted, before that the position doesn't exist
+                    Runnable scroll = null;
+                    if (item.isMine() && isAdded) {
+                        final boolean animated = lastVisible > itemCount - 2;
+                        scroll = () -> scrollListTo(ListPosition.Bottom, animated);
                     }
-                    else {
-                        // If the user is near the bottom, then we scroll down when a message comes in
-                        if(layoutManager().findLastVisibleItemPosition() > messageListAdapter.size() - 5) {
-                            scrollListTo(ListPosition.Bottom, true);
-                        }
+                    // If the user is near the bottom, then we scroll down when a message comes in
+                    else if (lastVisible > itemCount - 5) {
+                        scroll = () -> scrollListTo(ListPosition.Bottom, true);
                     }
+                    messageListAdapter.sortAndNotify(scroll);
+
+                    markRead();
+                }, ChatSDK::logError));
 
-                    if(ChatSDK.readReceipts() != null) {
-                        ChatSDK.readReceipts().markRead(thread);
+        // A batch of messages that arrived together, add them all and only sort once
+        disposableList.add(PreparedEvent.prepare(ChatSDK.events().router().thread(thread.getEntityID(), EventType.MessagesAdded), this::prepareMessageItems)
+                .subscribe(prepared -> {
+                    if (hasNewerMessages) {
+                        markRead();
+                        return;
                     }
-                }));
+                    boolean isAdded = false;
+                    for (MessageListItem item : prepared.data) {
+                        isAdded = messageListAdapter.addItem(item, false, false) || isAdded;
+                    }
+                    if (isAdded) {
+                        boolean atBottom = layoutManager().findLastVisibleItemPosition() > messageListAdapter.getItemCount() - 5;
+                        trimOldestIfAtBottom();
+                        messageListAdapter.sortAndNotify(atBottom ? () -> scrollListTo(ListPosition.Bottom, true) : null);
+                    }
+                    markRead();
+                }, ChatSDK::logError));
 
-        disposableList.add(ChatSDK.events().sourceOnMain()
-                .filter(NetworkEvent.filterType(EventType.MessageRemoved))
-                .filter(NetworkEvent.filterThreadEntityID(thread.getEntityID()))
+        disposableList.add(ChatSDK.events().router().thread(thread.getEntityID(), EventType.MessageRemoved)
+                .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(networkEvent -> {
                     messageListAdapter.removeRow(networkEvent.message, true);
                 }));
 
-        disposableList.add(ChatSDK.events().sourceOnMain()
-                .filter(NetworkEvent.filterType(
-                        EventType.ThreadDetailsUpdated,
-                        EventType.ThreadUsersChanged))
-                .filter(NetworkEvent.filterThreadEntityID(thread.getEntityID()))
+        disposableList.add(EventRouter.coalesce(ChatSDK.events().router().thread(thread.getEntityID(), EventType.ThreadDetailsUpdated, EventType.ThreadUsersChanged), ChatSDK.config().eventCoalesceInterval)
+                .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(networkEvent -> messageListAdapter.notifyDataSetChanged()));
 
-        disposableList.add(ChatSDK.events().sourceOnMain()
-                .filter(NetworkEvent.filterType(EventType.UserMetaUpdated)).subscribe(networkEvent -> messageListAdapter.notifyDataSetChanged()));
+        disposableList.add(EventRouter.coalesce(ChatSDK.events().router().type(EventType.UserMetaUpdated), ChatSDK.config().eventCoalesceInterval)
+                .observeOn(AndroidSchedulers.mainThread()).subscribe(networkEvent -> messageListAdapter.notifyDataSetChanged()));
 
-        disposableList.add(ChatSDK.events().sourceOnMain()
-                .filter(NetworkEvent.filterType(EventType.TypingStateChanged)).subscribe(networkEvent -> {
-                    if(networkEvent.thread.equals(thread)) {
-                        String typingText = networkEvent.text;
-                        if(typingText != null) {
-                            typingText += getString(R.string.typing);
-                        }
-                        Timber.v(typingText);
-                        setSubtitleText(typingText);
+        disposableList.add(TypingStateEngine.shared().events(thread)
+                .observeOn(AndroidSchedulers.mainThread()).subscribe(networkEvent -> {
+                    String typingText = networkEvent.text;
+                    if(typingText != null) {
+                        typingText += getString(R.string.typing);
                     }
+                    Timber.v(typingText);
+                    setSubtitleText(typingText);
                 }));
     }
 
@@ -505,6 +545,8 @@ public class ChatActivity extends BaseActivity implements TextInputDelegate, Cha
         stopTyping(true);
         markRead();
 
+        setOpenedThread(null);
+
         if (thread != null && thread.typeIs(ThreadType.Public) && removeUserFromChatOnExit) {
             ChatSDK.thread().removeUsersFromThread(thread, ChatSDK.currentUser()).observeOn(AndroidSchedulers.mainThread()).subscribe(new CrashReportingCompletableObserver());
         }
@@ -525,16 +567,37 @@ public class ChatActivity extends BaseActivity implements TextInputDelegate, Cha
     protected void onNewIntent(Intent intent) {
         super.onNewIntent(intent);
 
-
         if (!updateThreadFromBundle(intent.getExtras()))
             return;
 
+        // A stopped activity gets onStart after this which opens the new thread
+        if (openedThread != null) {
+            setOpenedThread(thread);
+        }
+
         if (messageListAdapter != null)
             messageListAdapter.clear();
 
         initActionBar();
     }
 
+    /**
+     * Keep the opened and closed calls balanced, at most one thread is open at a time
+     * @param thread the thread that's showing or null when the activity stops
+     */
+    protected void setOpenedThread (Thread thread) {
+        if (openedThread == thread) {
+            return;
+        }
+        if (openedThread != null) {
+            ChatSDK.events().threadClosed(openedThread);
+        }
+        openedThread = thread;
+        if (openedThread != null) {
+            ChatSDK.events().threadOpened(openedThread);
+        }
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
@@ -601,12 +664,43 @@ public class ChatActivity extends BaseActivity implements TextInputDelegate, Cha
     }
 
     protected void markRead () {
-        if(ChatSDK.readReceipts() != null) {
-            ChatSDK.readReceipts().markRead(thread);
-        }
-        else {
+        // This writes every unread message so it's done in the background
+        final Thread thread = this.thread;
+        Completable.fromAction(() -> {
+            // Always mark locally so the thread's unread count is reset
             thread.markRead();
+            if(ChatSDK.readReceipts() != null) {
+                ChatSDK.readReceipts().markRead(thread);
+            }
+        }).subscribeOn(RXSchedulers.db()).subscribe(new CrashReportingCompletableObserver());
+    }
+
+    /**
+     * Called on the database scheduler for each message event
+     * @return the list item for the message or null if it isn't for this thread
+     */
+    protected MessageListItem prepareMessageItem (NetworkEvent networkEvent) {
+        Message message = networkEvent.message;
+
+        // Check that the message is relevant to the current thread.
+        if (message == null || message.getThreadId() != thread.getId().intValue()) {
+            return null;
+        }
+
+        message.setRead(true);
+        message.update();
+
+        return new MessageListItem(message);
+    }
+
+    protected List<MessageListItem> prepareMessageItems (NetworkEvent networkEvent) {
+        List<MessageListItem> items = new ArrayList<>();
+        if (networkEvent.messages != null) {
+            for (Message message : networkEvent.messages) {
+                items.add(new MessageListItem(message));
+            }
         }
+        return items;
     }
 
     /**
@@ -695,10 +789,8 @@ public class ChatActivity extends BaseActivity implements TextInputDelegate, Cha
     }
 
     public void startTyping () {
-        setChatState(TypingIndicatorHandler.State.composing);
-        typingTimerDisposable = Observable.just(true).delay(5000, TimeUnit.MILLISECONDS)
-                .subscribeOn(Schedulers.io())
-                .subscribe(aBoolean -> setChatState(TypingIndicatorHandler.State.active));
+        // Called for every keystroke, the engine decides when to write
+        TypingStateEngine.shared().composing(thread);
     }
 
     @Override
@@ -724,24 +816,11 @@ public class ChatActivity extends BaseActivity implements TextInputDelegate, Cha
     }
 
     protected void stopTyping (boolean inactive) {
-        if (typingTimerDisposable != null) {
-            typingTimerDisposable.dispose();
-            typingTimerDisposable = null;
-        }
-        if(inactive) {
-            setChatState(TypingIndicatorHandler.State.inactive);
-        }
-        else {
-            setChatState(TypingIndicatorHandler.State.active);
-        }
+        TypingStateEngine.shared().stopped(thread, inactive);
     }
 
     protected void setChatState (TypingIndicatorHandler.State state) {
-        if(ChatSDK.typingIndicator() != null) {
-            ChatSDK.typingIndicator().setChatState(state, thread)
-                    .observeOn(AndroidSchedulers.mainThread())
-                    .subscribe(new CrashReportingCompletableObserver(disposableList));
-        }
+        TypingStateEngine.shared().setState(thread, state);
     }
 
     /**
@@ -787,17 +866,60 @@ public class ChatActivity extends BaseActivity implements TextInputDelegate, Cha
                 .subscribe((messages, throwable) -> {
                     progressBar.setVisibility(View.INVISIBLE);
 
-                    messageListAdapter.setMessages(messages);
+                    hasNewerMessages = false;
+                    messageListAdapter.setMessages(messages, () -> scrollListTo(toPosition, !showLoadingIndicator));
 
                     if (showLoadingIndicator) {
                         //animateListView();
                     }
                     recyclerView.setVisibility(View.VISIBLE);
-
-                    scrollListTo(toPosition, !showLoadingIndicator);
                 });
     }
 
+    /**
+     * Page the next batch of newer messages in from the database after they have been
+     * trimmed from the window
+     */
+    protected void loadNewerMessages () {
+        List<MessageListItem> items = messageListAdapter.getMessageItems();
+        if (!hasNewerMessages || loadingNewerMessages || items.isEmpty()) {
+            return;
+        }
+        loadingNewerMessages = true;
+
+        final Message lastMessage = items.get(items.size() - 1).message;
+        final int batchSize = ChatSDK.config().messagesToLoadPerBatch;
+
+        disposableList.add(Single.fromCallable(() -> ChatSDK.db().fetchMessagesAfter(thread.getId(), lastMessage, batchSize))
+                .subscribeOn(RXSchedulers.db())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe((messages, throwable) -> {
+                    loadingNewerMessages = false;
+                    if (throwable != null) {
+                        ChatSDK.logError(throwable);
+                        return;
+                    }
+                    for (Message m : messages) {
+                        messageListAdapter.addRow(m, false, false);
+                    }
+                    if (messages.size() < batchSize) {
+                        hasNewerMessages = false;
+                    }
+                    messageListAdapter.trimOldest(ChatSDK.config().messageListWindowSize, false);
+                    messageListAdapter.sortAndNotify();
+                }));
+    }
+
+    /**
+     * Keep the window bounded while new messages arrive. If the user has scrolled up
+     * into the history we leave the list alone so it doesn't jump under them
+     */
+    protected void trimOldestIfAtBottom () {
+        if (layoutManager().findLastVisibleItemPosition() > messageListAdapter.getItemCount() - 5) {
+            messageListAdapter.trimOldest(ChatSDK.config().messageListWindowSize, false);
+        }
+    }
+
     public void markAsDelivered(List<Message> messages){
         for (Message m : messages) {
             markAsDelivered(m);
@@ -829,10 +951,11 @@ public class ChatActivity extends BaseActivity implements TextInputDelegate, Cha
                 pos = 0;
                 break;
             case Current:
-                pos = listPos == -1 ? messageListAdapter.size() - 1 : listPos;
+                pos = listPos == -1 ? messageListAdapter.getItemCount() - 1 : listPos;
                 break;
             case Bottom:
-                pos = messageListAdapter.size() - 1;
+                // The rows the RecyclerView has, the adapter's working list can be ahead of them
+                pos = messageListAdapter.getItemCount() - 1;
                 break;
         }
 
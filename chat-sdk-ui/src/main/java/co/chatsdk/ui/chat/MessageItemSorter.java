@@ -25,12 +25,19 @@ public class MessageItemSorter implements Comparator<MessageListItem> {
             return 0;
         }
         else {
-            if (order == DaoCore.ORDER_ASC) {
-                return m1.getTimeInMillis() > m2.getTimeInMillis() ? -1 : 1;
-            }
-            else {
-                return m1.getTimeInMillis() > m2.getTimeInMillis() ? 1 : -1;
+            // Fall back to the entity ID so the order is consistent, this is needed for binary search
+            int result = Long.compare(m1.getTimeInMillis(), m2.getTimeInMillis());
+            if (result == 0) {
+                result = compare(m1.getEntityID(), m2.getEntityID());
             }
+            return order == DaoCore.ORDER_ASC ? -result : result;
+        }
+    }
+
+    protected int compare(String id1, String id2) {
+        if (id1 == null || id2 == null) {
+            return id1 == null ? (id2 == null ? 0 : -1) : 1;
         }
+        return id1.compareTo(id2);
     }
 }
@@ -7,13 +7,17 @@
 
 package co.chatsdk.ui.chat;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import android.view.ViewGroup;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 
 import co.chatsdk.core.base.AbstractMessageViewHolder;
@@ -34,7 +38,35 @@ public class MessageListAdapter extends RecyclerView.Adapter<AbstractMessageView
 
     protected AppCompatActivity activity;
 
+    /**
+     * The working list, always kept sorted by date. Changes are published to the
+     * RecyclerView by submitting a copy to the differ which works out the precise
+     * inserts, moves and removals on a background thread
+     */
     protected List<MessageListItem> messageItems = new ArrayList<>();
+    protected HashMap<String, MessageListItem> messageItemsByEntityID = new HashMap<>();
+
+    // Positions in the working list, rebuilt on demand after rows are added, removed or sorted
+    protected HashMap<String, Integer> positionsByEntityID = new HashMap<>();
+    protected boolean positionsValid = false;
+
+    protected MessageItemSorter sorter = new MessageItemSorter(DaoCore.ORDER_DESC);
+
+    // Items are replaced rather than mutated when their state changes so an item
+    // with the same identity hasn't changed
+    protected static final DiffUtil.ItemCallback<MessageListItem> diffCallback = new DiffUtil.ItemCallback<MessageListItem>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull MessageListItem oldItem, @NonNull MessageListItem newItem) {
+            return oldItem.getEntityID().equals(newItem.getEntityID());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull MessageListItem oldItem, @NonNull MessageListItem newItem) {
+            return oldItem == newItem;
+        }
+    };
+
+    protected AsyncListDiffer<MessageListItem> differ = new AsyncListDiffer<>(this, diffCallback);
 
     public MessageListAdapter(AppCompatActivity activity) {
         this.activity = activity;
@@ -60,7 +92,7 @@ public class MessageListAdapter extends RecyclerView.Adapter<AbstractMessageView
     @Override
     public void onBindViewHolder(AbstractMessageViewHolder holder, int position) {
 
-        MessageListItem messageItem = getMessageItems().get(position);
+        MessageListItem messageItem = displayedItems().get(position);
         Message message = messageItem.getMessage();
 
         holder.setMessage(message);
@@ -79,8 +111,9 @@ public class MessageListAdapter extends RecyclerView.Adapter<AbstractMessageView
 
     @Override
     public int getItemViewType(int position) {
-        Message message = messageItems.get(position).getMessage();
-        int viewType = message.getSender().isMe() ? ViewTypeMine : ViewTypeReply;
+        MessageListItem item = displayedItems().get(position);
+        Message message = item.getMessage();
+        int viewType = item.isMine() ? ViewTypeMine : ViewTypeReply;
         int messageType = message.getType();
 
         // Multiply by message.max so the two types don't clash
@@ -89,15 +122,21 @@ public class MessageListAdapter extends RecyclerView.Adapter<AbstractMessageView
 
     @Override
     public long getItemId(int i) {
-        return messageItems.get(i).getMessage().getId();
+        return displayedItems().get(i).getMessage().getId();
     }
 
     @Override
     public int getItemCount() {
-        return messageItems.size();
+        return displayedItems().size();
     }
 
-
+    /**
+     * The items the RecyclerView is currently showing. This can briefly lag behind
+     * {@link #getMessageItems()} while a diff is being calculated
+     */
+    protected List<MessageListItem> displayedItems() {
+        return differ.getCurrentList();
+    }
 
     public List<MessageListItem> getMessageItems() {
         return messageItems;
@@ -113,26 +152,75 @@ public class MessageListAdapter extends RecyclerView.Adapter<AbstractMessageView
         }
 
         Timber.d("Add Message Item: " + item.message.getText());
-        messageItems.add(item);
+        messageItems.add(insertionIndex(item), item);
+        messageItemsByEntityID.put(item.getEntityID(), item);
+        positionsValid = false;
 
         if(sort) {
             sort();
         }
 
         if(notify) {
-            notifyDataSetChanged();
+            submit();
         }
 
         return true;
     }
 
+    /**
+     * Binary search for the position that keeps the list sorted
+     */
+    protected int insertionIndex(MessageListItem item) {
+        int index = Collections.binarySearch(messageItems, item, sorter);
+        return index < 0 ? -(index + 1) : index;
+    }
+
+    /**
+     * The list is kept sorted as items are added, this only has work to do if
+     * a message's date has changed since it was added
+     */
     public void sort () {
-        Collections.sort(messageItems, new MessageItemSorter(DaoCore.ORDER_DESC));
+        Collections.sort(messageItems, sorter);
+        positionsValid = false;
     }
 
     public void sortAndNotify () {
+        sortAndNotify(null);
+    }
+
+    /**
+     * @param committed called on the main thread once the RecyclerView has the changes, for
+     *                  example to scroll to a row that has just been added
+     */
+    public void sortAndNotify (Runnable committed) {
         sort();
-        notifyDataSetChanged();
+        submit(committed);
+    }
+
+    protected void submit () {
+        submit(null);
+    }
+
+    /**
+     * Publish the working list, the differ dispatches the item level changes. The positions
+     * only exist in the RecyclerView once the diff has been committed. The commit callback
+     * needs RecyclerView 1.1.0
+     * @param committed called on the main thread after the changes have been dispatched
+     */
+    public void submit (Runnable committed) {
+        differ.submitList(new ArrayList<>(messageItems), committed);
+    }
+
+    protected int positionOf (String entityID) {
+        if (!positionsValid) {
+            positionsByEntityID.clear();
+            for (int i = 0; i < messageItems.size(); i++) {
+                positionsByEntityID.put(messageItems.get(i).getEntityID(), i);
+            }
+            positionsValid = true;
+        }
+        Integer position = positionsByEntityID.get(entityID);
+        return position != null ? position : -1;
     }
 
     /**
@@ -148,10 +236,14 @@ public class MessageListAdapter extends RecyclerView.Adapter<AbstractMessageView
         boolean returnStatus = false;
         if (item == null) {
             item = new MessageListItem(message);
+            if (progress != null) {
+                item.progress = progress.asFraction();
+            }
             returnStatus = addRow(item, sort, notify);
         }
-        if (progress != null) {
-            item.progress = progress.asFraction();
+        else if (progress != null || item.isStale()) {
+            // Replace the item so the differ sees that it has changed
+            replaceItem(item, new MessageListItem(message, progress != null ? progress.asFraction() : item.progress), notify);
         }
         return returnStatus;
     }
@@ -160,29 +252,93 @@ public class MessageListAdapter extends RecyclerView.Adapter<AbstractMessageView
         return addRow(message, sort, notify, null);
     }
 
+    /**
+     * Add an item that was created off the main thread, if the message is already in the
+     * list its item is replaced when the state has changed
+     * @return true if the item is added to the list
+     */
+    public boolean addItem(MessageListItem item, boolean sort, boolean notify) {
+        MessageListItem existing = messageItemForMessage(item.getMessage());
+        if (existing == null) {
+            return addRow(item, sort, notify);
+        }
+        if (item.differsFrom(existing)) {
+            item.progress = existing.progress;
+            replaceItem(existing, item, notify);
+        }
+        return false;
+    }
+
+    protected void replaceItem (MessageListItem oldItem, MessageListItem newItem, boolean notify) {
+        // Replacing an item doesn't move it so the positions stay valid
+        int index = positionOf(oldItem.getEntityID());
+        if (index >= 0) {
+            messageItems.set(index, newItem);
+            messageItemsByEntityID.put(newItem.getEntityID(), newItem);
+            if (notify) {
+                submit();
+            }
+        }
+    }
+
     public boolean removeRow (Message message, boolean notify) {
         MessageListItem item = messageItemForMessage(message);
         if (item != null) {
             messageItems.remove(item);
+            messageItemsByEntityID.remove(item.getEntityID());
+            positionsValid = false;
             if (notify) {
-                notifyDataSetChanged();
+                submit();
             }
             return true;
         }
         return false;
     }
 
+    /**
+     * Drop the oldest rows until there are at most maxSize left. They can be paged
+     * back in from the database
+     * @return the number of rows removed
+     */
+    public int trimOldest (int maxSize, boolean notify) {
+        int removed = 0;
+        while (maxSize > 0 && messageItems.size() > maxSize) {
+            messageItemsByEntityID.remove(messageItems.remove(0).getEntityID());
+            positionsValid = false;
+            removed++;
+        }
+        if (removed > 0 && notify) {
+            submit();
+        }
+        return removed;
+    }
+
+    /**
+     * Drop the newest rows until there are at most maxSize left
+     * @return the number of rows removed
+     */
+    public int trimNewest (int maxSize, boolean notify) {
+        int removed = 0;
+        while (maxSize > 0 && messageItems.size() > maxSize) {
+            messageItemsByEntityID.remove(messageItems.remove(messageItems.size() - 1).getEntityID());
+            positionsValid = false;
+            removed++;
+        }
+        if (removed > 0 && notify) {
+            submit();
+        }
+        return removed;
+    }
+
     protected boolean messageExists (Message message) {
         return messageItemForMessage(message) != null;
     }
 
     protected MessageListItem messageItemForMessage (Message message) {
-        for(MessageListItem i : messageItems) {
-            if(i.message.getEntityID().equals(message.getEntityID())) {
-                return i;
-            }
+        if (message == null || message.getEntityID() == null) {
+            return null;
         }
-        return null;
+        return messageItemsByEntityID.get(message.getEntityID());
     }
 
 
@@ -195,35 +351,35 @@ public class MessageListAdapter extends RecyclerView.Adapter<AbstractMessageView
 
     public void clear(boolean notify) {
         messageItems.clear();
+        messageItemsByEntityID.clear();
+        positionsValid = false;
         if(notify) {
-            notifyDataSetChanged();
+            submit();
         }
     }
 
     public void setMessages(List<Message> messages) {
+        setMessages(messages, null);
+    }
+
+    public void setMessages(List<Message> messages, Runnable committed) {
         clear(false);
         for (Message message : messages) {
             addRow(message, false, false);
         }
-        sortAndNotify();
+        sortAndNotify(committed);
     }
 
     // Untested because upload progress doesn't work
     public void setProgressForMessage (Message message, float progress) {
         MessageListItem item = messageListItemForMessage(message);
         if(item != null) {
-            item.progress = progress;
+            replaceItem(item, new MessageListItem(message, progress), true);
         }
-        notifyDataSetChanged();
     }
 
     public MessageListItem messageListItemForMessage (Message message) {
-        for(MessageListItem i : messageItems) {
-            if(i.message.equals(message)) {
-                return i;
-            }
-        }
-        return null;
+        return messageItemForMessage(message);
     }
 
     public int size () {
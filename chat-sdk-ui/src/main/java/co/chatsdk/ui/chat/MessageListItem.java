@@ -1,23 +1,58 @@
 package co.chatsdk.ui.chat;
 
 import co.chatsdk.core.dao.Message;
+import co.chatsdk.core.types.MessageSendStatus;
 
 public class MessageListItem {
 
     public Message message;
     public float progress;
 
+    // The state the item was displayed with, used to tell when it needs to be rebound
+    protected MessageSendStatus status;
+    protected int readStatus;
+
+    // Needs the sender to be loaded, so it's worked out when the item is created. Items for
+    // incoming events are created on the database scheduler
+    protected boolean isMine;
+
     public MessageListItem (Message message) {
+        this(message, 0);
+    }
+
+    public MessageListItem (Message message, float progress) {
         this.message = message;
+        this.progress = progress;
+        this.status = message.getMessageStatus();
+        this.readStatus = message.getReadStatus().getValue();
+        this.isMine = message.getSender() != null && message.getSender().isMe();
     }
 
     public Message getMessage () {
         return message;
     }
 
+    public String getEntityID () {
+        return message.getEntityID();
+    }
+
     public long getTimeInMillis() {
         return message.getDate().toDate().getTime();
     }
 
+    public boolean isMine () {
+        return isMine;
+    }
+
+    public boolean isStale () {
+        return status != message.getMessageStatus() || readStatus != message.getReadStatus().getValue();
+    }
+
+    /**
+     * @return true if the items would be displayed differently
+     */
+    public boolean differsFrom (MessageListItem item) {
+        return status != item.status || readStatus != item.readStatus;
+    }
 
 }
@@ -1,7 +1,10 @@
 package co.chatsdk.ui.chat.viewholder;
 
 import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
 import android.net.Uri;
+import android.util.LruCache;
 import android.view.View;
 
 import com.facebook.drawee.backends.pipeline.Fresco;
@@ -14,6 +17,7 @@ import co.chatsdk.core.dao.Keys;
 import co.chatsdk.core.dao.Message;
 import co.chatsdk.core.types.MessageType;
 import co.chatsdk.core.utils.GoogleUtils;
+import co.chatsdk.core.utils.ImageUtils;
 import co.chatsdk.ui.R;
 import co.chatsdk.ui.chat.BaseMessageViewHolder;
 import co.chatsdk.ui.chat.ImageMessageOnClickHandler;
@@ -21,6 +25,10 @@ import co.chatsdk.ui.chat.LocationMessageOnClickHandler;
 import timber.log.Timber;
 
 public class ImageMessageViewHolder extends BaseMessageViewHolder {
+
+    // The previews are only a few hundred bytes decoded so we can keep plenty of them
+    protected static final LruCache<String, Bitmap> previewCache = new LruCache<>(200);
+
     public ImageMessageViewHolder(View itemView, Activity activity) {
         super(itemView, activity);
     }
@@ -34,7 +42,19 @@ public class ImageMessageViewHolder extends BaseMessageViewHolder {
         int viewWidth = maxWidth();
         int viewHeight = maxHeight();
 
-        String url = getImageURL();
+        // Show the inline preview straight away, scaling it up from a few pixels blurs it
+        Bitmap preview = getPreview();
+        if (preview != null) {
+            BitmapDrawable drawable = new BitmapDrawable(activity.getResources(), preview);
+            drawable.setFilterBitmap(true);
+            messageImageView.getHierarchy().setPlaceholderImage(drawable);
+        }
+        else {
+            messageImageView.getHierarchy().setPlaceholderImage(null);
+        }
+
+        // The bubble only needs the thumbnail, the full image is loaded when it's tapped
+        String url = getThumbnailURL();
 
         if (url != null && url.length() > 0) {
             ImageRequest request = ImageRequestBuilder.newBuilderWithSource(Uri.parse(url))
@@ -46,9 +66,12 @@ public class ImageMessageViewHolder extends BaseMessageViewHolder {
                             .setOldController(messageImageView.getController())
                             .setImageRequest(request)
                             .build());
-        } else {
+        } else if (preview == null) {
             // Loads the placeholder
             messageImageView.setActualImageResource(R.drawable.icn_200_image_message_loading);
+        } else {
+            // Drop the recycled view's image so the preview placeholder shows
+            messageImageView.setController(null);
         }
     }
 
@@ -63,4 +86,27 @@ public class ImageMessageViewHolder extends BaseMessageViewHolder {
     public String getImageURL () {
         return message.stringForKey(Keys.MessageImageURL);
     }
+
+    /**
+     * Older messages only have the full image
+     */
+    public String getThumbnailURL () {
+        String url = message.stringForKey(Keys.MessageThumbnailURL);
+        return url != null && url.length() > 0 ? url : getImageURL();
+    }
+
+    protected Bitmap getPreview () {
+        String entityID = message.getEntityID();
+        Bitmap preview = entityID != null ? previewCache.get(entityID) : null;
+        if (preview == null) {
+            String value = message.stringForKey(Keys.MessageImagePreview);
+            if (value != null && value.length() > 0) {
+                preview = ImageUtils.decodePreviewString(value);
+                if (preview != null && entityID != null) {
+                    previewCache.put(entityID, preview);
+                }
+            }
+        }
+        return preview;
+    }
 }
@@ -175,7 +175,7 @@ public class SearchActivity extends BaseActivity {
 
             final List<User> existingContacts = ChatSDK.contact().contacts();
 
-            ChatSDK.search().usersForIndex(searchTextView.getText().toString())
+            ChatSDK.search().usersForText(searchTextView.getText().toString(), ChatSDK.config().contactsToLoadPerBatch)
                     .observeOn(AndroidSchedulers.mainThread())
                     .subscribe(new Observer<User>() {
                 @Override
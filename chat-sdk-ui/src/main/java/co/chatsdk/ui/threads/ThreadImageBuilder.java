@@ -8,13 +8,13 @@ import android.net.Uri;
 import com.facebook.common.util.UriUtil;
 import com.facebook.drawee.view.SimpleDraweeView;
 
-import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
 import co.chatsdk.core.dao.Thread;
 import co.chatsdk.core.dao.User;
 import co.chatsdk.core.interfaces.ThreadType;
+import co.chatsdk.core.rx.RXSchedulers;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.utils.ImageUtils;
 import co.chatsdk.core.utils.StringChecker;
@@ -31,7 +31,10 @@ import static co.chatsdk.core.utils.ImageBuilder.bitmapForURL;
 public class ThreadImageBuilder {
 
     public static void load (final SimpleDraweeView imageView, final Thread thread) {
-        getImageUriForThread(imageView.getContext(), thread).subscribe(uri -> imageView.setImageURI(uri), throwable -> imageView.setImageURI(defaultBitmapUri(imageView.getContext(), thread)));
+        getImageUriForThread(imageView.getContext(), thread)
+                .subscribeOn(RXSchedulers.computation())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(uri -> imageView.setImageURI(uri), throwable -> imageView.setImageURI(defaultBitmapUri(imageView.getContext(), thread)));
     }
 
     public static Single<Uri> getImageUriForThread(final Context context, final Thread thread) {
@@ -59,10 +62,24 @@ public class ThreadImageBuilder {
                 e.onSuccess(Uri.parse(urls.get(0)));
             }
             else {
-                combineBitmaps(context, urls).subscribe(bitmap -> {
-                    File file = ImageUtils.compressImageToFile(context, bitmap, "avatar", ".png");
-                    if(file != null) {
-                        e.onSuccess(Uri.fromFile(file));
+                // Only the avatars that end up in the composite are part of the key
+                if (urls.size() > 4) {
+                    urls = urls.subList(0, 4);
+                }
+
+                final int size = context.getResources().getDimensionPixelSize(R.dimen.action_bar_avatar_max_size);
+                final String key = ThreadImageCache.key(urls, size);
+
+                Uri cached = ThreadImageCache.shared().get(context, key);
+                if (cached != null) {
+                    e.onSuccess(cached);
+                    return;
+                }
+
+                combineBitmaps(context, urls).observeOn(RXSchedulers.computation()).subscribe(bitmap -> {
+                    Uri uri = ThreadImageCache.shared().put(context, key, bitmap);
+                    if(uri != null) {
+                        e.onSuccess(uri);
                     }
                     else {
                         e.onError(new Throwable(context.getString(R.string.could_not_save_composite_thread_image_to_file)));
@@ -78,16 +95,18 @@ public class ThreadImageBuilder {
             final ArrayList<Bitmap> bitmaps = new ArrayList<>();
             ArrayList<Single<Bitmap>> singles = new ArrayList<>();
 
+            final int size = context.getResources().getDimensionPixelSize(R.dimen.action_bar_avatar_max_size);
+
             for(String url : urls) {
                 if(singles.size() >= 4) {
                     break;
                 }
-                singles.add(bitmapForURL(context, url).onErrorResumeNext(throwable -> null));
+                // Each avatar takes up at most half the composite so there's no need to decode it at full size
+                singles.add(bitmapForURL(context, url, size, size).onErrorResumeNext(throwable -> null));
             }
 
             Single.merge(singles).observeOn(AndroidSchedulers.mainThread())
                     .doOnComplete(() -> {
-                        int size = context.getResources().getDimensionPixelSize(R.dimen.action_bar_avatar_max_size);
                         Bitmap bitmap = ImageUtils.getMixImagesBitmap(size, size, bitmaps);
 
                         if(bitmap == null) {
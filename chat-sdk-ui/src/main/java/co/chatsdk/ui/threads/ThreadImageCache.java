@@ -0,0 +1,173 @@
+package co.chatsdk.ui.threads;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.util.LruCache;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import co.chatsdk.core.session.ChatSDK;
+import co.chatsdk.core.utils.ImageUtils;
+
+/**
+ * Caches the composite avatars made for group threads. Entries are keyed by a hash of the
+ * member avatar URLs and the image size so a composite is only rebuilt when one of the
+ * avatars changes, old composites are never invalidated, they just age out.
+ *
+ * There is a memory tier of known files and a disk tier with least recently used eviction.
+ */
+
+public class ThreadImageCache {
+
+    public static final String DirectoryName = "thread-avatars";
+    public static int MaxDiskEntries = 100;
+
+    protected static final ThreadImageCache instance = new ThreadImageCache();
+
+    protected final LruCache<String, Uri> memoryCache = new LruCache<>(100);
+    // When each memory hit happened. They're written to the files' modified dates before trimming
+    // so the disk tier sees them without touching the file on every hit
+    protected final HashMap<String, Long> accessed = new HashMap<>();
+    protected boolean removedLegacyFiles = false;
+
+    public static ThreadImageCache shared () {
+        return instance;
+    }
+
+    /**
+     * The key doesn't depend on the order of the thread's users
+     */
+    public static String key (List<String> urls, int size) {
+        List<String> sorted = new ArrayList<>(urls);
+        Collections.sort(sorted);
+
+        StringBuilder builder = new StringBuilder();
+        for (String url : sorted) {
+            builder.append(url).append('\n');
+        }
+        builder.append(size);
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte [] hash = digest.digest(builder.toString().getBytes(Charset.forName("UTF-8")));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            return String.valueOf(builder.toString().hashCode());
+        }
+    }
+
+    public synchronized Uri get (Context context, String key) {
+        Uri uri = memoryCache.get(key);
+        if (uri != null) {
+            accessed.put(key, System.currentTimeMillis());
+            return uri;
+        }
+
+        File file = fileForKey(context, key);
+        if (file.exists()) {
+            // The modified date is used to find the least recently used entries
+            file.setLastModified(System.currentTimeMillis());
+            uri = Uri.fromFile(file);
+            memoryCache.put(key, uri);
+        }
+        return uri;
+    }
+
+    public synchronized Uri put (Context context, String key, Bitmap bitmap) {
+        File file = ImageUtils.compressImageToFile(bitmap, fileForKey(context, key), Bitmap.CompressFormat.PNG);
+        if (file == null) {
+            return null;
+        }
+        Uri uri = Uri.fromFile(file);
+        memoryCache.put(key, uri);
+        trim(context);
+        return uri;
+    }
+
+    public synchronized void clear (Context context) {
+        memoryCache.evictAll();
+        accessed.clear();
+        File [] files = directory(context).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    protected void trim (Context context) {
+        File [] files = directory(context).listFiles();
+        if (files == null || files.length <= MaxDiskEntries) {
+            return;
+        }
+        for (File file : files) {
+            Long date = accessed.remove(keyForFile(file));
+            if (date != null && date > file.lastModified()) {
+                file.setLastModified(date);
+            }
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return Long.compare(f1.lastModified(), f2.lastModified());
+            }
+        });
+        for (int i = 0; i < files.length - MaxDiskEntries; i++) {
+            memoryCache.remove(keyForFile(files[i]));
+            accessed.remove(keyForFile(files[i]));
+            files[i].delete();
+        }
+    }
+
+    protected File fileForKey (Context context, String key) {
+        return new File(directory(context), key + ".png");
+    }
+
+    protected String keyForFile (File file) {
+        String name = file.getName();
+        int index = name.lastIndexOf('.');
+        return index > 0 ? name.substring(0, index) : name;
+    }
+
+    protected File directory (Context context) {
+        File dir = ImageUtils.getDiskCacheDir(context, DirectoryName);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        if (!removedLegacyFiles) {
+            removedLegacyFiles = true;
+            removeLegacyFiles(context);
+        }
+        return dir;
+    }
+
+    /**
+     * Composites used to be written to a new randomly named file every time
+     */
+    protected void removeLegacyFiles (Context context) {
+        File [] files = ImageUtils.getDiskCacheDir(context, ChatSDK.config().imageDirectoryName).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith("avatar") && file.getName().endsWith(".png")) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,32 @@
+package co.chatsdk.ui.threads;
+
+import co.chatsdk.core.dao.Thread;
+
+/**
+ * Everything a thread's row shows. Rows are built in the background by
+ * {@link ThreadsListAdapter#buildRow(Thread)} so binding them doesn't touch the database.
+ */
+
+public class ThreadRow {
+
+    public final Thread thread;
+    public final String name;
+    // Null if the thread doesn't have any messages
+    public final String dateText;
+    public final String lastMessageText;
+    // Zero if the badge shouldn't be shown
+    public final int unreadCount;
+
+    public ThreadRow (Thread thread, String name, String dateText, String lastMessageText, int unreadCount) {
+        this.thread = thread;
+        this.name = name;
+        this.dateText = dateText;
+        this.lastMessageText = lastMessageText;
+        this.unreadCount = unreadCount;
+    }
+
+    public String getEntityID () {
+        return thread.getEntityID();
+    }
+
+}
@@ -16,15 +16,23 @@ import android.widget.EditText;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
+import co.chatsdk.core.dao.SearchIndex;
 import co.chatsdk.core.dao.Thread;
 import co.chatsdk.core.dao.User;
+import co.chatsdk.core.events.EventRouter;
 import co.chatsdk.core.events.EventType;
 import co.chatsdk.core.events.NetworkEvent;
+import co.chatsdk.core.events.PreparedEvent;
+import co.chatsdk.core.rx.RXSchedulers;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.utils.DisposableList;
+import co.chatsdk.core.utils.TypingStateEngine;
 import co.chatsdk.ui.R;
 import co.chatsdk.ui.main.BaseFragment;
+import io.reactivex.Single;
+import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.functions.Predicate;
 
@@ -37,6 +45,7 @@ public abstract class ThreadsFragment extends BaseFragment {
     protected MenuItem addMenuItem;
 
     private DisposableList disposableList = new DisposableList();
+    protected Disposable reloadDisposable;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -48,20 +57,30 @@ public abstract class ThreadsFragment extends BaseFragment {
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
 
-        disposableList.add(ChatSDK.events().sourceOnMain()
-                .filter(mainEventFilter())
+        // A sync can produce hundreds of events, merge them so each thread's row is updated once per burst.
+        // The row is built in the background and the main thread only binds it
+        disposableList.add(PreparedEvent.prepare(EventRouter.coalesce(ChatSDK.events().source().filter(mainEventFilter()), ChatSDK.config().eventCoalesceInterval), this::prepareRow)
+                .subscribe(prepared -> {
+                    if (tabIsVisible) {
+                        applyEvent(prepared.event, prepared.data);
+                    }
+                }, ChatSDK::logError));
+
+        // These events don't have a thread so they never pass the thread filter above. They aren't
+        // coalesced because that would merge the updates for different users
+        disposableList.add(ChatSDK.events().router().type(EventType.UserMetaUpdated)
+                .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(networkEvent -> {
                     if (tabIsVisible) {
-                        reloadData();
+                        reloadRowsForUser(networkEvent.user);
                     }
-                }));
+                }, ChatSDK::logError));
 
-        disposableList.add(ChatSDK.events().sourceOnMain()
-                .filter(NetworkEvent.filterType(EventType.TypingStateChanged))
+        disposableList.add(TypingStateEngine.shared().events()
+                .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(networkEvent -> {
                     if (tabIsVisible) {
                         adapter.setTyping(networkEvent.thread, networkEvent.text);
-                        adapter.notifyDataSetChanged();
                     }
                 }));
 
@@ -76,6 +95,74 @@ public abstract class ThreadsFragment extends BaseFragment {
 
     protected abstract Predicate<NetworkEvent> mainEventFilter ();
 
+    /**
+     * Called on the database scheduler
+     * @return the row for the event's thread or null if the event doesn't update a row
+     */
+    protected ThreadRow prepareRow (NetworkEvent networkEvent) {
+        ThreadsListAdapter adapter = this.adapter;
+        if (!tabIsVisible || adapter == null || networkEvent.thread == null || networkEvent.type == EventType.ThreadRemoved) {
+            return null;
+        }
+        return adapter.buildRow(networkEvent.thread);
+    }
+
+    /**
+     * Update the list for a single event. Changes to a thread that's already showing
+     * just move and rebind its row, anything else falls back to a full reload
+     */
+    protected void applyEvent (NetworkEvent networkEvent, ThreadRow row) {
+        if (adapter == null) {
+            return;
+        }
+        switch (networkEvent.type) {
+            case ThreadDetailsUpdated:
+            case ThreadLastMessageUpdated:
+            case ThreadMetaUpdated:
+            case ThreadUsersChanged:
+            case MessageAdded:
+            case MessagesAdded:
+            case MessageRemoved:
+                if (row == null || !adapter.updateRow(row)) {
+                    reloadData();
+                }
+                break;
+            case ThreadRemoved:
+                if (!adapter.removeThread(networkEvent.thread)) {
+                    reloadData();
+                }
+                break;
+            default:
+                reloadData();
+        }
+    }
+
+    /**
+     * Rebuild the rows of the threads the user is a member of in the background
+     */
+    protected void reloadRowsForUser (final User user) {
+        final ThreadsListAdapter adapter = this.adapter;
+        if (adapter == null || user == null) {
+            return;
+        }
+        final List<Thread> threads = adapter.getThreads();
+        disposableList.add(Single.fromCallable(() -> {
+            List<ThreadRow> rows = new ArrayList<>();
+            for (Thread thread : threads) {
+                if (thread.containsUser(user)) {
+                    rows.add(adapter.buildRow(thread));
+                }
+            }
+            return rows;
+        }).subscribeOn(RXSchedulers.computation())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(rows -> {
+                    for (ThreadRow row : rows) {
+                        adapter.updateRow(row);
+                    }
+                }, ChatSDK::logError));
+    }
+
     protected  @LayoutRes int activityLayout () {
         return R.layout.chat_sdk_activity_threads;
     }
@@ -152,12 +239,26 @@ public abstract class ThreadsFragment extends BaseFragment {
         reloadData();
     }
 
+    /**
+     * Load the threads and build their rows in the background, the list keeps showing the
+     * old rows until the new ones are ready
+     */
     @Override
     public void reloadData() {
+        final ThreadsListAdapter adapter = this.adapter;
         if (adapter != null) {
-            adapter.clearData();
-            List<Thread> threads = filter(getThreads());
-            adapter.updateThreads(threads);
+            if (reloadDisposable != null) {
+                reloadDisposable.dispose();
+            }
+            reloadDisposable = Single.fromCallable(() -> {
+                List<ThreadRow> rows = new ArrayList<>();
+                for (Thread thread : filter(getThreads())) {
+                    rows.add(adapter.buildRow(thread));
+                }
+                return rows;
+            }).subscribeOn(RXSchedulers.computation())
+                    .observeOn(AndroidSchedulers.mainThread())
+                    .subscribe(adapter::setRows, ChatSDK::logError);
         }
     }
 
@@ -168,6 +269,19 @@ public abstract class ThreadsFragment extends BaseFragment {
             return threads;
         }
 
+        // Called in the background, the index finds the matches in one query
+        Set<Long> matches = SearchIndex.allThreadIds(filter);
+        if (matches != null) {
+            List<Thread> filteredThreads = new ArrayList<>();
+            for (Thread t : threads) {
+                if (matches.contains(t.getId())) {
+                    filteredThreads.add(t);
+                }
+            }
+            return filteredThreads;
+        }
+
+        // The index is still being built or there are no words to search for
         List<Thread> filteredThreads = new ArrayList<>();
         for (Thread t : threads) {
             if (t.getName() != null && t.getName().toLowerCase().contains(filter.toLowerCase())) {
@@ -194,6 +308,9 @@ public abstract class ThreadsFragment extends BaseFragment {
     public void onDestroy () {
         super.onDestroy();
         disposableList.dispose();
+        if (reloadDisposable != null) {
+            reloadDisposable.dispose();
+        }
     }
 
 }
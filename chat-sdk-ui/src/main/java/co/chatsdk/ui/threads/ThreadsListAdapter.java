@@ -18,16 +18,20 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 
 import co.chatsdk.core.dao.DaoCore;
 import co.chatsdk.core.dao.Message;
 import co.chatsdk.core.dao.Thread;
 import co.chatsdk.core.interfaces.ThreadType;
+import co.chatsdk.core.rx.RXSchedulers;
 import co.chatsdk.core.session.ChatSDK;
 import co.chatsdk.core.utils.Strings;
 import co.chatsdk.ui.R;
 import io.reactivex.Observable;
+import io.reactivex.Single;
+import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.subjects.PublishSubject;
 
 public class ThreadsListAdapter extends RecyclerView.Adapter<ThreadViewHolder> {
@@ -38,6 +42,16 @@ public class ThreadsListAdapter extends RecyclerView.Adapter<ThreadViewHolder> {
 
     protected List<Thread> threads = new ArrayList<>();
 
+    // Rows that were built in the background, keyed by entity ID. A thread without a row is
+    // shown empty when it's bound and its row is built in the background
+    protected HashMap<String, ThreadRow> rows = new HashMap<>();
+    protected HashSet<String> building = new HashSet<>();
+
+    // Position of each thread by entity ID, kept up to date as threads are added, moved and removed
+    protected HashMap<String, Integer> positions = new HashMap<>();
+
+    protected ThreadSorter sorter = new ThreadSorter();
+
     protected HashMap<Thread, String> typing = new HashMap<>();
     protected PublishSubject<Thread> onClickSubject = PublishSubject.create();
     protected PublishSubject<Thread> onLongClickSubject = PublishSubject.create();
@@ -58,7 +72,15 @@ public class ThreadsListAdapter extends RecyclerView.Adapter<ThreadViewHolder> {
 
         final Thread thread = threads.get(position);
 
-        holder.nameTextView.setText(Strings.nameForThread(thread));
+        ThreadRow row = rows.get(thread.getEntityID());
+        if (row == null) {
+            buildRowInBackground(thread);
+            row = new ThreadRow(thread, null, null, null, 0);
+            holder.dateTextView.setText(null);
+            holder.lastMessageTextView.setText(null);
+        }
+
+        holder.nameTextView.setText(row.name);
 
         holder.itemView.setOnClickListener(view -> onClickSubject.onNext(thread));
 
@@ -67,33 +89,18 @@ public class ThreadsListAdapter extends RecyclerView.Adapter<ThreadViewHolder> {
             return true;
         });
 
-        Date lastMessageAddedDate = thread.getLastMessageAddedDate();
-        if (lastMessageAddedDate != null) {
-            holder.dateTextView.setText(getLastMessageDateAsString(lastMessageAddedDate));
-
-            Message message = thread.getLastMessage();
-            if (message == null) {
-                List<Message> messages = thread.getMessagesWithOrder(DaoCore.ORDER_DESC, 1);
-                if (messages.size() > 0) {
-                    message = messages.get(0);
-                    thread.setLastMessage(message);
-                    thread.update();
-                }
-            }
-
-
-            holder.lastMessageTextView.setText(getLastMessageText(message));
+        if (row.dateText != null) {
+            holder.dateTextView.setText(row.dateText);
+            holder.lastMessageTextView.setText(row.lastMessageText);
         }
 
         if (typing.get(thread) != null) {
             holder.lastMessageTextView.setText(String.format(context.get().getString(R.string.__typing), typing.get(thread)));
         }
 
-        int unreadMessageCount = thread.getUnreadMessagesCount();
-
-        if (unreadMessageCount != 0 && (thread.typeIs(ThreadType.Private) || ChatSDK.config().unreadMessagesCountForPublicChatRoomsEnabled)) {
+        if (row.unreadCount != 0) {
 
-            holder.unreadMessageCountTextView.setText(String.valueOf(unreadMessageCount));
+            holder.unreadMessageCountTextView.setText(String.valueOf(row.unreadCount));
             holder.unreadMessageCountTextView.setVisibility(View.VISIBLE);
 
             holder.showUnreadIndicator();
@@ -106,6 +113,61 @@ public class ThreadsListAdapter extends RecyclerView.Adapter<ThreadViewHolder> {
         ThreadImageBuilder.load(holder.imageView, thread);
     }
 
+    /**
+     * Build the thread's row on the computation scheduler and rebind it when it's ready.
+     * Requests for a thread that's already being built are ignored
+     */
+    protected void buildRowInBackground (final Thread thread) {
+        final String entityID = thread.getEntityID();
+        if (!building.add(entityID)) {
+            return;
+        }
+        Single.fromCallable(() -> buildRow(thread))
+                .subscribeOn(RXSchedulers.computation())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(row -> {
+                    // The list may have been cleared while the row was being built
+                    if (building.remove(entityID)) {
+                        updateRow(row);
+                    }
+                }, throwable -> {
+                    building.remove(entityID);
+                    ChatSDK.logError(throwable);
+                });
+    }
+
+    /**
+     * Work out what the thread's row shows. This reads the database so it should be called in the background
+     */
+    public ThreadRow buildRow (Thread thread) {
+        String dateText = null;
+        String lastMessageText = null;
+
+        Date lastMessageAddedDate = thread.getLastMessageAddedDate();
+        if (lastMessageAddedDate != null) {
+            dateText = getLastMessageDateAsString(lastMessageAddedDate);
+
+            Message message = thread.getLastMessage();
+            if (message == null) {
+                List<Message> messages = thread.getMessagesWithOrder(DaoCore.ORDER_DESC, 1);
+                if (messages.size() > 0) {
+                    message = messages.get(0);
+                    thread.setLastMessage(message);
+                    RXSchedulers.db().scheduleDirect(thread::update);
+                }
+            }
+
+            lastMessageText = getLastMessageText(message);
+        }
+
+        int unreadCount = 0;
+        if (thread.typeIs(ThreadType.Private) || ChatSDK.config().unreadMessagesCountForPublicChatRoomsEnabled) {
+            unreadCount = thread.getUnreadMessagesCount();
+        }
+
+        return new ThreadRow(thread, Strings.nameForThread(thread), dateText, lastMessageText, unreadCount);
+    }
+
     public String getLastMessageDateAsString (Date date) {
         if (date != null) {
             return Strings.dateTime(date);
@@ -132,16 +194,27 @@ public class ThreadsListAdapter extends RecyclerView.Adapter<ThreadViewHolder> {
         return threads.size();
     }
 
+    /**
+     * A copy of the threads in the list
+     */
+    public List<Thread> getThreads () {
+        return new ArrayList<>(threads);
+    }
+
+    /**
+     * Add a thread in its sorted position. Its row is built in the background when it's bound
+     */
     public boolean addRow (Thread thread, boolean notify) {
-        for (Thread t : threads) {
-            if (t.getEntityID().equals(thread.getEntityID())) {
-                return false;
-            }
+        if (indexOf(thread) >= 0) {
+            return false;
         }
 
-        threads.add(thread);
+        int index = sortedIndexOf(thread);
+        threads.add(index, thread);
+        reindex(index, threads.size() - 1);
+
         if (notify) {
-            notifyDataSetChanged();
+            notifyItemInserted(index);
         }
         return true;
     }
@@ -157,10 +230,116 @@ public class ThreadsListAdapter extends RecyclerView.Adapter<ThreadViewHolder> {
         else {
             typing.remove(thread);
         }
+        int index = indexOf(thread);
+        if (index >= 0) {
+            notifyItemChanged(index);
+        }
+    }
+
+    protected int indexOf (Thread thread) {
+        if (thread != null && thread.getEntityID() != null) {
+            Integer index = positions.get(thread.getEntityID());
+            if (index != null) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Update the positions of the threads between the two indexes inclusive
+     */
+    protected void reindex (int from, int to) {
+        for (int i = Math.max(from, 0); i <= to && i < threads.size(); i++) {
+            positions.put(threads.get(i).getEntityID(), i);
+        }
+    }
+
+    /**
+     * The position the thread should be in to keep the list sorted, the thread
+     * itself must not be in the list
+     */
+    protected int sortedIndexOf (Thread thread) {
+        // The list is always sorted so binary search for the first thread that sorts after this one
+        int low = 0;
+        int high = threads.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorter.compare(threads.get(mid), thread) <= 0) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Move a thread if its position has changed, for example because a new message has
+     * arrived, and rebuild its row in the background. The current row is shown until the
+     * new one is ready. A thread that has been deleted, or is empty when empty chats are
+     * hidden, is removed instead
+     * @return false if the thread isn't in the list
+     */
+    public boolean updateThread (Thread thread) {
+        return updateRow(thread, null);
+    }
+
+    /**
+     * As {@link #updateThread(Thread)} with a row that was built in the background
+     */
+    public boolean updateRow (ThreadRow row) {
+        return updateRow(row.thread, row);
+    }
+
+    protected boolean updateRow (Thread thread, ThreadRow row) {
+        int oldIndex = indexOf(thread);
+        if (oldIndex < 0) {
+            return false;
+        }
+        // Keep the list consistent with ThreadHandler.getThreads
+        if (thread.isDeleted() || (!ChatSDK.config().showEmptyChats && !thread.hasMessages())) {
+            return removeThread(thread);
+        }
+        if (row != null) {
+            rows.put(row.getEntityID(), row);
+        }
+        else {
+            buildRowInBackground(thread);
+        }
+
+        Thread existing = threads.remove(oldIndex);
+        int newIndex = sortedIndexOf(existing);
+        threads.add(newIndex, existing);
+        reindex(Math.min(oldIndex, newIndex), Math.max(oldIndex, newIndex));
+
+        if (newIndex != oldIndex) {
+            notifyItemMoved(oldIndex, newIndex);
+        }
+        notifyItemChanged(newIndex);
+        return true;
+    }
+
+    public boolean removeThread (Thread thread) {
+        int index = indexOf(thread);
+        if (index < 0) {
+            return false;
+        }
+        threads.remove(index);
+        positions.remove(thread.getEntityID());
+        reindex(index, threads.size() - 1);
+        rows.remove(thread.getEntityID());
+        building.remove(thread.getEntityID());
+        typing.remove(thread);
+        notifyItemRemoved(index);
+        return true;
     }
 
     protected void sort() {
-        Collections.sort(threads, new ThreadSorter());
+        Collections.sort(threads, sorter);
+        positions.clear();
+        reindex(0, threads.size() - 1);
     }
 
     public void clearData () {
@@ -169,6 +348,9 @@ public class ThreadsListAdapter extends RecyclerView.Adapter<ThreadViewHolder> {
 
     public void clearData (boolean notify) {
         threads.clear();
+        positions.clear();
+        rows.clear();
+        building.clear();
         if (notify) {
             notifyDataSetChanged();
         }
@@ -183,17 +365,24 @@ public class ThreadsListAdapter extends RecyclerView.Adapter<ThreadViewHolder> {
     }
 
 
+    /**
+     * Add the threads that aren't in the list. Threads that are already in the list have
+     * their rows rebuilt in the background
+     */
     public void updateThreads (List<Thread> threads) {
-        boolean added = false;
         for (Thread t : threads) {
-            added = addRow(t, false) || added;
+            if (indexOf(t) < 0) {
+                // The list is sorted once at the end rather than inserting each thread
+                this.threads.add(t);
+                positions.put(t.getEntityID(), this.threads.size() - 1);
+            }
+            else {
+                // Maybe the last message has changed
+                buildRowInBackground(t);
+            }
         }
-        // Maybe the last message has changed. I think this can lead to a race condition
-        // Which causes the thread not to update when a new message comes in
-//        if (added) {
-            sort();
-            notifyDataSetChanged();
-//        }
+        sort();
+        notifyDataSetChanged();
     }
 
     public void setThreads(List<Thread> threads) {
@@ -201,5 +390,19 @@ public class ThreadsListAdapter extends RecyclerView.Adapter<ThreadViewHolder> {
         updateThreads(threads);
     }
 
+    /**
+     * Replace the list with rows that were built in the background
+     */
+    public void setRows(List<ThreadRow> rows) {
+        clearData(false);
+        for (ThreadRow row : rows) {
+            if (this.rows.put(row.getEntityID(), row) == null) {
+                threads.add(row.thread);
+            }
+        }
+        sort();
+        notifyDataSetChanged();
+    }
+
 
 }